@@ -0,0 +1,98 @@
+#!/usr/bin/env bash
+#Benchmark de subida da aplicação: mede, para cada modo, o tempo desde o início do processo até o primeiro
+#"/auth/login" com sucesso e a memória residente (RSS) do processo nesse momento
+#Modos:
+#  jvm    - jar normal
+#  aot    - jar com o contexto processado em tempo de build (-Dspring.aot.enabled=true)
+#  cds    - AOT + arquivo de class-data-sharing gerado pelo perfil 'startup'
+#  native - imagem nativa gerada por 'mvn -Pnative native:compile' (só roda se o binário existir)
+#Uso: scripts/startup-benchmark.sh [modos...]
+#Variáveis: RUNS (padrão 5), PORT (padrão 18080), SKIP_BUILD=1 para reaproveitar o build, APP_ARGS para argumentos
+#extras da aplicação (por exemplo '--api.security.password.bcrypt.strength=10' para tirar a calibração do BCrypt da
+#medição)
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+APP_ARGS=${APP_ARGS:-}
+MODES=("$@")
+if [ ${#MODES[@]} -eq 0 ]; then
+  MODES=(jvm aot cds native)
+fi
+
+if [ "${SKIP_BUILD:-0}" != "1" ]; then
+  ./mvnw -B -q -Pstartup package -DskipTests
+fi
+
+JAR=$(ls target/login-auth-api-*.jar | grep -v original | head -1)
+CDS_JAR=target/cds/$(basename "$JAR")
+NATIVE=target/login-auth-api
+
+command_for() {
+  case "$1" in
+    jvm) echo "java -jar $JAR" ;;
+    aot) echo "java -Dspring.aot.enabled=true -jar $JAR" ;;
+    cds) echo "java -XX:SharedArchiveFile=target/cds/application.jsa -Xlog:cds=error -Dspring.aot.enabled=true -jar $CDS_JAR" ;;
+    native) echo "$NATIVE" ;;
+  esac
+}
+
+now_ms() {
+  echo $(($(date +%s%N) / 1000000))
+}
+
+#Sobe a aplicação, cadastra um usuário assim que ela responder e devolve "<ms até o primeiro login> <RSS em KB>"
+measure() {
+  local command=$1
+  local start
+  start=$(now_ms)
+  $command --server.port="$PORT" --spring.main.banner-mode=off --logging.level.root=WARN $APP_ARGS >/dev/null 2>&1 &
+  local pid=$!
+
+  local body='{"name":"Startup","email":"startup@example.com","password":"secret"}'
+  local login='{"email":"startup@example.com","password":"secret"}'
+  local status=000
+  while [ "$status" != "200" ]; do
+    if ! kill -0 "$pid" 2>/dev/null; then
+      echo "process exited before the first login" >&2
+      return 1
+    fi
+    curl -s -o /dev/null -H 'Content-Type: application/json' -d "$body" "http://localhost:$PORT/auth/register" || true
+    status=$(curl -s -o /dev/null -w '%{http_code}' -H 'Content-Type: application/json' -d "$login" \
+      "http://localhost:$PORT/auth/login" || true)
+    [ "$status" = "200" ] || sleep 0.01
+  done
+  local elapsed=$(($(now_ms) - start))
+  local rss
+  rss=$(awk '/VmRSS/ {print $2}' "/proc/$pid/status")
+
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+  echo "$elapsed $rss"
+}
+
+median() {
+  sort -n | awk '{values[NR] = $1} END {print values[int((NR + 1) / 2)]}'
+}
+
+printf '%-8s %6s %18s %12s\n' mode runs first-login-p50 rss-p50
+for mode in "${MODES[@]}"; do
+  if [ "$mode" = "native" ] && [ ! -x "$NATIVE" ]; then
+    printf '%-8s %s\n' native "skipped (run 'mvn -Pnative native:compile' first)"
+    continue
+  fi
+  command=$(command_for "$mode")
+  times=()
+  rss=()
+  for _ in $(seq "$RUNS"); do
+    read -r elapsed resident < <(measure "$command")
+    times+=("$elapsed")
+    rss+=("$resident")
+  done
+  printf '%-8s %6d %16sms %10sMB\n' "$mode" "$RUNS" \
+    "$(printf '%s\n' "${times[@]}" | median)" \
+    "$(( $(printf '%s\n' "${rss[@]}" | median) / 1024 ))"
+done
@@ -1,9 +1,14 @@
 package br.com.fabiokusaba.loginauthapi;
 
+import br.com.fabiokusaba.loginauthapi.infra.aot.LoginAuthApiRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(LoginAuthApiRuntimeHints.class)
 public class LoginAuthApiApplication {
 
     public static void main(String[] args) {
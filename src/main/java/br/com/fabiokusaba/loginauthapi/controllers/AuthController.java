@@ -4,21 +4,43 @@ package br.com.fabiokusaba.loginauthapi.controllers;
 //Para isso precisamos colocar a anotação '@RestController' e '@RequestMapping' para mapear o endpoint que esse
 //controller fica ouvindo, no nosso caso ele vai ouvir especificamente o endpoint de "/auth"
 
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
 import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.dto.IntrospectionResultDTO;
 import br.com.fabiokusaba.loginauthapi.dto.LoginRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.RefreshRequestDTO;
 import br.com.fabiokusaba.loginauthapi.dto.RegisterRequestDTO;
 import br.com.fabiokusaba.loginauthapi.dto.ResponseDTO;
+import br.com.fabiokusaba.loginauthapi.exceptions.LoginThrottledException;
 import br.com.fabiokusaba.loginauthapi.exceptions.UserNotFoundException;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.infra.security.CredentialCache;
+import br.com.fabiokusaba.loginauthapi.infra.security.LoginThrottle;
+import br.com.fabiokusaba.loginauthapi.infra.security.PasswordHashingService;
+import br.com.fabiokusaba.loginauthapi.infra.security.RefreshTokenService;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenIntrospectionService;
 import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import br.com.fabiokusaba.loginauthapi.infra.security.VerifiedToken;
 import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -27,72 +49,211 @@ import java.util.Optional;
 public class AuthController {
 
     //Aqui dentro a gente vai declarar algumas dependências desse nosso controller que vai ser o nosso 'UserRepository',
-    //'PasswordEncoder' e por fim o nosso 'TokenService'
+    //'PasswordHashingService' e por fim o nosso 'TokenService'
+    //O 'PasswordHashingService' faz o mesmo trabalho do 'PasswordEncoder', só que fora das threads do Tomcat
     //Vamos colocar a anotação '@RequiredArgsConstructor' para que o Lombok gere automaticamente o construtor dessa
     //classe contendo como parâmetro o repository, encoder e o token service e aí o Spring consegue fazer a injeção de
     //dependência corretamente
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final CredentialCache credentialCache;
     private final TokenService tokenService;
+    private final RefreshTokenService refreshTokenService;
+    private final AuthMetrics authMetrics;
+    private final LoginThrottle loginThrottle;
+    private final TokenIntrospectionService tokenIntrospectionService;
+    private final UserChangeLog userChangeLog;
+    private final TransactionTemplate transactionTemplate;
+
+    //Escolhe a partição dos usuários pelo email, fora do modo particionado as operações rodam direto
+    private final UserPartitioning userPartitioning;
+
+    //Trilha de auditoria, os eventos entram em uma fila em memória e são gravados em lote fora da requisição
+    private final AuthAuditLog authAuditLog;
+
+    //Quantidade máxima de tokens em uma chamada de introspecção
+    @Value("${api.security.token.introspection.max-batch:100}")
+    private int introspectionMaxBatch;
 
     //O primeiro método que vamos declarar aqui vai ser um método público que vai nos retornar um 'ResponseEntity' cujo
     //nome vai ser 'login'
     //Para fazer o login do usuário a gente vai receber no body via '@RequestBody' as informações de login que é o email
     //e a senha, precisamos colocar o mapeamento '@PostMapping' com o nosso endpoint "/login"
+    //Também recebemos a requisição para saber o IP do cliente
     @PostMapping("/login")
-    public ResponseEntity login(@RequestBody LoginRequestDTO body) {
+    public ResponseEntity login(@RequestBody LoginRequestDTO body, HttpServletRequest request) {
+
+        //Antes de qualquer busca ou hashing verificamos se esse email ou esse IP não passaram do limite de tentativas,
+        //assim uma rajada de senhas chutadas é barrada sem gastar o BCrypt
+        long retryAfter = loginThrottle.tryAcquire(body.email(), request.getRemoteAddr());
+        if (retryAfter > 0) {
+            authMetrics.login(AuthMetrics.LoginOutcome.THROTTLED);
+            this.audit(AuthEvent.Type.LOGIN_THROTTLED, body.email(), request, null);
+            throw new LoginThrottledException(retryAfter);
+        }
 
         //Primeiro vamos tentar encontrar o usuário, vamos verificar se existe um usuário com esse email e caso eu não
         //encontre vou lançar uma exceção
-        User user = this.userRepository.findByEmail(body.email()).orElseThrow(() -> new UserNotFoundException());
+        //Aqui buscamos apenas os campos que o login precisa através da coluna de email normalizado que tem índice
+        //Cada fase do login é medida separadamente pelo 'authMetrics'
+        long lookupStart = System.nanoTime();
+        Optional<UserCredentials> found = userPartitioning.forEmail(body.email(),
+                () -> this.userRepository.findCredentialsByEmail(body.email()));
+        authMetrics.record(AuthMetrics.Phase.LOOKUP, lookupStart);
+        if (found.isEmpty()) {
+            //Gastamos o mesmo BCrypt de uma senha errada antes de responder, a exceção em si não tem stack trace e a
+            //resposta já está serializada, então o hash é o único custo desse caminho
+            passwordHashingService.simulateMatch(body.password());
+            authMetrics.login(AuthMetrics.LoginOutcome.UNKNOWN_USER);
+            this.audit(AuthEvent.Type.LOGIN_FAILED, body.email(), request, "unknown_user");
+            throw new UserNotFoundException();
+        }
+        UserCredentials user = found.get();
+
+        //Se encontrarmos o usuário vamos salvar na nossa variável 'user' e vamos verificar se a senha desse usuário é
+        //igual a senha que recebi por parâmetro
+        //Uma verificação recente dessa mesma senha contra o mesmo hash salvo (logins repetidos de contas de serviço)
+        //dispensa o BCrypt, e só uma verificação que deu certo entra no cache
+        long hashStart = System.nanoTime();
+        boolean cached = credentialCache.isVerified(body.password(), user);
+        boolean matches = cached || passwordHashingService.matches(body.password(), user.password());
+        authMetrics.record(AuthMetrics.Phase.HASH_VERIFY, hashStart);
+        if (matches && !cached) {
+            credentialCache.put(body.password(), user);
+        }
 
-        //Se encontrarmos o usuário vamos salvar na nossa variável 'user' do tipo 'User' e vamos verificar se a senha
-        //desse usuário é igual a senha que recebi por parâmetro
-        if (passwordEncoder.matches(body.password(), user.getPassword())) {
+        if (matches) {
+
+            //Se o hash salvo foi gerado com um custo diferente do custo atual do BCrypt aproveitamos que temos a senha
+            //em mãos para refazer o hash em segundo plano, sem atrasar a resposta do login
+            if (passwordHashingService.upgradeEncoding(user.password())) {
+                //A troca do hash entra no log de mudanças na mesma transação para os caches das outras réplicas, essa
+                //gravação roda no executor de I/O do 'PasswordHashingService' e não na thread do BCrypt
+                passwordHashingService.encodeAsync(body.password(),
+                        hash -> userPartitioning.forEmail(user.email(), () -> {
+                            transactionTemplate.executeWithoutResult(status -> {
+                                if (this.userRepository.updatePassword(user.id(), user.password(), hash) == 1) {
+                                    userChangeLog.append(UserChange.Type.PASSWORD_CHANGED, user.email());
+                                }
+                            });
+                            return null;
+                        }));
+            }
 
             //Se as senhas forem iguais, ou seja, deu match, vou criar um token passando o nosso usuário
             String token = this.tokenService.generateToken(user);
 
+            //Junto com o token emitimos um refresh token que o Frontend usa para renovar o token quando ele expirar
+            String refreshToken = this.refreshTokenService.issue(user.id());
+
             //Então vou retornar um 'ResponseEntity' "ok" passando no body as informações que o nosso Frontend precisa
-            //que são o token e o name
-            return ResponseEntity.ok(new ResponseDTO(user.getName(), token));
+            //que são o token, o refresh token e o name
+            authMetrics.login(AuthMetrics.LoginOutcome.SUCCESS);
+            this.audit(AuthEvent.Type.LOGIN_SUCCEEDED, user.email(), request, null);
+            return ResponseEntity.ok(new ResponseDTO(user.name(), token, refreshToken));
         }
 
+        authMetrics.login(AuthMetrics.LoginOutcome.BAD_PASSWORD);
+        this.audit(AuthEvent.Type.LOGIN_FAILED, user.email(), request, "bad_password");
+
         //Caso as senhas não sejam iguais, ou seja, não derem match, retornamos um 'ResponseEntity' "badRequest"
         return ResponseEntity.badRequest().build();
     }
 
     //Agora podemos partir para a criação do endpoint de register e como parâmetro vamos receber o nome, email e senha
     @PostMapping("/register")
-    public ResponseEntity register(@RequestBody RegisterRequestDTO body) {
+    public ResponseEntity register(@RequestBody RegisterRequestDTO body, HttpServletRequest request) {
 
-        //E aqui vamos declarar um novo usuário, mas antes podemos fazer uma verificação para ver se já existe um
-        //usuário cadastrado com o email que estamos recebendo da requisição
-        Optional<User> user = this.userRepository.findByEmail(body.email());
+        //E aqui vamos declarar um novo usuário, não fazemos mais uma busca antes para ver se o email já existe porque
+        //entre a busca e a inserção outro cadastro com o mesmo email poderia passar, quem garante que o email é único
+        //é o índice único da coluna de email normalizado
 
-        //Para isso podemos verificar se o 'user.isEmpty', ou seja, se o nosso usuário está vazio e dessa forma podemos
-        //fazer o registro desse usuário
-        if (user.isEmpty()) {
+        //Declarando o nosso novo usuário
+        User newUser = new User();
+
+        //Setando as propriedades desse usuário que estamos criando
+        newUser.setPassword(passwordHashingService.encode(body.password())); //Salvando a senha de forma criptografada
+        newUser.setEmail(body.email()); //Salvando o email que recebemos no body
+        newUser.setName(body.name()); //Salvando o nome que recebemos no body
+
+        //Criado o nosso usuário vamos chamar o repository para salvar ele no banco de dados em um único insert, o
+        //'saveAndFlush' força o insert a acontecer aqui para que a violação do índice único caia no nosso catch
+        //O cadastro entra no log de mudanças de usuários na mesma transação do insert, os dois na partição do email
+        try {
+            userPartitioning.forEmail(newUser.getEmail(), () -> {
+                transactionTemplate.executeWithoutResult(status -> {
+                    this.userRepository.saveAndFlush(newUser);
+                    userChangeLog.append(UserChange.Type.CREATED, newUser.getEmail());
+                });
+                return null;
+            });
+        } catch (DataIntegrityViolationException exception) {
+
+            //Caso já exista um usuário com esse email retornamos um 'ResponseEntity' "badRequest"
+            authMetrics.register(AuthMetrics.RegisterOutcome.DUPLICATE);
+            this.audit(AuthEvent.Type.REGISTER_REJECTED, body.email(), request, "duplicate");
+            return ResponseEntity.badRequest().build();
+        }
 
-            //Declarando o nosso novo usuário
-            User newUser = new User();
+        authMetrics.register(AuthMetrics.RegisterOutcome.SUCCESS);
+        this.audit(AuthEvent.Type.REGISTERED, newUser.getEmail(), request, null);
 
-            //Setando as propriedades desse usuário que estamos criando
-            newUser.setPassword(passwordEncoder.encode(body.password())); //Salvando a senha de forma criptografada
-            newUser.setEmail(body.email()); //Salvando o email que recebemos no body
-            newUser.setName(body.name()); //Salvando o nome que recebemos no body
+        //Depois que salvamos esse usuário no banco de dados podemos fazer a geração do token
+        String token = this.tokenService.generateToken(newUser);
+        String refreshToken = this.refreshTokenService.issue(newUser.getId());
 
-            //Criado o nosso usuário vamos chamar o repository para salvar ele no banco de dados
-            this.userRepository.save(newUser);
+        //E assim que gerarmos o token vamos retornar um 'ResponseEntity' "ok" com o nosso 'ResponseDTO'
+        return ResponseEntity.ok(new ResponseDTO(newUser.getName(), token, refreshToken));
+    }
 
-            //Depois que salvamos esse usuário no banco de dados podemos fazer a geração do token
-            String token = this.tokenService.generateToken(newUser);
+    //Endpoint de renovação do token, recebemos o refresh token e devolvemos um novo token e um novo refresh token
+    //Aqui não tem BCrypt, é uma busca indexada pelo hash do refresh token e uma assinatura
+    @PostMapping("/refresh")
+    public ResponseEntity refresh(@RequestBody RefreshRequestDTO body) {
 
-            //E assim que gerarmos o token vamos retornar um 'ResponseEntity' "ok" com o nosso 'ResponseDTO'
-            return ResponseEntity.ok(new ResponseDTO(newUser.getName(), token));
+        //Trocamos o refresh token por um novo, se ele for inválido, expirado, revogado ou reutilizado respondemos 401
+        var rotation = this.refreshTokenService.rotate(body.refreshToken());
+        if (rotation.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        //Caso ocorra algum erro no registro retornamos um 'ResponseEntity' "badRequest"
-        return ResponseEntity.badRequest().build();
+        //Buscamos os dados que vão dentro do token pelo id do dono do refresh token, como o id não diz a partição
+        //procuramos em todas
+        Optional<UserCredentials> user = userPartitioning.findFirst(
+                () -> this.userRepository.findCredentialsById(rotation.get().userId()));
+        if (user.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        String token = this.tokenService.generateToken(user.get());
+        return ResponseEntity.ok(new ResponseDTO(user.get().name(), token, rotation.get().refreshToken()));
+    }
+
+    //Endpoint de logout, revoga o token usado nessa requisição até o fim da validade dele e, se o Frontend mandar o
+    //refresh token, revoga também a família do refresh token
+    //Esse endpoint exige autenticação, o 'SecurityFilter' deixa o token verificado nos detalhes da autenticação
+    @PostMapping("/logout")
+    public ResponseEntity logout(Authentication authentication, @RequestBody(required = false) RefreshRequestDTO body) {
+        if (authentication.getDetails() instanceof VerifiedToken token) {
+            this.tokenService.revoke(token);
+        }
+        if (body != null) {
+            this.refreshTokenService.revoke(body.refreshToken());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    //Introspecção de tokens em lote para o gateway: recebe um array de tokens e devolve, na mesma ordem, se cada token
+    //está ativo com o 'sub' e o 'exp' ou o motivo de não estar
+    @PostMapping("/introspect")
+    public ResponseEntity<List<IntrospectionResultDTO>> introspect(@RequestBody List<String> tokens) {
+        if (tokens.size() > introspectionMaxBatch) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(this.tokenIntrospectionService.introspect(tokens));
+    }
+
+    private void audit(AuthEvent.Type type, String email, HttpServletRequest request, String reason) {
+        authAuditLog.record(type, User.normalizeEmail(email), request.getRemoteAddr(), reason);
     }
 }
@@ -0,0 +1,32 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+//Endpoint público com as chaves públicas de assinatura dos tokens no formato JWKS
+//Os outros serviços baixam esse documento, guardam em cache e verificam os nossos tokens localmente escolhendo a chave
+//pelo "kid" do token, sem precisar do nosso segredo e sem chamar esse serviço a cada requisição
+//Com HS256 a lista de chaves fica vazia porque uma chave simétrica nunca pode ser publicada
+
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKeyRing;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+
+    //Os clientes podem guardar o documento por alguns minutos, uma chave nova sempre aparece no JWKS antes de uma
+    //chave antiga sair, então um cache curto não faz nenhum token válido ser rejeitado
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic();
+
+    private final SigningKeyRing signingKeyRing;
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok().cacheControl(CACHE_CONTROL).body(signingKeyRing.jwks());
+    }
+}
@@ -1,19 +1,81 @@
 package br.com.fabiokusaba.loginauthapi.controllers;
 
 //Endpoint para testar a nossa aplicação
+//Aqui também ficam o import de usuários em lote e a listagem, a busca e o export de usuários das ferramentas de
+//administração, todos exigem autenticação como todo o resto de "/user" e o import, a listagem e o export exigem
+//também a role de administrador (ver 'SecurityConfig')
 
+import br.com.fabiokusaba.loginauthapi.dto.ImportReportDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserPageDTO;
+import br.com.fabiokusaba.loginauthapi.services.UserImportService;
+import br.com.fabiokusaba.loginauthapi.services.UserListingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+
 @RestController
 @RequestMapping("/user")
+@RequiredArgsConstructor
 public class UserController {
 
+    private final UserImportService userImportService;
+    private final UserListingService userListingService;
+
     @GetMapping
     public ResponseEntity<String> getUser() {
 
         return ResponseEntity.ok("sucesso em buscar user!");
     }
+
+    //Import em lote de um arquivo NDJSON (um '{"name","email","password"}' por linha) ou CSV ('name,email,password')
+    //Lemos direto do 'InputStream' da requisição para não carregar o arquivo inteiro na memória
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    public ResponseEntity<ImportReportDTO> importUsers(HttpServletRequest request) throws IOException {
+        UserImportService.Format format = MediaType.parseMediaType(request.getContentType()).getSubtype()
+                .equalsIgnoreCase("csv") ? UserImportService.Format.CSV : UserImportService.Format.NDJSON;
+
+        return ResponseEntity.ok(userImportService.importUsers(request.getInputStream(), format));
+    }
+
+    //Lista os usuários em páginas ordenadas pelo email ou pelo nome ('by'), opcionalmente só os que começam com 'q'
+    //A próxima página é pedida com o 'next' da resposta no parâmetro 'cursor'
+    @GetMapping("/list")
+    public ResponseEntity<UserPageDTO> list(@RequestParam(required = false) String q,
+                                            @RequestParam(defaultValue = "email") String by,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(userListingService.page(UserListingService.Field.parse(by), q, cursor, limit));
+        } catch (IllegalArgumentException exception) {
+
+            //Campo de ordenação desconhecido ou cursor que não foi gerado pela listagem
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //Export de todos os usuários da busca em NDJSON, escrito direto no 'OutputStream' da resposta conforme as linhas
+    //saem do banco de dados
+    @GetMapping("/export")
+    public void export(@RequestParam(required = false) String q, @RequestParam(defaultValue = "email") String by,
+                       HttpServletResponse response) throws IOException {
+        UserListingService.Field field;
+        try {
+            field = UserListingService.Field.parse(by);
+        } catch (IllegalArgumentException exception) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        userListingService.export(field, q, response.getOutputStream());
+    }
 }
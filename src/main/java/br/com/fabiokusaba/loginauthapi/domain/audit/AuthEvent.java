@@ -0,0 +1,54 @@
+package br.com.fabiokusaba.loginauthapi.domain.audit;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//Registro da trilha de auditoria de autenticação (tabela 'auth_events'): logins, cadastros e tokens recusados
+//Os eventos não são gravados pela requisição, eles passam pelo 'AuthAuditLog' que grava em lote em segundo plano
+//O email é o que o cliente mandou (normalizado), então em uma falha ele pode não ser de nenhum usuário, e no token
+//recusado ele fica nulo porque o token não chegou a ser confiável
+//O 'reason' detalha a falha (por exemplo o motivo da recusa do token)
+
+@Entity
+@Table(name = "auth_events", indexes = {
+        @Index(name = "ix_auth_events_occurred_at", columnList = "occurred_at")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class AuthEvent {
+
+    public enum Type {
+        LOGIN_SUCCEEDED, LOGIN_FAILED, LOGIN_THROTTLED, REGISTERED, REGISTER_REJECTED, TOKEN_REJECTED
+    }
+
+    //Tamanho das colunas de texto livre, o que vier maior do cliente é cortado antes de entrar no buffer
+    public static final int MAX_EMAIL_LENGTH = 255;
+    public static final int MAX_IP_LENGTH = 64;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Type type;
+
+    @Column(length = MAX_EMAIL_LENGTH)
+    private String email;
+
+    @Column(length = MAX_IP_LENGTH)
+    private String ip;
+
+    @Column(length = 32)
+    private String reason;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+}
@@ -0,0 +1,51 @@
+package br.com.fabiokusaba.loginauthapi.domain.token;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//Refresh token emitido junto com o access token
+//Nunca guardamos o refresh token em si, apenas o SHA-256 dele, então um vazamento dessa tabela não permite renovar a
+//sessão de ninguém
+//Todos os refresh tokens que nasceram de um mesmo login pertencem à mesma família ('familyId'), cada refresh token só
+//pode ser usado uma vez e se um token já usado aparecer de novo revogamos a família inteira
+
+@Entity
+@Table(name = "refresh_tokens",
+        uniqueConstraints = @UniqueConstraint(name = "uk_refresh_tokens_token_hash", columnNames = "token_hash"),
+        indexes = {
+                @Index(name = "ix_refresh_tokens_family_id", columnList = "family_id"),
+                @Index(name = "ix_refresh_tokens_expires_at", columnList = "expires_at")
+        })
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    @Column(name = "token_hash", nullable = false, length = 43)
+    private String tokenHash;
+
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    @Column(name = "user_id", nullable = false, length = 36)
+    private String userId;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    //Marcado quando o token é trocado por um novo, um token usado que aparecer de novo indica reutilização
+    private boolean used;
+
+    //Marcado em todos os tokens da família quando detectamos reutilização
+    private boolean revoked;
+}
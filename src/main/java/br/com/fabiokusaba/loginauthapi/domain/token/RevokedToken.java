@@ -0,0 +1,34 @@
+package br.com.fabiokusaba.loginauthapi.domain.token;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//Access token revogado antes do fim da validade (logout), identificado pelo "jti" do token
+//Só precisamos guardar o token até o 'expiresAt', depois disso ele seria rejeitado de qualquer forma
+
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+        @Index(name = "ix_revoked_tokens_expires_at", columnList = "expires_at"),
+        @Index(name = "ix_revoked_tokens_revoked_at", columnList = "revoked_at")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RevokedToken {
+
+    @Id
+    @Column(length = 36)
+    private String jti;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "revoked_at", nullable = false)
+    private Instant revokedAt;
+}
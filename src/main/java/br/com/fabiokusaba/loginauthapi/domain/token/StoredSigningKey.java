@@ -0,0 +1,40 @@
+package br.com.fabiokusaba.loginauthapi.domain.token;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//Par de chaves assimétricas de assinatura dos tokens (RS256/ES256), compartilhado por todas as réplicas
+//A chave pública fica em X.509 e a privada em PKCS#8 cifrada com AES-GCM usando uma chave derivada do
+//'api.security.token.secret', as duas em base64, então um vazamento dessa tabela sozinho não permite assinar tokens
+//O 'activatesAt' é quando a chave passa a assinar, as chaves são criadas com ele no futuro para que todas as réplicas
+//(e o JWKS) já conheçam a chave antes do primeiro token assinado com ela
+
+@Entity
+@Table(name = "signing_keys", indexes = @Index(name = "ix_signing_keys_algorithm", columnList = "algorithm"))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class StoredSigningKey {
+
+    @Id
+    @Column(length = 36)
+    private String kid;
+
+    @Column(nullable = false, length = 8)
+    private String algorithm;
+
+    @Column(name = "public_key", nullable = false, length = 1024)
+    private String publicKey;
+
+    @Column(name = "private_key", nullable = false, length = 4096)
+    private String privateKey;
+
+    @Column(name = "activates_at", nullable = false)
+    private Instant activatesAt;
+}
@@ -5,9 +5,19 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.util.Locale;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = {
+        //O índice único no email normalizado é o que garante que a busca por email não vire um table scan e que dois
+        //cadastros simultâneos com o mesmo email não passem ao mesmo tempo
+        @UniqueConstraint(name = "uk_users_email_normalized", columnNames = "email_normalized")
+}, indexes = {
+        //Índice da busca por prefixo do nome na listagem de usuários, o id vai junto porque é o desempate da paginação
+        @Index(name = "ix_users_name_normalized", columnList = "name_normalized, id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -20,7 +30,52 @@ public class User {
 
     private String name;
 
+    //Nome com a mesma normalização do email, usado só na busca da listagem de usuários
+    @Column(name = "name_normalized")
+    private String nameNormalized;
+
     private String email;
 
+    //Email em minúsculas e sem espaços, é por essa coluna que fazemos todas as buscas de usuário, o 'email' continua
+    //guardando o valor exatamente como o usuário digitou
+    @Column(name = "email_normalized", nullable = false)
+    private String emailNormalized;
+
     private String password;
+
+    //Versão dos tokens desse usuário, ela vai dentro do token no modo stateless e sempre que precisarmos invalidar
+    //todos os tokens já emitidos para esse usuário basta incrementar esse valor
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
+    //Contas que não podem ter a verificação da senha reaproveitada pelo 'CredentialCache', por exemplo contas de
+    //administração em que toda tentativa de login precisa passar pelo BCrypt
+    //O valor padrão também fica no banco para os inserts feitos direto via JDBC
+    @ColumnDefault("false")
+    @Column(name = "credential_cache_disabled", nullable = false)
+    private boolean credentialCacheDisabled;
+
+    //Administradores ganham a role 'ROLE_ADMIN', exigida pelas ferramentas de administração ("/user/import",
+    //"/user/list", "/user/export"), ninguém vira administrador pelo cadastro, só alterando essa coluna direto no banco
+    @ColumnDefault("false")
+    @Column(name = "admin", nullable = false)
+    private boolean admin;
+
+    //Antes de inserir ou atualizar o usuário mantemos as colunas normalizadas sincronizadas com o email e o nome
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        this.emailNormalized = normalizeEmail(this.email);
+        this.nameNormalized = normalizeName(this.name);
+    }
+
+    //Regra de normalização do email usada tanto na gravação quanto nas buscas
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    //Mesma regra para o nome, assim a busca por "ana" encontra "Ana Maria"
+    public static String normalizeName(String name) {
+        return normalizeEmail(name);
+    }
 }
@@ -0,0 +1,44 @@
+package br.com.fabiokusaba.loginauthapi.domain.user;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+//Registro de uma escrita em um usuário (tabela 'user_changes'), gravado junto com a própria escrita
+//Cada réplica lê essa tabela pela sequência e descarta dos seus caches locais o que ficou desatualizado, assim uma
+//troca de senha feita em uma réplica chega nas outras sem precisarmos de um broker de mensagens
+//A sequência é gerada pelo banco de dados e é só ela que as réplicas usam para saber onde pararam
+
+@Entity
+@Table(name = "user_changes", indexes = {
+        @Index(name = "ix_user_changes_changed_at", columnList = "changed_at")
+})
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserChange {
+
+    //O que aconteceu com o usuário, os caches decidem pelo tipo o que precisam descartar
+    public enum Type {
+        CREATED, PASSWORD_CHANGED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long seq;
+
+    @Column(name = "email_normalized", nullable = false)
+    private String emailNormalized;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Type type;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+}
@@ -0,0 +1,15 @@
+package br.com.fabiokusaba.loginauthapi.domain.user;
+
+//Projeção enxuta do usuário com apenas os campos que a autenticação precisa, usada no login e no 'SecurityFilter' para
+//não precisar hidratar a entidade 'User' inteira no contexto de persistência
+//O 'credentialCacheDisabled' vem junto porque o login precisa dele para decidir se pode usar o 'CredentialCache' e o
+//'admin' porque é dele que saem as roles do principal
+
+public record UserCredentials(String id, String name, String email, String password, int tokenVersion,
+                              boolean credentialCacheDisabled, boolean admin) {
+
+    public static UserCredentials from(User user) {
+        return new UserCredentials(user.getId(), user.getName(), user.getEmail(), user.getPassword(),
+                user.getTokenVersion(), user.isCredentialCacheDisabled(), user.isAdmin());
+    }
+}
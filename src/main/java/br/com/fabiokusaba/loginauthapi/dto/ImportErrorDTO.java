@@ -0,0 +1,6 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//Um registro do import que não foi gravado: a linha do arquivo, o email (quando conseguimos lê-lo) e o motivo
+
+public record ImportErrorDTO(long line, String email, String reason) {
+}
@@ -0,0 +1,11 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//Resultado do import de usuários em lote com os totais e os erros por registro
+//A lista de erros é limitada, quando ela passa do limite os erros continuam sendo contados mas não são listados e o
+//'errorsTruncated' fica verdadeiro
+
+import java.util.List;
+
+public record ImportReportDTO(long received, long imported, long duplicates, long invalid,
+                              List<ImportErrorDTO> errors, boolean errorsTruncated) {
+}
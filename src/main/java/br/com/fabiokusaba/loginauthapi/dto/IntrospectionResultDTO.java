@@ -0,0 +1,19 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//Resultado da introspecção de um token: se ele está ativo, o 'sub' e o 'exp' (em segundos desde a epoch) quando está,
+//ou o motivo quando não está
+//Os campos nulos não vão para o JSON para a resposta de um lote grande ficar pequena
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IntrospectionResultDTO(boolean active, String sub, Long exp, String reason) {
+
+    public static IntrospectionResultDTO active(String sub, long exp) {
+        return new IntrospectionResultDTO(true, sub, exp, null);
+    }
+
+    public static IntrospectionResultDTO inactive(String reason) {
+        return new IntrospectionResultDTO(false, null, null, reason);
+    }
+}
@@ -0,0 +1,6 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//DTO com o refresh token que o Frontend manda para renovar o access token
+
+public record RefreshRequestDTO(String refreshToken) {
+}
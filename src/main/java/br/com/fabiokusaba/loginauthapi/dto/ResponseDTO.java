@@ -1,7 +1,7 @@
 package br.com.fabiokusaba.loginauthapi.dto;
 
 //DTO que vai conter as informações de resposta para o nosso Frontend com os valores que ele precisa que no nosso caso é
-//o nome e o token
+//o nome, o token (access token de curta duração) e o refresh token usado para renovar o token em "/auth/refresh"
 
-public record ResponseDTO(String name, String token) {
+public record ResponseDTO(String name, String token, String refreshToken) {
 }
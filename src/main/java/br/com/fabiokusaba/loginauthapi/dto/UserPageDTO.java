@@ -0,0 +1,8 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//Uma página da listagem de usuários, o 'next' é o cursor para pedir a próxima página e fica nulo na última
+
+import java.util.List;
+
+public record UserPageDTO(List<UserSummaryDTO> users, String next) {
+}
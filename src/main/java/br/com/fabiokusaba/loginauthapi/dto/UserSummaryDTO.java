@@ -0,0 +1,6 @@
+package br.com.fabiokusaba.loginauthapi.dto;
+
+//Dados de um usuário na listagem e no export, sem o hash da senha e sem os campos internos da autenticação
+
+public record UserSummaryDTO(String id, String name, String email) {
+}
@@ -0,0 +1,39 @@
+package br.com.fabiokusaba.loginauthapi.exceptions;
+
+//Corpos de erro das falhas de autenticação já serializados em JSON
+//Durante um ataque de credential stuffing as falhas chegam a ser 100 vezes mais numerosas do que os logins com
+//sucesso, então em vez de montar um 'ErrorResponse' e serializar ele a cada falha, o corpo de cada tipo de falha é
+//serializado uma única vez e o mesmo array é escrito em todas as respostas
+//O formato é exatamente o do 'ErrorResponse', quem recebe o array só pode escrevê-lo na resposta, nunca alterá-lo
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
+
+public enum ErrorBody {
+
+    USER_NOT_FOUND(HttpStatus.NOT_FOUND, UserNotFoundException.MESSAGE),
+    LOGIN_THROTTLED(HttpStatus.TOO_MANY_REQUESTS, LoginThrottledException.MESSAGE),
+    HASHING_UNAVAILABLE(HttpStatus.SERVICE_UNAVAILABLE, PasswordHashingUnavailableException.MESSAGE),
+    INTERNAL_ERROR(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error");
+
+    private final HttpStatus status;
+    private final byte[] json;
+
+    ErrorBody(HttpStatus status, String message) {
+        this.status = status;
+        try {
+            this.json = new ObjectMapper().writeValueAsBytes(new ErrorResponse(status, message));
+        } catch (JsonProcessingException exception) {
+            throw new IllegalStateException("Could not serialize error body " + status, exception);
+        }
+    }
+
+    public HttpStatus status() {
+        return status;
+    }
+
+    public byte[] json() {
+        return json;
+    }
+}
@@ -0,0 +1,22 @@
+package br.com.fabiokusaba.loginauthapi.exceptions;
+
+//Exceção lançada quando um email ou um IP passou do limite de tentativas de login, o 'RestExceptionHandler' transforma
+//isso em um 429 com o header "Retry-After"
+//Durante um ataque essa exceção é lançada milhares de vezes por segundo, então ela não preenche o stack trace (que
+//seria a parte mais cara dela e que não tem utilidade nenhuma aqui)
+
+public class LoginThrottledException extends RuntimeException {
+
+    public static final String MESSAGE = "Too many login attempts, try again later";
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(long retryAfterSeconds) {
+        super(MESSAGE, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
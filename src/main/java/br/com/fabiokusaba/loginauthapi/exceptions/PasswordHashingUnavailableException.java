@@ -0,0 +1,24 @@
+package br.com.fabiokusaba.loginauthapi.exceptions;
+
+//Exceção lançada quando o executor de hashing de senhas está saturado, ou seja, a fila de espera está cheia ou a tarefa
+//ficou na fila mais tempo do que o permitido
+//Ela carrega quantos segundos o cliente deve esperar antes de tentar de novo, o 'RestExceptionHandler' transforma isso
+//em um 503 com o header "Retry-After"
+//Quando o executor satura ela é lançada para quase toda requisição de login, então ela também não preenche o stack
+//trace
+
+public class PasswordHashingUnavailableException extends RuntimeException {
+
+    public static final String MESSAGE = "Service temporarily unavailable, try again later";
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingUnavailableException(long retryAfterSeconds) {
+        super(MESSAGE, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
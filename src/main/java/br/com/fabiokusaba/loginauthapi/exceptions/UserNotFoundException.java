@@ -10,16 +10,22 @@ package br.com.fabiokusaba.loginauthapi.exceptions;
 //maneira quando estivermos fazendo a nossa regra de negócio e encontrar algum desses erros e tiver que lançar a
 //exceção nós lançamos essa exceção específica que vai nos auxiliar em momentos de debug da aplicação e na construção de
 //uma mensagem mais amigável para o usuário da nossa aplicação
+//Cada login com um email que não existe lança essa exceção, e durante um ataque isso acontece milhares de vezes por
+//segundo, então ela não preenche o stack trace, que seria a parte mais cara dela e não ajuda em nada no debug de um
+//email digitado errado
 
 public class UserNotFoundException extends RuntimeException {
 
+    public static final String MESSAGE = "User not found!";
+
     //Construtor onde chamamos a super classe que é 'RuntimeException' passando a nossa mensagem customizada
     public UserNotFoundException() {
-        super("User not found!");
+        this(MESSAGE);
     }
 
-    //Construtor onde recebo a mensagem por parâmetro e só passo essa mensagem para a super classe
+    //Construtor onde recebo a mensagem por parâmetro e só passo essa mensagem para a super classe, sem causa, sem
+    //exceções suprimidas e sem stack trace
     public UserNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
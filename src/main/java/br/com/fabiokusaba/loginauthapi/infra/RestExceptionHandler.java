@@ -11,9 +11,19 @@ package br.com.fabiokusaba.loginauthapi.infra;
 //Essa nossa classe iremos anotá-la com '@ControllerAdvice' e também ela vai precisar extender de
 //'ResponseEntityExceptionHandler'
 
+//As falhas de autenticação respondem com os corpos já serializados do 'ErrorBody' e são contadas por tipo no
+//'AuthMetrics', assim uma avalanche de falhas não aloca um 'ErrorResponse' nem serializa JSON a cada resposta
+
+import br.com.fabiokusaba.loginauthapi.exceptions.ErrorBody;
 import br.com.fabiokusaba.loginauthapi.exceptions.ErrorResponse;
+import br.com.fabiokusaba.loginauthapi.exceptions.LoginThrottledException;
+import br.com.fabiokusaba.loginauthapi.exceptions.PasswordHashingUnavailableException;
 import br.com.fabiokusaba.loginauthapi.exceptions.UserNotFoundException;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -22,23 +32,55 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 @ControllerAdvice
 public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 
+    @Autowired
+    private AuthMetrics authMetrics;
+
     //Aqui dentro vamos escrever os métodos que vão tratar cada uma das nossas exceções passando como parâmetro a nossa
     //exceção que queremos tratar
     //Por fim precisamos colocar nos nossos métodos a anotação '@ExceptionHandler' para o Spring identificar que esse é
     //o método responsável por tratar a exceção
 
     @ExceptionHandler(UserNotFoundException.class)
-    private ResponseEntity<ErrorResponse> userNotFoundHandler(UserNotFoundException exception) {
-        var threatResponse = new ErrorResponse(HttpStatus.NOT_FOUND, exception.getMessage());
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(threatResponse);
+    private ResponseEntity<?> userNotFoundHandler(UserNotFoundException exception) {
+
+        //Uma mensagem diferente da padrão não tem corpo pronto, então montamos o 'ErrorResponse' como antes
+        if (!UserNotFoundException.MESSAGE.equals(exception.getMessage())) {
+            authMetrics.failure(ErrorBody.USER_NOT_FOUND);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse(HttpStatus.NOT_FOUND, exception.getMessage()));
+        }
+        return this.respond(ErrorBody.USER_NOT_FOUND, 0);
+    }
+
+    //Quando o executor de hashing de senhas está saturado respondemos um 503 com o header "Retry-After" para o cliente
+    //saber quando pode tentar de novo
+    @ExceptionHandler(PasswordHashingUnavailableException.class)
+    private ResponseEntity<byte[]> passwordHashingUnavailableHandler(PasswordHashingUnavailableException exception) {
+        return this.respond(ErrorBody.HASHING_UNAVAILABLE, exception.getRetryAfterSeconds());
+    }
+
+    //Quando o email ou o IP passou do limite de tentativas de login respondemos um 429 com o header "Retry-After"
+    @ExceptionHandler(LoginThrottledException.class)
+    private ResponseEntity<byte[]> loginThrottledHandler(LoginThrottledException exception) {
+        return this.respond(ErrorBody.LOGIN_THROTTLED, exception.getRetryAfterSeconds());
     }
 
     //Podemos tratar não só as nossas exceções específicas como também exceções genéricas do Java como por exemplo a
     //'RuntimeException' retornando para o usuário uma resposta de erro customizada
 
     @ExceptionHandler(RuntimeException.class)
-    public ResponseEntity<ErrorResponse> runtimeExceptionHandler(RuntimeException exception) {
-        var threatResponse = new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error");
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(threatResponse);
+    public ResponseEntity<byte[]> runtimeExceptionHandler(RuntimeException exception) {
+        return this.respond(ErrorBody.INTERNAL_ERROR, 0);
+    }
+
+    //Conta a falha e responde com o corpo já serializado, o "Retry-After" só vai quando é maior que zero
+    private ResponseEntity<byte[]> respond(ErrorBody body, long retryAfterSeconds) {
+        authMetrics.failure(body);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(body.status())
+                .contentType(MediaType.APPLICATION_JSON);
+        if (retryAfterSeconds > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return response.body(body.json());
     }
 }
@@ -0,0 +1,57 @@
+package br.com.fabiokusaba.loginauthapi.infra.aot;
+
+//Hints de reflexão e de recursos para o processamento AOT do Spring e para a imagem nativa (perfis 'startup' e 'native')
+//O AOT descobre sozinho quase tudo o que a aplicação usa (beans, proxies do '@Configuration' do 'SecurityConfig',
+//entidades JPA e os corpos de requisição dos controllers), aqui ficam apenas os casos que ele não tem como enxergar:
+// - os DTOs devolvidos em 'ResponseEntity' sem tipo e os que o import e o export de usuários leem e escrevem com o
+//   'ObjectMapper' direto
+// - a projeção 'UserCredentials', que o Hibernate instancia por reflexão a partir do 'select new' das queries
+// - as classes internas do java-jwt que o Jackson usa para montar e ler o header e o payload dos tokens
+// - o script de schema da stack reativa
+//O Lombok não precisa de nada porque ele só existe em tempo de compilação
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.dto.ImportErrorDTO;
+import br.com.fabiokusaba.loginauthapi.dto.ImportReportDTO;
+import br.com.fabiokusaba.loginauthapi.dto.LoginRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.RefreshRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.RegisterRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.ResponseDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserPageDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserSummaryDTO;
+import br.com.fabiokusaba.loginauthapi.exceptions.ErrorResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+public class LoginAuthApiRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final Class<?>[] JSON_TYPES = {
+            LoginRequestDTO.class, RegisterRequestDTO.class, RefreshRequestDTO.class, ResponseDTO.class,
+            ImportReportDTO.class, ImportErrorDTO.class, UserPageDTO.class, UserSummaryDTO.class, ErrorResponse.class
+    };
+
+    private static final String[] JWT_TYPES = {
+            "com.auth0.jwt.impl.BasicHeader", "com.auth0.jwt.impl.PayloadImpl", "com.auth0.jwt.impl.JsonNodeClaim",
+            "com.auth0.jwt.impl.HeaderDeserializer", "com.auth0.jwt.impl.PayloadDeserializer",
+            "com.auth0.jwt.impl.HeaderSerializer", "com.auth0.jwt.impl.PayloadSerializer",
+            "com.auth0.jwt.impl.ClaimsSerializer", "com.auth0.jwt.impl.HeaderClaimsHolder",
+            "com.auth0.jwt.impl.PayloadClaimsHolder"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), JSON_TYPES);
+
+        hints.reflection().registerType(UserCredentials.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+
+        for (String type : JWT_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+
+        hints.resources().registerPattern("db/*.sql");
+    }
+}
@@ -0,0 +1,244 @@
+package br.com.fabiokusaba.loginauthapi.infra.audit;
+
+//Trilha de auditoria da autenticação: todo login (com sucesso ou não), cadastro e token recusado vira um 'AuthEvent'
+//Gravar o evento na própria requisição colocaria uma ida ao banco em cada login e em cada requisição com token ruim,
+//então as requisições só colocam o evento em uma fila circular sem locks ('AuthEventRingBuffer') e uma thread própria
+//esvazia a fila gravando os eventos em lotes pelo 'AuthEventSink'
+//Quando a fila enche (o banco está lento ou fora) a política configurada decide: 'drop' descarta o evento e conta o
+//descarte, 'block' segura a requisição até ter espaço ou até o 'block-timeout', e aí descarta também
+//Na parada da aplicação a thread grava tudo o que ainda está na fila antes de o banco ser fechado
+//O atraso entre o evento e a gravação, a fila e os descartes ficam expostos como métricas ('auth.audit.*')
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+public class AuthAuditLog implements SmartLifecycle, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthAuditLog.class);
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private final AuthEventSink sink;
+    private final AuthEventRingBuffer buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long blockTimeoutNanos;
+    private final Duration shutdownTimeout;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder overflowDrops = new LongAdder();
+    private final LongAdder failedDrops = new LongAdder();
+    private final LongAdder shutdownDrops = new LongAdder();
+
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    //Timer do atraso entre o evento e a gravação, ele só existe depois que o Micrometer chama o 'bindTo'
+    private volatile Timer lag;
+
+    public AuthAuditLog(AuthEventSink sink,
+                        @Value("${api.security.audit.enabled:true}") boolean enabled,
+                        @Value("${api.security.audit.buffer-capacity:8192}") int bufferCapacity,
+                        @Value("${api.security.audit.overflow:drop}") String overflow,
+                        @Value("${api.security.audit.block-timeout:PT0.05S}") Duration blockTimeout,
+                        @Value("${api.security.audit.batch-size:500}") int batchSize,
+                        @Value("${api.security.audit.flush-interval:PT0.2S}") Duration flushInterval,
+                        @Value("${api.security.audit.shutdown-timeout:PT10S}") Duration shutdownTimeout) {
+        this.sink = sink;
+        this.enabled = enabled;
+        this.buffer = new AuthEventRingBuffer(bufferCapacity);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    //Chamado pelas requisições, nunca faz I/O: no pior caso (política 'block' com a fila cheia) espera o
+    //'block-timeout'
+    public void record(AuthEvent.Type type, String email, String ip, String reason) {
+        if (!enabled) {
+            return;
+        }
+        if (!running) {
+            shutdownDrops.increment();
+            return;
+        }
+
+        AuthEvent event = new AuthEvent(null, type, truncate(email, AuthEvent.MAX_EMAIL_LENGTH),
+                truncate(ip, AuthEvent.MAX_IP_LENGTH), reason, Instant.now());
+        if (buffer.offer(event)) {
+            return;
+        }
+
+        //Fila cheia: acordamos a thread de gravação, que pode estar esperando o próximo 'flush-interval'
+        LockSupport.unpark(writer);
+        if (overflowPolicy == OverflowPolicy.BLOCK && this.offerUntilTimeout(event)) {
+            return;
+        }
+        overflowDrops.increment();
+    }
+
+    private boolean offerUntilTimeout(AuthEvent event) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            if (buffer.offer(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Laço da thread de gravação: grava o que tiver na fila em lotes de até 'batch-size' e, quando a fila esvazia,
+    //espera o 'flush-interval' para que os eventos seguintes se acumulem em um lote maior
+    //Depois do 'stop' ela continua até esvaziar a fila
+    private void drainLoop() {
+        List<AuthEvent> batch = new ArrayList<>(batchSize);
+        while (running || buffer.size() > 0) {
+            buffer.drain(batch, batchSize);
+            if (!batch.isEmpty()) {
+                this.write(batch);
+                batch.clear();
+            }
+            if (running && buffer.size() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    //Um lote que o banco recusou não é tentado de novo, senão a fila encheria atrás dele, os eventos são contados como
+    //descartados
+    private void write(List<AuthEvent> batch) {
+        try {
+            sink.write(batch);
+        } catch (RuntimeException exception) {
+            failedDrops.add(batch.size());
+            log.warn("Could not write {} auth events: {}", batch.size(), exception.getMessage());
+            return;
+        }
+
+        written.add(batch.size());
+        Timer timer = lag;
+        if (timer != null) {
+            Instant writtenAt = Instant.now();
+            for (AuthEvent event : batch) {
+                timer.record(Duration.between(event.getOccurredAt(), writtenAt));
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::drainLoop, "auth-audit-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    //Espera a thread gravar o que ficou na fila, o que não der tempo de gravar é contado como descartado
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = writer;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            int pending = buffer.size();
+            shutdownDrops.add(pending);
+            log.warn("Auth audit writer did not finish in {}, {} events were not written", shutdownTimeout, pending);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    //Paramos depois do servidor web (que para em 'DEFAULT_PHASE - 2048'), assim nenhuma requisição gera eventos depois
+    //da última gravação, e antes dos beans serem destruídos, com o banco ainda aberto
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        lag = Timer.builder("auth.audit.lag")
+                .description("Time between an auth event and it being written to the audit log")
+                .register(registry);
+        Gauge.builder("auth.audit.pending", buffer, AuthEventRingBuffer::size)
+                .description("Auth events waiting in the buffer to be written")
+                .register(registry);
+        Gauge.builder("auth.audit.capacity", buffer, AuthEventRingBuffer::capacity)
+                .register(registry);
+        FunctionCounter.builder("auth.audit.written", written, LongAdder::sum)
+                .description("Auth events written to the audit log")
+                .register(registry);
+        FunctionCounter.builder("auth.audit.dropped", overflowDrops, LongAdder::sum)
+                .description("Auth events that were not written to the audit log")
+                .tag("reason", "overflow")
+                .register(registry);
+        FunctionCounter.builder("auth.audit.dropped", failedDrops, LongAdder::sum)
+                .description("Auth events that were not written to the audit log")
+                .tag("reason", "write_failed")
+                .register(registry);
+        FunctionCounter.builder("auth.audit.dropped", shutdownDrops, LongAdder::sum)
+                .description("Auth events that were not written to the audit log")
+                .tag("reason", "shutdown")
+                .register(registry);
+    }
+
+    public int getPending() {
+        return buffer.size();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return overflowDrops.sum() + failedDrops.sum() + shutdownDrops.sum();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
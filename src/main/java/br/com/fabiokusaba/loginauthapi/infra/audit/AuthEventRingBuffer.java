@@ -0,0 +1,75 @@
+package br.com.fabiokusaba.loginauthapi.infra.audit;
+
+//Fila circular limitada entre as requisições (vários produtores) e a thread que grava os eventos (um único consumidor)
+//Não usa locks: cada produtor reserva uma posição com um CAS no 'tail' e só depois publica o evento na posição, e o
+//consumidor espera a publicação quando encontra uma posição reservada mas ainda vazia
+//O consumidor libera a posição antes de avançar o 'head', assim um produtor só reaproveita uma posição que já foi lida
+//A capacidade é arredondada para uma potência de 2 para o índice ser um 'and' em vez de um resto de divisão
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+final class AuthEventRingBuffer {
+
+    private final AtomicReferenceArray<AuthEvent> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+
+    //Só o consumidor escreve o 'head', os produtores leem para saber se ainda tem espaço
+    private volatile long head;
+
+    AuthEventRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    //Devolve false quando a fila está cheia, o que fazer nesse caso é decisão de quem chama
+    boolean offer(AuthEvent event) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        slots.setRelease((int) position & mask, event);
+        return true;
+    }
+
+    //Move até 'max' eventos para a lista, só pode ser chamado pela thread consumidora
+    int drain(List<AuthEvent> target, int max) {
+        long position = head;
+        int drained = 0;
+        while (drained < max && position < tail.get()) {
+            int index = (int) position & mask;
+            AuthEvent event;
+
+            //A posição já foi reservada mas o produtor ainda não publicou o evento, é questão de instantes
+            while ((event = slots.getAcquire(index)) == null) {
+                Thread.onSpinWait();
+            }
+            slots.setRelease(index, null);
+            target.add(event);
+            position++;
+            head = position;
+            drained++;
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    boolean isFull() {
+        return tail.get() - head > mask;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,14 @@
+package br.com.fabiokusaba.loginauthapi.infra.audit;
+
+//Destino dos lotes de eventos de auditoria, chamado só pela thread de gravação do 'AuthAuditLog'
+//A stack servlet grava com um batch insert do JDBC ('JdbcAuthEventSink') e a stack reativa declara o seu pelo R2DBC,
+//como a thread de gravação é nossa e não do event loop as duas podem bloquear até o lote estar gravado
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+
+import java.util.List;
+
+public interface AuthEventSink {
+
+    void write(List<AuthEvent> events);
+}
@@ -0,0 +1,35 @@
+package br.com.fabiokusaba.loginauthapi.infra.audit;
+
+//Grava os lotes de eventos de auditoria com um único batch insert, sem passar pelo JPA, que inseriria linha a linha
+//por causa do id gerado pelo banco
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class JdbcAuthEventSink implements AuthEventSink {
+
+    private static final String INSERT_EVENT = "insert into auth_events (type, email, ip, reason, occurred_at) " +
+            "values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcAuthEventSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void write(List<AuthEvent> events) {
+        List<Object[]> batch = new ArrayList<>(events.size());
+        for (AuthEvent event : events) {
+            batch.add(new Object[]{event.getType().name(), event.getEmail(), event.getIp(), event.getReason(),
+                    Timestamp.from(event.getOccurredAt())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_EVENT, batch);
+    }
+}
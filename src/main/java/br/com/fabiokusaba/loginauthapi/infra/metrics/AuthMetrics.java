@@ -0,0 +1,102 @@
+package br.com.fabiokusaba.loginauthapi.infra.metrics;
+
+//Métricas dos caminhos quentes de autenticação: login, cadastro e autenticação das requisições
+//Temos um timer por fase (busca do usuário, verificação do hash, assinatura do token, verificação do token e carga do
+//principal) e contadores por resultado, assim quando o p99 do login sobe conseguimos ver em qual fase o tempo foi gasto
+//Todos os timers e contadores são registrados uma única vez aqui no construtor e guardados em arrays indexados pelo
+//'ordinal' dos enums, então registrar uma medição não procura nada no 'MeterRegistry' e não aloca objetos, o que
+//permite deixar essas métricas ligadas mesmo com a aplicação em carga máxima
+//Elas ficam disponíveis no endpoint "/actuator/metrics" (auth.phase, auth.login, auth.register, auth.token e
+//auth.failure), que só os administradores acessam
+//As falhas são só contadas por tipo, nunca logadas uma a uma, porque durante um ataque o log viraria o gargalo
+
+import br.com.fabiokusaba.loginauthapi.exceptions.ErrorBody;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class AuthMetrics {
+
+    //Fases que medimos com timers
+    public enum Phase {
+        LOOKUP, HASH_VERIFY, TOKEN_SIGN, TOKEN_VERIFY, PRINCIPAL_LOAD
+    }
+
+    //Resultados possíveis de uma tentativa de login
+    public enum LoginOutcome {
+        SUCCESS, BAD_PASSWORD, UNKNOWN_USER, THROTTLED
+    }
+
+    //Resultados possíveis de uma tentativa de cadastro
+    public enum RegisterOutcome {
+        SUCCESS, DUPLICATE
+    }
+
+    //Resultados possíveis da verificação de um token
+    //MALFORMED é um token que nem tem a forma de um JWT, INVALID tem a forma mas foi recusado (assinatura, emissor, chave)
+    public enum TokenOutcome {
+        VALID, MALFORMED, INVALID, EXPIRED, MISSING, REVOKED
+    }
+
+    private final Timer[] phases;
+    private final Counter[] logins;
+    private final Counter[] registers;
+    private final Counter[] tokens;
+    private final Counter[] failures;
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.phases = new Timer[Phase.values().length];
+        for (Phase phase : Phase.values()) {
+            phases[phase.ordinal()] = Timer.builder("auth.phase")
+                    .description("Time spent in each phase of login and request authentication")
+                    .tag("phase", tagValue(phase))
+                    .register(registry);
+        }
+
+        this.logins = counters(registry, "auth.login", "Login attempts by outcome", LoginOutcome.values());
+        this.registers = counters(registry, "auth.register", "Register attempts by outcome", RegisterOutcome.values());
+        this.tokens = counters(registry, "auth.token", "Token verifications by outcome", TokenOutcome.values());
+        this.failures = counters(registry, "auth.failure", "Error responses by failure type", ErrorBody.values());
+    }
+
+    //Registra o tempo de uma fase a partir do 'System.nanoTime()' lido no início dela
+    public void record(Phase phase, long startNanos) {
+        phases[phase.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void login(LoginOutcome outcome) {
+        logins[outcome.ordinal()].increment();
+    }
+
+    public void register(RegisterOutcome outcome) {
+        registers[outcome.ordinal()].increment();
+    }
+
+    public void token(TokenOutcome outcome) {
+        tokens[outcome.ordinal()].increment();
+    }
+
+    //Conta uma resposta de erro servida pelo 'RestExceptionHandler' (ou pelo handler da stack reativa)
+    public void failure(ErrorBody type) {
+        failures[type.ordinal()].increment();
+    }
+
+    private static Counter[] counters(MeterRegistry registry, String name, String description, Enum<?>[] outcomes) {
+        Counter[] counters = new Counter[outcomes.length];
+        for (Enum<?> outcome : outcomes) {
+            counters[outcome.ordinal()] = Counter.builder(name)
+                    .description(description)
+                    .tag("outcome", tagValue(outcome))
+                    .register(registry);
+        }
+        return counters;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
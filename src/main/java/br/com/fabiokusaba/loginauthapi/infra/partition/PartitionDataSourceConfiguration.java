@@ -0,0 +1,47 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+//Configuração do modo particionado da tabela de usuários, ligado pelo perfil 'partitioned'
+//Cada URL de 'api.user.partitions.urls' vira uma partição com o seu próprio pool Hikari, e a primeira é a principal:
+//o Hibernate cria nela o schema completo, como antes, e nas outras rodamos o 'db/partition-schema.sql', que só tem as
+//tabelas particionadas ('users' e 'user_changes')
+//Como declaramos o nosso 'DataSource' o do Spring Boot não é criado, o JPA e o 'JdbcTemplate' passam a usar o roteador
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "api.user.partitions.enabled", havingValue = "true")
+public class PartitionDataSourceConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public PartitionRoutingDataSource dataSource(@Value("${api.user.partitions.urls}") List<String> urls,
+                                                 @Value("${spring.datasource.username:sa}") String username,
+                                                 @Value("${spring.datasource.password:}") String password,
+                                                 @Value("${api.user.partitions.pool-size:10}") int poolSize) {
+        List<HikariDataSource> partitions = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource partition = new HikariDataSource();
+            partition.setPoolName("users-partition-" + i);
+            partition.setJdbcUrl(urls.get(i).trim());
+            partition.setUsername(username);
+            partition.setPassword(password);
+            partition.setMaximumPoolSize(poolSize);
+            partitions.add(partition);
+        }
+
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("db/partition-schema.sql"));
+        for (HikariDataSource partition : partitions.subList(1, partitions.size())) {
+            DatabasePopulatorUtils.execute(schema, partition);
+        }
+        return new PartitionRoutingDataSource(partitions);
+    }
+}
@@ -0,0 +1,73 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+//DataSource do modo particionado: um pool Hikari por partição e a escolha da partição feita por conexão
+//A partição vem de um 'ThreadLocal' que o 'UserPartitioning' preenche em volta das operações de usuário, e sem
+//partição definida a conexão sai da partição 0, que é a principal e guarda também as tabelas que não são particionadas
+//(refresh tokens, tokens revogados, auditoria)
+//O Hibernate pega a conexão no começo da transação, então a partição precisa estar definida antes da transação abrir,
+//é por isso que quem usa o 'UserPartitioning' chama ele por fora do 'TransactionTemplate'
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class PartitionRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final List<HikariDataSource> partitions;
+
+    public PartitionRoutingDataSource(List<HikariDataSource> partitions) {
+        this.partitions = List.copyOf(partitions);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            targets.put(i, partitions.get(i));
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(partitions.get(0));
+        this.setLenientFallback(false);
+        this.afterPropertiesSet();
+    }
+
+    //Partição da thread atual, nula fora de uma operação de usuário
+    static Integer current() {
+        return CURRENT.get();
+    }
+
+    //Roda a ação com as conexões vindo da partição e volta para a partição anterior no fim
+    static <T> T with(int partition, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(partition);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return CURRENT.get();
+    }
+
+    public int size() {
+        return partitions.size();
+    }
+
+    public List<HikariDataSource> getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public void close() {
+        partitions.forEach(HikariDataSource::close);
+    }
+}
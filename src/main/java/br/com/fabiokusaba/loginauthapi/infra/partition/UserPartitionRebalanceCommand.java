@@ -0,0 +1,33 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+//Comando para mudar a quantidade de partições dos usuários, roda uma vez e termina
+//Sobe só os pools das partições e o 'UserPartitionRebalancer' (sem servidor web, sem JPA e sem as tarefas agendadas),
+//move os usuários para 'api.user.partitions.rebalance-to' partições e sai, com código diferente de zero se falhar
+//Deve rodar com todas as réplicas paradas e com todos os bancos na lista (os atuais e os novos), depois as réplicas
+//sobem com a lista da quantidade nova
+//Com o jar: java -Dloader.main=br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitionRebalanceCommand \
+//  -cp login-auth-api.jar org.springframework.boot.loader.launch.PropertiesLauncher \
+//  --api.user.partitions.urls=<todas as partições> --api.user.partitions.rebalance-to=<quantidade nova>
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+public class UserPartitionRebalanceCommand {
+
+    public static void main(String[] args) {
+        run(args);
+    }
+
+    public static UserPartitionRebalancer.Report run(String... args) {
+        try (ConfigurableApplicationContext context =
+                     new SpringApplicationBuilder(PartitionDataSourceConfiguration.class, UserPartitionRebalancer.class)
+                             .profiles("partitioned")
+                             .web(WebApplicationType.NONE)
+                             .run(args)) {
+            int target = context.getEnvironment().getRequiredProperty("api.user.partitions.rebalance-to",
+                    Integer.class);
+            return context.getBean(UserPartitionRebalancer.class).rebalance(target);
+        }
+    }
+}
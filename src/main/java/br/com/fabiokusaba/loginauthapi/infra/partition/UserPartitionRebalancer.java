@@ -0,0 +1,118 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+//Ferramenta para mudar a quantidade de partições dos usuários
+//Ela não roda na subida da aplicação: quem chama é o 'UserPartitionRebalanceCommand', um processo único que roda com
+//as réplicas paradas, porque duas réplicas copiando e apagando as mesmas linhas ao mesmo tempo brigariam pela chave
+//primária e réplicas antigas continuariam procurando os usuários com a quantidade anterior
+//Ela percorre todas as partições configuradas em páginas pelo id (a mesma busca por chave usada no resto da
+//aplicação, sem 'offset'): cada usuário cuja partição na quantidade nova é outra é copiado para lá com um batch insert
+//e só depois apagado da partição de origem
+//As duas partições são bancos diferentes, então não existe uma transação que cubra a cópia e a remoção, se o comando
+//cair no meio basta rodar de novo com o mesmo valor: os usuários que já estão no destino não são copiados de novo e
+//só saem da origem
+//O 'user_changes' não é movido, ele só guarda as mudanças recentes e a mudança de partição não muda os dados de
+//ninguém
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+@Component
+@ConditionalOnProperty(name = "api.user.partitions.enabled", havingValue = "true")
+public class UserPartitionRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(UserPartitionRebalancer.class);
+
+    private static final String COLUMNS = "id, name, name_normalized, email, email_normalized, password, " +
+            "token_version, credential_cache_disabled, admin";
+
+    private static final String SELECT_PAGE = "select " + COLUMNS + " from users where id > ? order by id limit ?";
+
+    private static final String INSERT_USER = "insert into users (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_USER = "delete from users where id = ?";
+
+    //Resultado de uma execução, 'moved' conta os usuários apagados da origem (inclusive os que já estavam no destino)
+    public record Report(int partitions, int target, long scanned, long moved, Duration duration) {
+    }
+
+    private final List<JdbcTemplate> partitions;
+    private final int pageSize;
+
+    public UserPartitionRebalancer(PartitionRoutingDataSource dataSource,
+                                   @Value("${api.user.partitions.rebalance-page-size:1000}") int pageSize) {
+        this.partitions = dataSource.getPartitions().stream().map(JdbcTemplate::new).toList();
+        this.pageSize = pageSize;
+    }
+
+    //Move os usuários para que cada um fique na partição dele com 'target' partições
+    //Só pode rodar sem tráfego, um cadastro feito durante a execução pode cair na partição da quantidade antiga
+    public Report rebalance(int target) {
+        if (target < 1 || target > partitions.size()) {
+            throw new IllegalArgumentException("Cannot rebalance users to " + target + " partitions, " +
+                    partitions.size() + " are configured");
+        }
+
+        long start = System.nanoTime();
+        long scanned = 0;
+        long moved = 0;
+        for (int source = 0; source < partitions.size(); source++) {
+            JdbcTemplate from = partitions.get(source);
+            String lastId = "";
+            List<Object[]> page;
+            do {
+                page = from.query(SELECT_PAGE, (rs, rowNum) -> new Object[]{rs.getString(1), rs.getString(2),
+                        rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getInt(7),
+                        rs.getBoolean(8), rs.getBoolean(9)}, lastId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                scanned += page.size();
+                lastId = (String) page.get(page.size() - 1)[0];
+
+                Map<Integer, List<Object[]>> destinations = new TreeMap<>();
+                for (Object[] user : page) {
+                    int destination = UserPartitioning.partitionOf((String) user[4], target);
+                    if (destination != source) {
+                        destinations.computeIfAbsent(destination, key -> new ArrayList<>()).add(user);
+                    }
+                }
+                for (Map.Entry<Integer, List<Object[]>> destination : destinations.entrySet()) {
+                    this.copy(partitions.get(destination.getKey()), destination.getValue());
+                    from.batchUpdate(DELETE_USER, destination.getValue().stream()
+                            .map(user -> new Object[]{user[0]}).toList());
+                    moved += destination.getValue().size();
+                }
+            } while (page.size() == pageSize);
+        }
+
+        Report report = new Report(partitions.size(), target, scanned, moved,
+                Duration.ofNanos(System.nanoTime() - start));
+        log.info("User partitions rebalanced to {} of {}: {} users scanned, {} moved in {} ms", report.target(),
+                report.partitions(), report.scanned(), report.moved(), report.duration().toMillis());
+        return report;
+    }
+
+    //Copia os usuários para o destino, pulando os que já estão lá por causa de uma execução interrompida
+    private void copy(JdbcTemplate to, List<Object[]> users) {
+        String placeholders = String.join(", ", Collections.nCopies(users.size(), "?"));
+        Set<String> existing = new HashSet<>(to.queryForList("select id from users where id in (" + placeholders + ")",
+                String.class, users.stream().map(user -> user[0]).toArray()));
+        List<Object[]> missing = users.stream().filter(user -> !existing.contains((String) user[0])).toList();
+        if (!missing.isEmpty()) {
+            to.batchUpdate(INSERT_USER, missing);
+        }
+    }
+}
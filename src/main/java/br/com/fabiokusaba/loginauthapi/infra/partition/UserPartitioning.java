@@ -0,0 +1,130 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+//Regra de particionamento dos usuários: a partição de um usuário é o CRC32 do email normalizado módulo a quantidade de
+//partições, então ela só depende do email e qualquer réplica chega na mesma partição sem consultar nada
+//Todas as operações na tabela 'users' (e no 'user_changes', que fica na mesma partição do usuário para a mudança ser
+//gravada na mesma transação) passam por aqui:
+// - por email ('forEmail'): login, cadastro, troca de senha, filtro de segurança
+// - em lote ('byPartition', 'group'): o lote é dividido pelas partições e cada parte vai para a sua
+// - sem email ('findFirst', 'forEachPartition'): busca por id e leitura do log de mudanças, que passam por todas
+//Sem o modo particionado existe uma partição só e as operações rodam direto, sem mexer no contexto
+//A quantidade de partições é sempre a quantidade de bancos configurados, para mudar ela os usuários são movidos antes
+//pelo 'UserPartitionRebalanceCommand' com as réplicas paradas e as réplicas sobem de novo com a lista nova
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+@Component
+public class UserPartitioning {
+
+    private final int count;
+
+    public UserPartitioning(DataSource dataSource) {
+        this.count = routing(dataSource).map(PartitionRoutingDataSource::size).orElse(1);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    //Estável entre versões e entre réplicas, é o que o 'UserPartitionRebalancer' usa para saber o destino de cada linha
+    public static int partitionOf(String emailNormalized, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(emailNormalized.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % count);
+    }
+
+    //Sem email (um login sem o campo) não tem partição certa, a busca vai para a principal e só não encontra ninguém
+    public int partitionOf(String email) {
+        return count == 1 || email == null ? 0 : partitionOf(User.normalizeEmail(email), count);
+    }
+
+    public <T> T forEmail(String email, Supplier<T> action) {
+        return count == 1 ? action.get() : this.onPartition(this.partitionOf(email), action);
+    }
+
+    public <T> T onPartition(int partition, Supplier<T> action) {
+        if (count == 1) {
+            return action.get();
+        }
+
+        //Dentro de uma transação a conexão já está presa a uma partição, trocar o contexto aqui faria a operação cair na
+        //partição errada sem erro nenhum
+        Integer current = PartitionRoutingDataSource.current();
+        if (TransactionSynchronizationManager.isActualTransactionActive() && !Objects.equals(current, partition)) {
+            throw new IllegalStateException("Cannot switch to user partition " + partition +
+                    " inside a transaction bound to partition " + current);
+        }
+        return PartitionRoutingDataSource.with(partition, action);
+    }
+
+    public void forEachPartition(IntConsumer action) {
+        for (int partition = 0; partition < count; partition++) {
+            int current = partition;
+            this.onPartition(partition, () -> {
+                action.accept(current);
+                return null;
+            });
+        }
+    }
+
+    //Busca em todas as partições até achar, usado nas buscas que não têm o email (por id)
+    public <T> Optional<T> findFirst(Supplier<Optional<T>> query) {
+        for (int partition = 0; partition < count; partition++) {
+            Optional<T> found = this.onPartition(partition, query);
+            if (found.isPresent()) {
+                return found;
+            }
+        }
+        return Optional.empty();
+    }
+
+    //Divide os itens pela partição do email, mantendo a ordem de chegada dentro de cada partição
+    public <T> Map<Integer, List<T>> group(Collection<T> items, Function<T, String> emailNormalized) {
+        if (count == 1) {
+            return Map.of(0, items instanceof List<T> list ? list : new ArrayList<>(items));
+        }
+        Map<Integer, List<T>> groups = new TreeMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(partitionOf(emailNormalized.apply(item), count), key -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    //Roda uma consulta 'in' por partição só com os emails daquela partição e junta os resultados
+    public <T> List<T> byPartition(Collection<String> emailsNormalized, Function<Collection<String>, List<T>> query) {
+        if (count == 1) {
+            return query.apply(emailsNormalized);
+        }
+        List<T> results = new ArrayList<>();
+        this.group(emailsNormalized, Function.identity())
+                .forEach((partition, emails) -> results.addAll(this.onPartition(partition, () -> query.apply(emails))));
+        return results;
+    }
+
+    private static Optional<PartitionRoutingDataSource> routing(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(PartitionRoutingDataSource.class)
+                    ? Optional.of(dataSource.unwrap(PartitionRoutingDataSource.class))
+                    : Optional.empty();
+        } catch (SQLException exception) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Responsável por escolher o custo (strength) do BCrypt de acordo com o hardware em que a aplicação está rodando
+//Cada ponto a mais de custo dobra o tempo do hash, então medimos o tempo de alguns hashes no custo mínimo, projetamos
+//os custos acima dele e escolhemos o maior custo cuja latência cabe no alvo configurado (por exemplo 100ms por hash)
+//Depois conferimos o custo escolhido medindo ele de verdade e descemos um ponto se a projeção tiver sido otimista
+//Usamos o pior tempo das amostras como aproximação do p99 porque são poucas amostras
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+public final class BCryptStrengthCalibrator {
+
+    private static final Logger log = LoggerFactory.getLogger(BCryptStrengthCalibrator.class);
+
+    //Limites aceitos pelo próprio BCrypt
+    private static final int MAX_STRENGTH = 31;
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int SAMPLES = 5;
+    private static final String SAMPLE_PASSWORD = "calibration-password";
+
+    private BCryptStrengthCalibrator() {
+    }
+
+    public static int calibrate(Duration targetLatency, int minStrength, int maxStrength) {
+        int ceiling = Math.min(maxStrength, MAX_STRENGTH);
+        long target = targetLatency.toNanos();
+
+        long baseline = worstOf(minStrength, WARMUP_ROUNDS, SAMPLES);
+
+        int chosen = minStrength;
+        while (chosen < ceiling && baseline * (1L << (chosen + 1 - minStrength)) <= target) {
+            chosen++;
+        }
+
+        //Conferindo o custo escolhido com uma medição real
+        long measured = chosen == minStrength ? baseline : worstOf(chosen, 0, SAMPLES);
+        while (chosen > minStrength && measured > target) {
+            chosen--;
+            measured = worstOf(chosen, 0, SAMPLES);
+        }
+
+        log.info("BCrypt strength calibrated to {} ({} ms per hash, target {} ms)",
+                chosen, Duration.ofNanos(measured).toMillis(), targetLatency.toMillis());
+        return chosen;
+    }
+
+    private static long worstOf(int strength, int warmupRounds, int samples) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        for (int i = 0; i < warmupRounds; i++) {
+            encoder.encode(SAMPLE_PASSWORD);
+        }
+
+        long worst = 0;
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            encoder.encode(SAMPLE_PASSWORD);
+            worst = Math.max(worst, System.nanoTime() - start);
+        }
+        return worst;
+    }
+}
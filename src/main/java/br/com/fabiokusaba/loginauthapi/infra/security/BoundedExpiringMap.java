@@ -0,0 +1,144 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Mapa com tamanho máximo e expiração por entrada, a base do 'TokenCache' e do 'CredentialCache'
+//As entradas ficam divididas em segmentos pelo hash da chave, cada segmento é um 'LinkedHashMap' em ordem de acesso
+//com o seu próprio lock, então:
+// - 'get' e 'put' são uma busca no segmento e, com o segmento cheio, a remoção da entrada usada há mais tempo dele
+//   (LRU por segmento), sem percorrer o mapa, com o tamanho total nunca passando do 'maxSize'
+// - requisições em segmentos diferentes não disputam o mesmo lock e o trecho protegido é só a operação no mapa
+// - uma entrada expirada encontrada no 'get' sai na hora, as que ninguém mais busca saem pelo 'purgeExpired', que o
+//   dono do mapa chama em uma tarefa agendada e nunca na thread da requisição
+//As remoções (LRU, expiração, 'removeIf', 'clear') são contadas em 'evictions' para as métricas do dono
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+final class BoundedExpiringMap<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final ToLongFunction<V> expiresAtMillis;
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    BoundedExpiringMap(int maxSize, ToLongFunction<V> expiresAtMillis) {
+        //Cada segmento recebe a mesma parte do 'maxSize', arredondada para baixo para que a soma nunca passe dele
+        int count = Math.max(1, Math.min(MAX_SEGMENTS, maxSize));
+        int segmentSize = Math.max(1, maxSize / count);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(segmentSize, evictions);
+        }
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    //Valor ainda válido da chave ou nulo, uma entrada expirada é removida
+    V get(K key, long nowMillis) {
+        Segment<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            V value = segment.get(key);
+            if (value != null && expiresAtMillis.applyAsLong(value) <= nowMillis) {
+                segment.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return value;
+        }
+    }
+
+    void put(K key, V value) {
+        Segment<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    boolean remove(K key) {
+        Segment<K, V> segment = this.segmentFor(key);
+        synchronized (segment) {
+            if (segment.remove(key) != null) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    //Percorre o mapa inteiro segmento por segmento, só para tarefas em segundo plano (mudanças de usuários)
+    void removeIf(Predicate<V> predicate) {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<V> values = segment.values().iterator();
+                while (values.hasNext()) {
+                    if (predicate.test(values.next())) {
+                        values.remove();
+                        evictions.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    void purgeExpired(long nowMillis) {
+        this.removeIf(value -> expiresAtMillis.applyAsLong(value) <= nowMillis);
+    }
+
+    void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                evictions.add(segment.size());
+                segment.clear();
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    //Segmento em ordem de acesso, com o segmento cheio o 'put' descarta a entrada usada há mais tempo
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Cache das verificações de senha que deram certo no login
+//Boa parte dos logins vem de contas de serviço e scripts que mandam as mesmas credenciais a cada poucos minutos, e cada
+//um desses logins pagava um BCrypt inteiro, então guardamos por pouco tempo ('ttl') o fato de que aquela senha bateu
+//com aquele hash salvo
+//A chave é um HMAC-SHA256 do email normalizado, da senha e do hash salvo, com uma chave aleatória gerada na subida que
+//nunca sai da memória: o cache não guarda a senha nem algo que permita testar senhas fora desta instância
+//Como o hash salvo faz parte da chave, uma troca de senha (ou um rehash) faz a busca cair em outra chave e o login
+//volta a passar pelo BCrypt, as entradas antigas saem pelo 'UserChangeLog', pelo 'ttl' (na busca ou na limpeza
+//agendada) ou pelo tamanho máximo, aí sai a verificação usada há mais tempo
+//As entradas ficam no mesmo 'BoundedExpiringMap' do 'TokenCache', então o login nunca percorre o cache inteiro
+//Só entra no cache uma verificação que deu certo, um login com senha errada ou de um email novo paga sempre o custo
+//inteiro, e as contas com 'credential_cache_disabled' nunca usam o cache
+//Fica desligado por padrão ('api.security.credential-cache.enabled') e publica o tamanho, os hits/misses/evictions e
+//a taxa de acerto como métricas ('auth.credential.cache.*')
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeListener;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class CredentialCache implements MeterBinder, UserChangeListener {
+
+    //Separa os campos dentro do HMAC para que "a" + "bc" e "ab" + "c" não gerem a mesma chave
+    private static final byte SEPARATOR = 0;
+
+    //Assim como o 'MessageDigest' do 'TokenCache' o 'Mac' não é thread-safe, cada chamada clona o protótipo
+    private final Mac hmac;
+
+    private final BoundedExpiringMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final boolean enabled;
+    private final long ttlMillis;
+
+    //Log de mudanças que avisa esse cache das escritas, com ele desatualizado demais o cache é ignorado
+    private volatile UserChangeLog changeLog;
+
+    public CredentialCache(@Value("${api.security.credential-cache.enabled:false}") boolean enabled,
+                           @Value("${api.security.credential-cache.ttl:PT5M}") Duration ttl,
+                           @Value("${api.security.credential-cache.max-size:10000}") int maxSize) {
+        this.enabled = enabled && maxSize > 0 && !ttl.isZero();
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new BoundedExpiringMap<>(maxSize, Entry::expiresAtMillis);
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        try {
+            this.hmac = Mac.getInstance("HmacSHA256");
+            this.hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException("HmacSHA256 not available", exception);
+        }
+    }
+
+    //Essa senha já foi verificada contra o hash salvo atual desse usuário há menos do que o 'ttl'
+    public boolean isVerified(CharSequence rawPassword, UserCredentials user) {
+        if (!this.usable(user)) {
+            return false;
+        }
+        if (this.isStale()) {
+            misses.increment();
+            return false;
+        }
+
+        String key = this.key(rawPassword, user);
+        Entry cached = entries.get(key, System.currentTimeMillis());
+        if (cached == null) {
+            misses.increment();
+            return false;
+        }
+
+        hits.increment();
+        return true;
+    }
+
+    //Guarda uma verificação que acabou de dar certo pelo BCrypt
+    public void put(CharSequence rawPassword, UserCredentials user) {
+        if (!this.usable(user)) {
+            return;
+        }
+
+        String key = this.key(rawPassword, user);
+        entries.put(key, new Entry(User.normalizeEmail(user.email()), System.currentTimeMillis() + ttlMillis));
+    }
+
+    //Qualquer mudança em um usuário (senha, hash refeito) tira as verificações dele do cache, um cadastro novo não tem
+    //nada no cache então ele é ignorado
+    @Override
+    public void onUserChanges(List<UserChange> changes) {
+        Set<String> emails = new HashSet<>();
+        for (UserChange change : changes) {
+            if (change.getType() != UserChange.Type.CREATED) {
+                emails.add(change.getEmailNormalized());
+            }
+        }
+        if (emails.isEmpty() || entries.isEmpty()) {
+            return;
+        }
+
+        entries.removeIf(entry -> emails.contains(entry.emailNormalized()));
+    }
+
+    //Tira do cache as verificações vencidas que ninguém mais buscou, fora da thread do login
+    @Scheduled(fixedDelayString = "${api.security.credential-cache.purge-interval:PT1M}")
+    public void purgeExpired() {
+        if (enabled) {
+            entries.purgeExpired(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void attach(UserChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public void onResync() {
+        entries.clear();
+    }
+
+    private boolean usable(UserCredentials user) {
+        return enabled && !user.credentialCacheDisabled() && user.password() != null;
+    }
+
+    private String key(CharSequence rawPassword, UserCredentials user) {
+        Mac mac = this.newMac();
+        mac.update(User.normalizeEmail(user.email()).getBytes(StandardCharsets.UTF_8));
+        mac.update(SEPARATOR);
+        mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+        mac.update(SEPARATOR);
+        byte[] digest = mac.doFinal(user.password().getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) hmac.clone();
+        } catch (CloneNotSupportedException exception) {
+            throw new IllegalStateException("HmacSHA256 is not cloneable", exception);
+        }
+    }
+
+    //Sem uma leitura do 'UserChangeLog' dentro do limite esse cache pode ter entradas de usuários que já mudaram
+    private boolean isStale() {
+        UserChangeLog log = changeLog;
+        return log != null && log.isOverStalenessLimit();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("auth.credential.cache.size", this, CredentialCache::size).register(registry);
+        Gauge.builder("auth.credential.cache.hit.ratio", this, CredentialCache::getHitRatio).register(registry);
+        FunctionCounter.builder("auth.credential.cache.hits", this, CredentialCache::getHits).register(registry);
+        FunctionCounter.builder("auth.credential.cache.misses", this, CredentialCache::getMisses).register(registry);
+        FunctionCounter.builder("auth.credential.cache.evictions", this, CredentialCache::getEvictions)
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return entries.evictions();
+    }
+
+    //Fração dos logins elegíveis que não precisaram do BCrypt desde a subida
+    public double getHitRatio() {
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    //O email fica na entrada só para a remoção pelo 'UserChangeLog'
+    private record Entry(String emailNormalized, long expiresAtMillis) {
+    }
+}
@@ -6,6 +6,7 @@ package br.com.fabiokusaba.loginauthapi.infra.security;
 //Aqui precisamos colocar a anotação '@Component' para que essa classe seja visível para o Spring
 
 import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
 import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,6 +24,9 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPartitioning userPartitioning;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
 
@@ -30,7 +34,8 @@ public class CustomUserDetailsService implements UserDetailsService {
         //User que vai ser o nosso usuário e como o nosso repository retorna um Optional nós precisamos fazer a mesma
         //coisa 'orElseThrow'
         //Aqui precisamos lançar uma exceção específica do Spring Security
-        User user = this.userRepository.findByEmail(username).orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        User user = userPartitioning.forEmail(username, () -> this.userRepository.findByEmail(username))
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
         //Assim que eu encontrar o usuário vou ter que retornar um objeto do tipo 'UserDetails' que é o 'User' na visão
         //do Spring Security e não 'User' entidade aqui da nossa classe, então precisamos passar o email, a senha e um
@@ -0,0 +1,49 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Autorização de quem chama a introspecção de tokens ("/auth/introspect")
+//A introspecção diz se qualquer token é válido e devolve o email do dono, então ela não pode ficar aberta: só o
+//gateway chama esse endpoint e ele se identifica com um segredo compartilhado no header 'X-Introspection-Secret'
+//O segredo vem de 'api.security.token.introspection.client-secret' e, sem ele configurado, a introspecção recusa todo
+//mundo
+//A comparação é feita em tempo constante para que o tempo de resposta não revele quantos bytes do segredo bateram
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.function.Supplier;
+
+@Component
+public class IntrospectionClientAuthorization implements AuthorizationManager<RequestAuthorizationContext> {
+
+    public static final String HEADER = "X-Introspection-Secret";
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private final byte[] secret;
+
+    public IntrospectionClientAuthorization(
+            @Value("${api.security.token.introspection.client-secret:}") String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return this.isGateway(context.getRequest()) ? GRANTED : DENIED;
+    }
+
+    private boolean isGateway(HttpServletRequest request) {
+        String presented = request.getHeader(HEADER);
+        if (secret.length == 0 || presented == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,49 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Revogações da stack servlet, direto pelo 'RevokedTokenRepository', e o relógio do banco pelo 'JdbcTemplate'
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+import br.com.fabiokusaba.loginauthapi.repositories.RevokedTokenRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+@Component
+public class JpaRevokedTokenStore implements RevokedTokenStore {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public JpaRevokedTokenStore(RevokedTokenRepository revokedTokenRepository, JdbcTemplate jdbcTemplate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<RevokedToken> findActive(Instant now) {
+        return revokedTokenRepository.findByExpiresAtAfter(now);
+    }
+
+    @Override
+    public List<RevokedToken> findRevokedSince(Instant since) {
+        return revokedTokenRepository.findByRevokedAtGreaterThanEqual(since);
+    }
+
+    @Override
+    public Instant currentTime() {
+        return jdbcTemplate.queryForObject("select current_timestamp", Timestamp.class).toInstant();
+    }
+
+    @Override
+    public void save(RevokedToken token) {
+        revokedTokenRepository.save(token);
+    }
+
+    @Override
+    public void deleteExpired(Instant now) {
+        revokedTokenRepository.deleteExpired(now);
+    }
+}
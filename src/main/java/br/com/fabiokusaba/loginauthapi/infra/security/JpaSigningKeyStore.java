@@ -0,0 +1,35 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Chaves de assinatura da stack servlet, direto pelo 'SigningKeyRepository'
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+import br.com.fabiokusaba.loginauthapi.repositories.SigningKeyRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+@Component
+public class JpaSigningKeyStore implements SigningKeyStore {
+
+    private final SigningKeyRepository signingKeyRepository;
+
+    public JpaSigningKeyStore(SigningKeyRepository signingKeyRepository) {
+        this.signingKeyRepository = signingKeyRepository;
+    }
+
+    @Override
+    public List<StoredSigningKey> findAll(String algorithm) {
+        return signingKeyRepository.findByAlgorithmOrderByActivatesAtDesc(algorithm);
+    }
+
+    @Override
+    public void save(StoredSigningKey key) {
+        signingKeyRepository.save(key);
+    }
+
+    @Override
+    public void delete(Collection<String> kids) {
+        signingKeyRepository.deleteByKids(kids);
+    }
+}
@@ -0,0 +1,167 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Limita as tentativas de login por email e por IP do cliente, para que um ataque de credential stuffing não consiga
+//nos fazer pagar um 'matches' do BCrypt (a nossa operação mais cara) a cada senha chutada
+//O 'AuthController' consulta o limitador antes de buscar o usuário e antes de qualquer hashing, então uma tentativa
+//barrada custa só uma consulta em um mapa e um compare-and-set
+//Cada chave tem um token bucket implementado como GCRA (generic cell rate algorithm): o estado inteiro do bucket é um
+//único 'long' com o instante teórico em que o bucket estaria cheio de novo, e consumir uma ficha é um CAS nesse 'long',
+//sem locks e sem alocar nada quando a chave já existe
+//A memória é limitada: o mapa guarda no máximo 'max-keys' chaves, e quando ele está cheio as chaves novas caem em um
+//array fixo de buckets compartilhados (stripes) escolhidos pelo hash da chave, então um ataque com emails aleatórios
+//não consegue crescer o mapa para sempre
+//Um bucket que já se recarregou por completo é igual a um bucket novo, então uma tarefa agendada remove essas chaves
+//ociosas do mapa
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class LoginThrottle implements MeterBinder {
+
+    private final boolean enabled;
+    private final Limiter byEmail;
+    private final Limiter byIp;
+
+    public LoginThrottle(@Value("${api.security.login.throttle.enabled:true}") boolean enabled,
+                         @Value("${api.security.login.throttle.email.capacity:5}") int emailCapacity,
+                         @Value("${api.security.login.throttle.email.period:PT1M}") Duration emailPeriod,
+                         @Value("${api.security.login.throttle.ip.capacity:100}") int ipCapacity,
+                         @Value("${api.security.login.throttle.ip.period:PT1M}") Duration ipPeriod,
+                         @Value("${api.security.login.throttle.max-keys:100000}") int maxKeys,
+                         @Value("${api.security.login.throttle.stripes:4096}") int stripes) {
+        this.enabled = enabled;
+        this.byEmail = new Limiter("email", emailCapacity, emailPeriod, maxKeys, stripes);
+        this.byIp = new Limiter("ip", ipCapacity, ipPeriod, maxKeys, stripes);
+    }
+
+    //Consome uma ficha do IP e outra do email, devolvendo 0 quando a tentativa pode seguir ou quantos segundos o
+    //cliente precisa esperar
+    //O IP é consultado primeiro para que um IP barrado não gaste as fichas do email que ele está atacando
+    public long tryAcquire(String email, String clientIp) {
+        if (!enabled) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        long wait = byIp.acquire(clientIp, now);
+        if (wait == 0 && email != null) {
+            wait = byEmail.acquire(User.normalizeEmail(email), now);
+        }
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    //Remove os buckets que já se recarregaram por completo
+    @Scheduled(fixedDelayString = "${api.security.login.throttle.sweep-interval:PT1M}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        byEmail.evictIdle(now);
+        byIp.evictIdle(now);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Limiter limiter : new Limiter[]{byEmail, byIp}) {
+            Gauge.builder("auth.login.throttle.keys", limiter, value -> value.buckets.size())
+                    .description("Keys currently tracked by the login throttle")
+                    .tag("key", limiter.name)
+                    .register(registry);
+            FunctionCounter.builder("auth.login.throttle.rejected", limiter, value -> value.rejected.sum())
+                    .description("Login attempts rejected by the login throttle")
+                    .tag("key", limiter.name)
+                    .register(registry);
+        }
+    }
+
+    //Um limitador para um tipo de chave (email ou IP)
+    private static final class Limiter {
+
+        //Estado de um bucket que nunca foi usado, ou seja, cheio
+        private static final long FULL = Long.MIN_VALUE;
+
+        private final String name;
+        private final boolean enabled;
+        private final long interval;
+        private final long burst;
+        private final int maxKeys;
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong[] stripes;
+        private final LongAdder rejected = new LongAdder();
+
+        Limiter(String name, int capacity, Duration period, int maxKeys, int stripes) {
+            this.name = name;
+            //Uma capacidade zero (ou negativa) desliga o limite só para esse tipo de chave
+            this.enabled = capacity > 0;
+            //Uma ficha volta a cada 'interval' e o bucket comporta no máximo 'capacity' fichas
+            this.interval = enabled ? period.toNanos() / capacity : 0;
+            this.burst = interval * capacity;
+            this.maxKeys = maxKeys;
+            //Arredondamos para uma potência de 2 para escolher o stripe com uma máscara
+            this.stripes = new AtomicLong[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+            for (int i = 0; i < this.stripes.length; i++) {
+                this.stripes[i] = new AtomicLong(FULL);
+            }
+        }
+
+        long acquire(String key, long now) {
+            if (!enabled) {
+                return 0;
+            }
+            AtomicLong bucket = this.bucketFor(key == null ? "" : key);
+            while (true) {
+                long full = bucket.get();
+                long next = Math.max(full, now) + interval;
+                long wait = next - now - burst;
+                if (wait > 0) {
+                    rejected.increment();
+                    return wait;
+                }
+                if (bucket.compareAndSet(full, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private AtomicLong bucketFor(String key) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() < maxKeys) {
+                return buckets.computeIfAbsent(key, ignored -> new AtomicLong(FULL));
+            }
+            int hash = key.hashCode();
+            return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+        }
+
+        //Um bucket cujo instante de recarga já passou está cheio, então tirar ele do mapa não muda nada
+        //Se uma requisição estiver usando o bucket nesse momento ela pode perder a ficha consumida, o que no pior caso
+        //dá uma tentativa a mais para aquela chave
+        void evictIdle(long now) {
+            buckets.values().removeIf(bucket -> isIdle(bucket.get(), now));
+            for (AtomicLong stripe : stripes) {
+                long full = stripe.get();
+                if (full != FULL && isIdle(full, now)) {
+                    stripe.compareAndSet(full, FULL);
+                }
+            }
+        }
+
+        private static boolean isIdle(long full, long now) {
+            return full == FULL || full - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Bulkhead para o hashing de senhas
+//O BCrypt é propositalmente caro em CPU e antes ele rodava direto nas threads do Tomcat, então uma avalanche de logins
+//ocupava todas as threads do servidor e as outras requisições ficavam sem atendimento
+//Aqui o hashing roda em um executor próprio com uma thread por core e uma fila de espera limitada, quando a fila está
+//cheia ou a tarefa espera mais do que o tempo máximo configurado nós falhamos rápido com um 503 em vez de acumular
+//requisições
+//A thread da requisição continua esperando o resultado, mas parada, sem consumir CPU
+//A profundidade da fila, as rejeições e o tempo de espera ficam expostos como métricas ('auth.hashing.*')
+//O rehash depois do login ('encodeAsync') só entra no executor quando nenhum login está esperando na fila, e a gravação
+//do hash novo no banco roda em um executor de I/O separado ('password-rehash-io'), para que nem o BCrypt extra nem a
+//transação ocupem o lugar de um login depois de uma mudança de custo
+
+import br.com.fabiokusaba.loginauthapi.exceptions.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+@Service
+public class PasswordHashingService implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    //Gravações de hash refeito esperando o executor de I/O, com a fila cheia o rehash fica para o próximo login
+    private static final int REHASH_IO_QUEUE_CAPACITY = 256;
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor rehashIo;
+    private final String dummyHash;
+    private final long maxQueueTimeNanos;
+    private final long retryAfterSeconds;
+
+    //Métricas do bulkhead: quantas tarefas foram rejeitadas por fila cheia, quantas desistiram por esperar demais e o
+    //tempo que as tarefas passaram na fila
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueTimeouts = new LongAdder();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder rehashDeferred = new LongAdder();
+    private final LongAdder rehashFailures = new LongAdder();
+
+    //Timer do tempo de espera na fila, ele só existe depois que o Micrometer chama o 'bindTo'
+    private volatile Timer queueWait;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  @Value("${api.security.password.hashing.threads:0}") int threads,
+                                  @Value("${api.security.password.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${api.security.password.hashing.max-queue-time:500ms}") Duration maxQueueTime,
+                                  @Value("${api.security.password.hashing.retry-after:1s}") Duration retryAfter) {
+        this.passwordEncoder = passwordEncoder;
+        this.maxQueueTimeNanos = maxQueueTime.toNanos();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        //Hash de uma senha aleatória com o custo atual do encoder, usado só para o login de emails que não existem
+        this.dummyHash = passwordEncoder.encode(UUID.randomUUID().toString());
+
+        //Por padrão usamos uma thread por core, o hashing é CPU-bound então mais threads do que isso só aumentaria a
+        //troca de contexto
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        //Uma thread só basta, é uma gravação por rehash e ela passa a maior parte do tempo esperando o banco
+        this.rehashIo = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REHASH_IO_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-rehash-io");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    //Mesma assinatura do 'PasswordEncoder.matches', só que executando no bulkhead
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return this.execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    //Compara a senha com o hash fictício quando o email não existe, assim o login de um email desconhecido custa o
+    //mesmo BCrypt de uma senha errada e o tempo de resposta não revela quais emails estão cadastrados
+    //Esse é o único trabalho caro que deixamos no caminho de falha
+    public void simulateMatch(CharSequence rawPassword) {
+        this.matches(rawPassword, dummyHash);
+    }
+
+    //Mesma assinatura do 'PasswordEncoder.encode', só que executando no bulkhead
+    public String encode(CharSequence rawPassword) {
+        return this.execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    //Diz se o hash salvo foi gerado com um custo diferente do custo atual do encoder e precisa ser refeito
+    public boolean upgradeEncoding(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    //Gera o hash sem a thread da requisição esperar pelo resultado, usado para refazer hashes antigos depois de um
+    //login bem sucedido
+    //Esse trabalho nunca deve competir com os logins: com algum login esperando na fila (ou a fila de gravações cheia)
+    //simplesmente deixamos para o próximo login, e o 'onEncoded' (a gravação no banco) roda no executor de I/O, não
+    //na thread do BCrypt
+    //Qualquer falha do hash ou da gravação é logada e contada, o hash antigo continua valendo
+    public void encodeAsync(CharSequence rawPassword, Consumer<String> onEncoded) {
+        if (!executor.getQueue().isEmpty() || rehashIo.getQueue().remainingCapacity() == 0) {
+            rehashDeferred.increment();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                String hash;
+                try {
+                    hash = passwordEncoder.encode(rawPassword);
+                } catch (RuntimeException exception) {
+                    this.rehashFailed(exception);
+                    return;
+                }
+                try {
+                    rehashIo.execute(() -> {
+                        try {
+                            onEncoded.accept(hash);
+                        } catch (RuntimeException exception) {
+                            this.rehashFailed(exception);
+                        }
+                    });
+                } catch (RejectedExecutionException exception) {
+                    rehashDeferred.increment();
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            rehashDeferred.increment();
+        }
+    }
+
+    private void rehashFailed(RuntimeException exception) {
+        rehashFailures.increment();
+        log.warn("Password rehash failed, the previous hash stays in place until the next login", exception);
+    }
+
+    private <T> T execute(Callable<T> task) {
+        long enqueuedAt = System.nanoTime();
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+
+                //Se a tarefa ficou tempo demais na fila o cliente provavelmente já desistiu, então nem gastamos CPU
+                //com o hash
+                long waited = System.nanoTime() - enqueuedAt;
+                this.recordWait(waited);
+                if (waited > maxQueueTimeNanos) {
+                    queueTimeouts.increment();
+                    throw new PasswordHashingUnavailableException(retryAfterSeconds);
+                }
+                executed.increment();
+                return task.call();
+            });
+        } catch (RejectedExecutionException exception) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException(retryAfterSeconds);
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new PasswordHashingUnavailableException(retryAfterSeconds);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", exception.getCause());
+        }
+    }
+
+    private void recordWait(long waitedNanos) {
+        totalWaitNanos.add(waitedNanos);
+        maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+        Timer timer = queueWait;
+        if (timer != null) {
+            timer.record(waitedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+        rehashIo.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("auth.hashing.queue.depth", this, PasswordHashingService::getQueueDepth).register(registry);
+        Gauge.builder("auth.hashing.active", this, PasswordHashingService::getActiveCount).register(registry);
+        Gauge.builder("auth.hashing.pool.size", this, PasswordHashingService::getPoolSize).register(registry);
+        this.queueWait = Timer.builder("auth.hashing.queue.wait")
+                .description("Time password hashing tasks spent waiting in the queue")
+                .register(registry);
+        FunctionCounter.builder("auth.hashing.executed", this, PasswordHashingService::getExecuted).register(registry);
+        FunctionCounter.builder("auth.hashing.rejected", this, PasswordHashingService::getRejected).register(registry);
+        FunctionCounter.builder("auth.hashing.queue.timeouts", this, PasswordHashingService::getQueueTimeouts)
+                .register(registry);
+        FunctionCounter.builder("auth.hashing.rehash.deferred", this, PasswordHashingService::getRehashDeferred)
+                .register(registry);
+        FunctionCounter.builder("auth.hashing.rehash.failures", this, PasswordHashingService::getRehashFailures)
+                .register(registry);
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getQueueTimeouts() {
+        return queueTimeouts.sum();
+    }
+
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    public long getRehashDeferred() {
+        return rehashDeferred.sum();
+    }
+
+    public long getRehashFailures() {
+        return rehashFailures.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+}
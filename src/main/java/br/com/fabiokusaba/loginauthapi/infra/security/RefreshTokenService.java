@@ -0,0 +1,121 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Emissão e rotação dos refresh tokens
+//O access token agora vive poucos minutos e quando ele expira o cliente troca o refresh token por um novo par de
+//tokens em "/auth/refresh", o que custa uma busca indexada e uma assinatura em vez de um BCrypt de um novo login
+//Cada refresh token só pode ser usado uma vez: a troca marca o token como usado com um update condicional, então entre
+//várias trocas simultâneas do mesmo token apenas uma vence
+//Se um token já usado for apresentado de novo consideramos que ele vazou e revogamos a família inteira, inclusive o
+//token que o cliente legítimo recebeu na última troca
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RefreshToken;
+import br.com.fabiokusaba.loginauthapi.repositories.RefreshTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Value("${api.security.token.refresh-ttl:30d}")
+    private Duration refreshTtl;
+
+    //Resultado de uma troca bem sucedida: o usuário dono do token e o novo refresh token que vai para o cliente
+    public record Rotation(String userId, String refreshToken) {
+    }
+
+    //Emite o primeiro refresh token de uma nova família, usado no login e no cadastro
+    public String issue(String userId) {
+        return this.issue(userId, UUID.randomUUID().toString());
+    }
+
+    //Troca um refresh token por um novo da mesma família, retorna vazio quando o token não existe, expirou, foi
+    //revogado ou já tinha sido usado
+    public Optional<Rotation> rotate(String rawToken) {
+        if (rawToken == null || rawToken.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Optional<RefreshToken> found = refreshTokenRepository.findByTokenHash(hash(rawToken));
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        RefreshToken token = found.get();
+
+        if (token.isRevoked() || token.getExpiresAt().isBefore(Instant.now())
+                || refreshTokenRepository.existsByFamilyIdAndRevokedTrue(token.getFamilyId())) {
+            return Optional.empty();
+        }
+
+        //Só uma troca consegue marcar o token como usado, qualquer outra tentativa com o mesmo token (simultânea ou
+        //posterior) é tratada como reutilização
+        if (refreshTokenRepository.markUsed(token.getId()) == 0) {
+            refreshTokenRepository.revokeFamily(token.getFamilyId());
+            log.warn("Refresh token reuse detected, family {} revoked", token.getFamilyId());
+            return Optional.empty();
+        }
+
+        return Optional.of(new Rotation(token.getUserId(), this.issue(token.getUserId(), token.getFamilyId())));
+    }
+
+    //Revoga a família do refresh token, usado no logout para encerrar a sessão de vez
+    public void revoke(String rawToken) {
+        if (rawToken == null || rawToken.isEmpty()) {
+            return;
+        }
+        refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+
+    //Os tokens expirados não servem para mais nada, então limpamos a tabela de tempos em tempos
+    @Scheduled(fixedDelayString = "${api.security.token.refresh-cleanup-interval:PT1H}")
+    public void deleteExpired() {
+        refreshTokenRepository.deleteExpired(Instant.now());
+    }
+
+    private String issue(String userId, String familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken token = new RefreshToken();
+        token.setTokenHash(hash(rawToken));
+        token.setFamilyId(familyId);
+        token.setUserId(userId);
+        token.setExpiresAt(Instant.now().plus(refreshTtl));
+        refreshTokenRepository.save(token);
+
+        return rawToken;
+    }
+
+    private static String hash(String rawToken) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 not available", exception);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Onde o 'TokenRevocationList' guarda e de onde ele lê as revogações (tabela 'revoked_tokens')
+//A stack servlet usa o 'RevokedTokenRepository' do JPA ('JpaRevokedTokenStore') e a stack reativa declara o seu pelo
+//R2DBC, só de leitura porque o logout só existe na stack servlet, assim as duas stacks recusam os mesmos tokens
+//Quem chama é a subida da aplicação e as tarefas agendadas do 'TokenRevocationList', nunca a thread da requisição (que
+//só consulta a lista em memória), então as implementações podem bloquear
+//O 'revoked_at' e o cursor da sincronização usam o relógio do banco ('currentTime'), que é o mesmo para todas as
+//réplicas, e não o relógio de cada réplica
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface RevokedTokenStore {
+
+    //Revogações que ainda não expiraram, carregadas na subida da aplicação
+    List<RevokedToken> findActive(Instant now);
+
+    //Revogações feitas a partir de um instante, inclusive as das outras réplicas
+    List<RevokedToken> findRevokedSince(Instant since);
+
+    //Instante atual no relógio do banco de dados
+    Instant currentTime();
+
+    void save(RevokedToken token);
+
+    void deleteExpired(Instant now);
+}
@@ -10,6 +10,7 @@ package br.com.fabiokusaba.loginauthapi.infra.security;
 //E o '@EnableWebSecurity' para dizer que é a classe que cuida da configuração da segurança web
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -22,6 +23,12 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.time.Duration;
+
+import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
 
 @Configuration
 @EnableWebSecurity
@@ -37,6 +44,36 @@ public class SecurityConfig {
     @Autowired
     SecurityFilter securityFilter;
 
+    //Confere o segredo do gateway na introspecção de tokens
+    @Autowired
+    IntrospectionClientAuthorization introspectionClientAuthorization;
+
+    //Endpoints liberados sem autenticação, o 'SecurityFilter' usa a mesma lista para nem verificar o token deles
+    static final RequestMatcher PUBLIC_ENDPOINTS = new OrRequestMatcher(
+            antMatcher(HttpMethod.POST, "/auth/login"),
+            antMatcher(HttpMethod.POST, "/auth/register"),
+            antMatcher(HttpMethod.POST, "/auth/refresh"),
+            //As chaves públicas de assinatura são públicas por definição
+            antMatcher(HttpMethod.GET, "/.well-known/jwks.json"),
+            //O health check precisa ficar aberto para os probes do orquestrador, o resto do actuator fica só para os
+            //administradores (ver 'OPERATOR_ENDPOINTS')
+            antMatcher(HttpMethod.GET, "/actuator/health/**"));
+
+    //A introspecção recebe os próprios tokens a serem verificados e quem chama é o gateway, que se identifica com o
+    //segredo do 'IntrospectionClientAuthorization' e não com um token, então o 'SecurityFilter' também não olha ela
+    static final RequestMatcher INTROSPECTION_ENDPOINT = antMatcher(HttpMethod.POST, "/auth/introspect");
+
+    //Ferramentas de administração, devolvem os dados de todos os usuários ou criam usuários em massa e por isso exigem
+    //a role 'ROLE_ADMIN' (um usuário que só se cadastrou tem apenas a 'ROLE_USER')
+    static final RequestMatcher ADMIN_ENDPOINTS = new OrRequestMatcher(
+            antMatcher(HttpMethod.POST, "/user/import"),
+            antMatcher(HttpMethod.GET, "/user/list"),
+            antMatcher(HttpMethod.GET, "/user/export"));
+
+    //Endpoints do actuator além do health: as métricas mostram os resultados dos logins, o tamanho dos caches e do
+    //limitador e detalhes da JVM, nada que um usuário comum deva ver
+    static final RequestMatcher OPERATOR_ENDPOINTS = antMatcher("/actuator/**");
+
     //Basicamente nesse método 'securityFilterChain' a gente adicionou essa parte de 'authorizeHttpRequest' para dizer
     //que os endpoints "/auth/login" e "/auth/register" não precisam de autenticação que por padrão quando adicionamos
     //o Spring Security na nossa aplicação ele já bloqueia todos os endpoints que passam a precisar de autenticação, mas
@@ -67,8 +104,10 @@ public class SecurityConfig {
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authorize -> authorize
-                        .requestMatchers(HttpMethod.POST, "/auth/login").permitAll()
-                        .requestMatchers(HttpMethod.POST, "/auth/register").permitAll()
+                        .requestMatchers(PUBLIC_ENDPOINTS).permitAll()
+                        .requestMatchers(INTROSPECTION_ENDPOINT).access(introspectionClientAuthorization)
+                        .requestMatchers(ADMIN_ENDPOINTS).hasRole(TokenPrincipal.ADMIN)
+                        .requestMatchers(OPERATOR_ENDPOINTS).hasRole(TokenPrincipal.ADMIN)
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(securityFilter, UsernamePasswordAuthenticationFilter.class);
@@ -80,9 +119,17 @@ public class SecurityConfig {
     //Bean de 'AuthenticationManager'
     //O 'passwordEncoder' vamos utilizar no controller para fazer o encoding da password para não salvarmos a String
     //direto no banco de dados
+    //O custo do BCrypt pode ser fixado pela propriedade 'api.security.password.bcrypt.strength', quando ela não é
+    //informada o custo é calibrado na subida da aplicação para caber na latência alvo do hardware em que estamos
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${api.security.password.bcrypt.strength:-1}") int strength,
+                                           @Value("${api.security.password.bcrypt.target-latency:100ms}") Duration targetLatency,
+                                           @Value("${api.security.password.bcrypt.min-strength:10}") int minStrength,
+                                           @Value("${api.security.password.bcrypt.max-strength:16}") int maxStrength) {
+        if (strength < 0) {
+            strength = BCryptStrengthCalibrator.calibrate(targetLatency, minStrength, maxStrength);
+        }
+        return new BCryptPasswordEncoder(strength);
     }
 
     //E esse aqui é um Bean necessário para o Spring Security conseguir funcionar
@@ -15,7 +15,11 @@ package br.com.fabiokusaba.loginauthapi.infra.security;
 //esse usuário que está fazendo a requisição que aí podemos usar nos outros componentes aqui dentro da nossa aplicação
 //pra operar essas informações
 
-import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
 import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -23,13 +27,12 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.Locale;
 
 @Component
 public class SecurityFilter extends OncePerRequestFilter {
@@ -40,6 +43,15 @@ public class SecurityFilter extends OncePerRequestFilter {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    UserPartitioning userPartitioning;
+
+    @Autowired
+    AuthMetrics authMetrics;
+
+    @Autowired
+    AuthAuditLog authAuditLog;
+
 
 
     //Aqui vamos declara dois métodos que é o método 'doFilterInternal' que é literalmente o método que vai ser o filtro
@@ -49,49 +61,85 @@ public class SecurityFilter extends OncePerRequestFilter {
         //Recuperando o token que veio da requisição
         var token = this.recoverToken(request);
 
-        //Depois que recuperamos o token nós chamamos o nosso 'tokenService' com a função 'validateToken' para estar
+        //Depois que recuperamos o token nós chamamos o nosso 'tokenService' com a função 'verifyToken' para estar
         //fazendo a validação do token
-        var login = tokenService.validateToken(token);
+        //O 'check' devolve também o motivo da recusa, que vai para a trilha de auditoria (requisição sem token não é
+        //uma recusa, só não está autenticada)
+        var check = tokenService.check(token);
+        var verified = check.token();
+        if (verified == null && check.outcome() != AuthMetrics.TokenOutcome.MISSING) {
+            authAuditLog.record(AuthEvent.Type.TOKEN_REJECTED, null, request.getRemoteAddr(),
+                    check.outcome().name().toLowerCase(Locale.ROOT));
+        }
 
         //Após a validação do token pegamos o seu retorno, caso tenha, e verificamos se não é nulo porque lá no nosso
-        //método 'validateToken' caso o token não seja validado com sucesso ele retornará nulo, então se o token não for
+        //método 'verifyToken' caso o token não seja validado com sucesso ele retornará nulo, então se o token não for
         //nulo eu vou entrar dentro desse 'if'
-        if (login != null) {
-
-            //Buscando o usuário no banco de dados
-            //Aqui estamos esperando um User, mas estamos recebendo um Optional que é algo opcional em que eu posso ou
-            //não encontrar um usuário com esse email
-            //Então para extrairmos um User nós vamos fazer um 'orElseThrow' para caso eu não encontre um usuário eu
-            //jogue uma exceção, nesse caso já estamos nos prevenindo para caso nossa consulta dê errado
-            User user = userRepository.findByEmail(login).orElseThrow(() -> new RuntimeException("User not found"));
-
-            //Assim que encontrarmos o usuário criamos uma coleção de roles que esse usuário tem
-            var authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+        if (verified != null) {
 
-            //Então criamos o objeto de autenticação contendo o usuário e as suas roles, podemos deixar as 'credentials'
-            //como null porque elas não se aplicam ao nosso caso
-            var authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);
+            //No modo stateless o principal já vem montado a partir das claims do token e não precisamos ir no banco
+            //de dados, caso contrário buscamos o usuário como antes
+            var authentication = tokenService.isSelfContained(verified)
+                    ? new UsernamePasswordAuthenticationToken(verified.principal(), null, verified.principal().authorities())
+                    : this.loadAuthentication(verified);
 
             //Criando esse objeto específico setamos no 'SecurityContextHolder' que é o contexto de segurança do Spring
             //Security, então cada elemento, cada componente do Spring Security faz uma etapa e eles vão alimentando
             //esse 'SecurityContextHolder' para ele saber o que ele já validou, o que ele não validou e salvar as
             //informações do usuário que já estiver autenticado
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+            if (authentication != null) {
+
+                //Guardamos o token verificado nos detalhes da autenticação, o logout usa ele para revogar o token
+                authentication.setDetails(verified);
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
         }
 
         filterChain.doFilter(request, response);
     }
 
-    //E o método 'recoverToken' que é um método auxiliar que vai receber a request que veio do usuário e vai pegar o
-    //header "Authorization" que é onde vai estar o token, então se não tiver nada no header "Authorization" já retorno
-    //null se não retorno 'authHeader' que é o nosso header de "Authorization" substituindo o "Bearer " por vazio porque
-    //normalmente os headers de "Authorization" vem "Authorization: Bearer asalkfowqldqjq", dessa forma pegamos apenas o
-    //token
-    private String recoverToken(HttpServletRequest request) {
-        var authHeader = request.getHeader("Authorization");
-        if (authHeader == null) {
+    //Monta a autenticação buscando o usuário no banco de dados, usado fora do modo stateless ou quando o token já
+    //passou do limite de frescor configurado
+    private UsernamePasswordAuthenticationToken loadAuthentication(VerifiedToken verified) {
+        long start = System.nanoTime();
+
+        //Buscando o usuário no banco de dados
+        //Aqui buscamos apenas a projeção com os campos que a autenticação precisa e não a entidade 'User' inteira
+        //Como recebemos um Optional vamos fazer um 'orElseThrow' para caso eu não encontre um usuário eu jogue uma
+        //exceção, nesse caso já estamos nos prevenindo para caso nossa consulta dê errado
+        //A busca vai direto para a partição do email do token
+        UserCredentials user = userPartitioning.forEmail(verified.subject(),
+                        () -> userRepository.findCredentialsByEmail(verified.subject()))
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        authMetrics.record(AuthMetrics.Phase.PRINCIPAL_LOAD, start);
+
+        //Se o token carrega a versão e ela não é mais a versão atual do usuário significa que esse token foi
+        //invalidado, então não autenticamos o usuário
+        if (verified.tokenVersion() != null && verified.tokenVersion() != user.tokenVersion()) {
             return null;
         }
-        return authHeader.replace("Bearer ", "");
+
+        //Assim que encontrarmos o usuário montamos o mesmo principal do modo stateless com as roles desse usuário,
+        //assim o resto da aplicação enxerga um único tipo de principal e a senha não fica no contexto de segurança
+        var principal = TokenPrincipal.of(user.id(), user.email(), user.name(), TokenPrincipal.rolesOf(user));
+
+        //Então criamos o objeto de autenticação contendo o usuário e as suas roles, podemos deixar as 'credentials'
+        //como null porque elas não se aplicam ao nosso caso
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.authorities());
+    }
+
+    //As rotas liberadas sem autenticação não olham o usuário, então nem verificamos o token delas, um token lixo
+    //mandado para o "/auth/login" não custa nada, o mesmo vale para a introspecção que autoriza o gateway pelo segredo
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return SecurityConfig.PUBLIC_ENDPOINTS.matches(request) || SecurityConfig.INTROSPECTION_ENDPOINT.matches(request);
+    }
+
+    //E o método 'recoverToken' que é um método auxiliar que vai receber a request que veio do usuário e vai pegar o
+    //header "Authorization" que é onde vai estar o token, normalmente os headers de "Authorization" vem
+    //"Authorization: Bearer asalkfowqldqjq", então o 'TokenSyntax' confere o prefixo "Bearer " direto no header e nos
+    //devolve apenas o token, ou null quando não tem header ou ele não é do tipo Bearer
+    private String recoverToken(HttpServletRequest request) {
+        return TokenSyntax.fromAuthorizationHeader(request.getHeader("Authorization"));
     }
 }
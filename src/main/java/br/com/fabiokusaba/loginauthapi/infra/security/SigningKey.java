@@ -0,0 +1,23 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Uma chave do 'SigningKeyRing': o identificador que vai no header "kid" do token, o 'Algorithm' já montado com a chave
+//(privada + pública nas chaves assimétricas), o 'JWTVerifier' já montado para essa chave e a representação JWK da chave
+//pública que publicamos no endpoint de JWKS
+//O 'jwk' fica nulo nas chaves HMAC porque uma chave simétrica nunca pode ser publicada
+//O 'createdAt' é quando a chave começou (ou vai começar) a assinar, nas chaves assimétricas é o 'activatesAt' da tabela
+//O 'retiredAt' fica nulo enquanto a chave é a chave atual de assinatura, depois disso ela só serve para verificar os
+//tokens que ainda estão dentro da validade
+
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record SigningKey(String kid, Algorithm algorithm, JWTVerifier verifier, Map<String, Object> jwk,
+                         Instant createdAt, Instant retiredAt) {
+
+    public SigningKey retire(Instant when) {
+        return new SigningKey(kid, algorithm, verifier, jwk, createdAt, when);
+    }
+}
@@ -0,0 +1,385 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Chaveiro com as chaves de assinatura dos tokens
+//Com HS256 (o padrão) temos uma única chave derivada do 'api.security.token.secret', como antes
+//Com RS256 ou ES256 os pares de chaves ficam na tabela 'signing_keys' ('SigningKeyStore'), que todas as réplicas
+//leem, e as chaves públicas são publicadas no endpoint "/.well-known/jwks.json", assim os outros serviços conseguem
+//verificar os nossos tokens localmente sem precisar do nosso segredo e sem chamar esse serviço
+//Cada token sai com o header "kid" da chave que assinou ele e a verificação escolhe o 'JWTVerifier' já montado para
+//esse "kid" em um mapa em memória, recarregado da tabela a cada 'key-check-interval' e nunca na requisição
+//As chaves assimétricas são trocadas periodicamente ('key-rotation'): a réplica que percebe primeiro que está na hora
+//grava uma chave nova que só começa a assinar depois do 'key-publish-ahead', tempo em que todas as réplicas já
+//recarregaram e os clientes do JWKS já renovaram o cache, então nenhuma réplica recebe um "kid" que não conhece
+//A chave anterior deixa de assinar mas continua no chaveiro e no JWKS durante o 'key-overlap' para que os tokens já
+//emitidos continuem válidos até expirarem, e sai da tabela depois disso
+//Duas réplicas rotacionando no mesmo instante gravam duas chaves, todas escolhem como atual a que ativa por último e a
+//outra só fica aceita até o fim do 'key-overlap'
+//Como as chaves estão no banco elas sobrevivem a restart e deploy, a chave privada fica cifrada com o segredo (ver
+//'StoredSigningKey')
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class SigningKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyRing.class);
+
+    //Emissor dos tokens, o 'TokenService' também confere ele antes de verificar a assinatura
+    static final String ISSUER = "login-auth-api";
+
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Value("${api.security.token.secret}")
+    private String secret;
+
+    //HS256, RS256 ou ES256
+    @Value("${api.security.token.algorithm:HS256}")
+    private String algorithmName;
+
+    //De quanto em quanto tempo uma nova chave assimétrica passa a assinar os tokens, zero desliga a rotação
+    @Value("${api.security.token.key-rotation:24h}")
+    private Duration rotation;
+
+    //Por quanto tempo uma chave aposentada continua aceita na verificação, precisa ser pelo menos a validade do token
+    @Value("${api.security.token.key-overlap:2h}")
+    private Duration overlap;
+
+    //Quanto tempo antes de começar a assinar uma chave nova já fica no chaveiro e no JWKS, precisa ser maior do que o
+    //'key-check-interval' e do que o cache do JWKS nos clientes
+    @Value("${api.security.token.key-publish-ahead:10m}")
+    private Duration publishAhead;
+
+    @Autowired
+    private SigningKeyStore signingKeyStore;
+
+    private final Map<String, SigningKey> keys = new ConcurrentHashMap<>();
+    private volatile SigningKey current;
+    private volatile Map<String, Object> jwks = Map.of("keys", List.of());
+
+    @PostConstruct
+    void init() {
+        if (isSymmetric()) {
+            this.rotate();
+            return;
+        }
+        this.reload();
+        if (this.isRotationDue(Instant.now())) {
+            this.rotate();
+        }
+    }
+
+    //Chave que assina os tokens novos
+    public SigningKey current() {
+        return current;
+    }
+
+    //Busca o verificador da chave que assinou o token, tokens sem "kid" (emitidos antes da troca para o chaveiro) só
+    //são aceitos com HS256, que é quando a chave atual é a mesma de sempre
+    public JWTVerifier verifier(String kid) {
+        if (kid == null) {
+            return isSymmetric() ? current.verifier() : null;
+        }
+        SigningKey key = keys.get(kid);
+        return key != null ? key.verifier() : null;
+    }
+
+    //Documento JWKS com as chaves públicas que ainda são aceitas, ele é remontado apenas quando o chaveiro muda
+    public Map<String, Object> jwks() {
+        return jwks;
+    }
+
+    //A cada minuto relemos a tabela (chaves novas das outras réplicas, chave atual que mudou, chaves que saíram) e
+    //conferimos se está na hora de gravar a próxima chave
+    @Scheduled(fixedDelayString = "${api.security.token.key-check-interval:PT1M}")
+    public void rotateIfDue() {
+        if (isSymmetric()) {
+            return;
+        }
+        this.reload();
+        if (this.isRotationDue(Instant.now())) {
+            this.rotate();
+        }
+    }
+
+    //Grava uma nova chave, que passa a assinar depois do 'key-publish-ahead' (ou na hora se ainda não existe nenhuma)
+    //e aposenta a anterior quando isso acontecer
+    public synchronized void rotate() {
+        if (isSymmetric()) {
+            SigningKey key = this.symmetricKey();
+            keys.put(key.kid(), key);
+            current = key;
+            this.publish();
+            log.info("Token signing key {} ({}) is now active", key.kid(), algorithmName);
+            return;
+        }
+
+        Instant now = Instant.now();
+        Instant activatesAt = current == null ? now : now.plus(publishAhead);
+        StoredSigningKey next = this.createKey(activatesAt);
+        signingKeyStore.save(next);
+        this.reload();
+        log.info("Token signing key {} ({}) created, it signs tokens from {}", next.getKid(), algorithmName,
+                next.getActivatesAt());
+    }
+
+    //Monta o chaveiro a partir da tabela, a chave atual é a última que já ativou e cada chave é aposentada quando a
+    //seguinte ativa, as aposentadas há mais do que o 'key-overlap' são apagadas
+    //As chaves já conhecidas são reaproveitadas, só as novas passam pela decifragem e pelo parse
+    synchronized void reload() {
+        Instant now = Instant.now();
+        Map<String, SigningKey> loaded = new HashMap<>();
+        List<String> expired = new ArrayList<>();
+        SigningKey active = null;
+        Instant nextActivation = null;
+        for (StoredSigningKey stored : signingKeyStore.findAll(this.algorithm())) {
+            Instant retiredAt = nextActivation != null && !nextActivation.isAfter(now) ? nextActivation : null;
+            nextActivation = stored.getActivatesAt();
+            if (retiredAt != null && retiredAt.plus(overlap).isBefore(now)) {
+                expired.add(stored.getKid());
+                continue;
+            }
+
+            SigningKey known = keys.get(stored.getKid());
+            SigningKey key = known != null ? known : this.toSigningKey(stored);
+            if (key == null) {
+                continue;
+            }
+            key = retiredAt != null ? key.retire(retiredAt) : key;
+            loaded.put(key.kid(), key);
+            if (active == null && !stored.getActivatesAt().isAfter(now)) {
+                active = key;
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            signingKeyStore.delete(expired);
+        }
+        keys.putAll(loaded);
+        keys.keySet().retainAll(loaded.keySet());
+        if (active != null && (current == null || !active.kid().equals(current.kid()))) {
+            log.info("Token signing key {} ({}) is now active", active.kid(), algorithmName);
+        }
+        current = active;
+        this.publish();
+    }
+
+    //A próxima chave é gravada quando a última (mesmo que ainda não tenha ativado) completa o período de rotação, ou
+    //quando não existe nenhuma chave que já possa assinar
+    private boolean isRotationDue(Instant now) {
+        if (current == null) {
+            return keys.values().stream().noneMatch(key -> key.createdAt().isAfter(now));
+        }
+        if (rotation.isZero()) {
+            return false;
+        }
+        Instant newest = keys.values().stream().map(SigningKey::createdAt).max(Instant::compareTo).orElseThrow();
+        return newest.plus(rotation).isBefore(now);
+    }
+
+    private boolean isSymmetric() {
+        return "HS256".equalsIgnoreCase(algorithmName);
+    }
+
+    private String algorithm() {
+        return algorithmName.toUpperCase(Locale.ROOT);
+    }
+
+    private SigningKey symmetricKey() {
+        Algorithm algorithm = Algorithm.HMAC256(secret);
+        return new SigningKey(symmetricKid(), algorithm, verifierFor(algorithm), null, Instant.now(), null);
+    }
+
+    private StoredSigningKey createKey(Instant activatesAt) {
+        KeyPair pair = switch (this.algorithm()) {
+            case "RS256" -> generate("RSA", null);
+            case "ES256" -> generate("EC", new ECGenParameterSpec("secp256r1"));
+            default -> throw new IllegalStateException("Unsupported token algorithm: " + algorithmName);
+        };
+        String kid = UUID.randomUUID().toString();
+        return new StoredSigningKey(kid, this.algorithm(),
+                Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()),
+                this.encrypt(kid, pair.getPrivate().getEncoded()), activatesAt);
+    }
+
+    //Monta a chave guardada na tabela, uma chave que não decifra (segredo trocado depois que ela foi gravada) fica de
+    //fora do chaveiro e a rotação grava outra
+    private SigningKey toSigningKey(StoredSigningKey stored) {
+        try {
+            byte[] publicBytes = Base64.getDecoder().decode(stored.getPublicKey());
+            byte[] privateBytes = this.decrypt(stored.getKid(), stored.getPrivateKey());
+            return switch (stored.getAlgorithm()) {
+                case "RS256" -> rsaKey(stored, publicBytes, privateBytes);
+                case "ES256" -> ecKey(stored, publicBytes, privateBytes);
+                default -> throw new IllegalStateException("Unsupported token algorithm: " + stored.getAlgorithm());
+            };
+        } catch (Exception exception) {
+            log.warn("Token signing key {} could not be loaded, skipping it", stored.getKid(), exception);
+            return null;
+        }
+    }
+
+    private static SigningKey rsaKey(StoredSigningKey stored, byte[] publicBytes, byte[] privateBytes)
+            throws Exception {
+        KeyFactory factory = KeyFactory.getInstance("RSA");
+        RSAPublicKey publicKey = (RSAPublicKey) factory.generatePublic(new X509EncodedKeySpec(publicBytes));
+        RSAPrivateKey privateKey = (RSAPrivateKey) factory.generatePrivate(new PKCS8EncodedKeySpec(privateBytes));
+        Algorithm algorithm = Algorithm.RSA256(publicKey, privateKey);
+
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "RSA");
+        jwk.put("kid", stored.getKid());
+        jwk.put("use", "sig");
+        jwk.put("alg", "RS256");
+        jwk.put("n", base64Url(publicKey.getModulus(), 0));
+        jwk.put("e", base64Url(publicKey.getPublicExponent(), 0));
+        return new SigningKey(stored.getKid(), algorithm, verifierFor(algorithm), Map.copyOf(jwk),
+                stored.getActivatesAt(), null);
+    }
+
+    private static SigningKey ecKey(StoredSigningKey stored, byte[] publicBytes, byte[] privateBytes)
+            throws Exception {
+        KeyFactory factory = KeyFactory.getInstance("EC");
+        ECPublicKey publicKey = (ECPublicKey) factory.generatePublic(new X509EncodedKeySpec(publicBytes));
+        ECPrivateKey privateKey = (ECPrivateKey) factory.generatePrivate(new PKCS8EncodedKeySpec(privateBytes));
+        Algorithm algorithm = Algorithm.ECDSA256(publicKey, privateKey);
+
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("kid", stored.getKid());
+        jwk.put("use", "sig");
+        jwk.put("alg", "ES256");
+        jwk.put("crv", "P-256");
+        jwk.put("x", base64Url(publicKey.getW().getAffineX(), 32));
+        jwk.put("y", base64Url(publicKey.getW().getAffineY(), 32));
+        return new SigningKey(stored.getKid(), algorithm, verifierFor(algorithm), Map.copyOf(jwk),
+                stored.getActivatesAt(), null);
+    }
+
+    //A chave privada é cifrada com AES-GCM usando o SHA-256 do segredo, com o "kid" como dado autenticado para que
+    //uma chave privada não possa ser trocada de linha na tabela
+    private String encrypt(String kid, byte[] plain) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, kid, iv);
+            byte[] encrypted = cipher.doFinal(plain);
+            byte[] stored = Arrays.copyOf(iv, iv.length + encrypted.length);
+            System.arraycopy(encrypted, 0, stored, iv.length, encrypted.length);
+            return Base64.getEncoder().encodeToString(stored);
+        } catch (Exception exception) {
+            throw new IllegalStateException("Could not encrypt signing key " + kid, exception);
+        }
+    }
+
+    private byte[] decrypt(String kid, String stored) throws Exception {
+        byte[] bytes = Base64.getDecoder().decode(stored);
+        Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, kid, Arrays.copyOf(bytes, GCM_IV_LENGTH));
+        return cipher.doFinal(bytes, GCM_IV_LENGTH, bytes.length - GCM_IV_LENGTH);
+    }
+
+    private Cipher cipher(int mode, String kid, byte[] iv) throws Exception {
+        byte[] key = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        return cipher;
+    }
+
+    //Remonta o documento JWKS com as chaves públicas atuais, a mais nova primeiro
+    private void publish() {
+        List<Map<String, Object>> published = keys.values().stream()
+                .filter(key -> key.jwk() != null)
+                .sorted((a, b) -> b.createdAt().compareTo(a.createdAt()))
+                .map(SigningKey::jwk)
+                .toList();
+        this.jwks = Map.of("keys", published);
+    }
+
+    private static JWTVerifier verifierFor(Algorithm algorithm) {
+        return JWT.require(algorithm)
+                .withIssuer(ISSUER)
+                .build();
+    }
+
+    private static KeyPair generate(String type, ECGenParameterSpec spec) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(type);
+            if (spec != null) {
+                generator.initialize(spec);
+            } else {
+                generator.initialize(2048);
+            }
+            return generator.generateKeyPair();
+        } catch (Exception exception) {
+            throw new IllegalStateException("Could not generate " + type + " signing key", exception);
+        }
+    }
+
+    //O "kid" da chave HMAC é derivado do próprio segredo, assim ele é o mesmo em todas as réplicas sem expor o segredo
+    private String symmetricKid() {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return "hs-" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 8));
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 not available", exception);
+        }
+    }
+
+    //Os números das chaves vão no JWK como base64url sem sinal, as coordenadas EC com tamanho fixo
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (length > bytes.length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
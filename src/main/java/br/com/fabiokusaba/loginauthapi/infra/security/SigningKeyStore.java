@@ -0,0 +1,24 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Onde o 'SigningKeyRing' guarda e de onde ele lê as chaves assimétricas de assinatura (tabela 'signing_keys')
+//Todas as réplicas leem a mesma tabela, então um token assinado por uma réplica é verificado por qualquer outra e o
+//JWKS é o mesmo em todas, e as chaves sobrevivem a restart e deploy
+//A stack servlet usa o 'SigningKeyRepository' do JPA ('JpaSigningKeyStore') e a stack reativa declara o seu pelo R2DBC
+//Quem chama é a subida da aplicação e a tarefa agendada do 'SigningKeyRing', nunca a thread da requisição (que só
+//consulta o chaveiro em memória), então as implementações podem bloquear
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface SigningKeyStore {
+
+    //Chaves do algoritmo, a que ativa por último primeiro
+    List<StoredSigningKey> findAll(String algorithm);
+
+    void save(StoredSigningKey key);
+
+    //Não falha para chaves que já foram apagadas por outra réplica
+    void delete(Collection<String> kids);
+}
@@ -0,0 +1,176 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Cache dos tokens que já foram verificados pelo 'TokenService'
+//Os nossos clientes mandam o mesmo token milhares de vezes durante as 2 horas de validade dele, então em vez de refazer
+//a verificação HMAC a cada requisição nós guardamos o resultado da verificação indexado por um digest do token
+//Não guardamos o token em si como chave, guardamos o SHA-256 dele, dessa forma um dump de memória do cache não expõe os
+//tokens dos usuários
+//As entradas saem do cache quando o token expira ('exp'), buscadas depois disso ou pela limpeza agendada
+//('cache.purge-interval'), ou quando o cache atinge o tamanho máximo configurado, aí sai o token usado há mais tempo
+//A classe é thread-safe, ela é baseada em um 'BoundedExpiringMap' (segmentos LRU com o seu próprio lock, em que uma
+//busca ou uma inclusão nunca percorre o cache) e em contadores 'LongAdder'
+//Ela também publica o tamanho e os contadores de hit/miss/eviction como métricas ('auth.token.cache.*')
+//Quando um usuário muda (em qualquer réplica, via 'UserChangeLog') os tokens dele saem do cache e voltam a passar pela
+//verificação completa na próxima requisição
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeListener;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class TokenCache implements MeterBinder, UserChangeListener {
+
+    //O 'MessageDigest' não é thread-safe, então cada chamada clona uma instância protótipo, o que é bem mais barato
+    //do que buscar o provider de novo com 'getInstance'
+    //Não usamos um 'ThreadLocal' porque no modo de virtual threads cada requisição roda em uma thread nova e o
+    //'ThreadLocal' criaria uma instância por requisição do mesmo jeito
+    private static final MessageDigest SHA_256;
+
+    static {
+        try {
+            SHA_256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 not available", exception);
+        }
+    }
+
+    private final BoundedExpiringMap<String, VerifiedToken> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final int maxSize;
+
+    //Log de mudanças que avisa esse cache das escritas, com ele desatualizado demais o cache é ignorado
+    private volatile UserChangeLog changeLog;
+
+    public TokenCache(@Value("${api.security.token.cache.max-size:10000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new BoundedExpiringMap<>(maxSize, token -> token.expiresAt().toEpochMilli());
+    }
+
+    //Calcula a chave do cache a partir do token recebido no header
+    public String digest(String token) {
+        byte[] hash = newDigest().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    //Busca um token já verificado, caso a entrada exista mas o token já tenha expirado removemos ela do cache e
+    //tratamos como um miss para que o token passe pela verificação completa (que vai rejeitá-lo)
+    public VerifiedToken get(String key) {
+        if (maxSize <= 0 || this.isStale()) {
+            misses.increment();
+            return null;
+        }
+
+        VerifiedToken cached = entries.get(key, System.currentTimeMillis());
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return cached;
+    }
+
+    //Guarda o resultado de uma verificação bem sucedida, com o cache cheio sai o token usado há mais tempo
+    public void put(String key, VerifiedToken token) {
+        if (maxSize <= 0) {
+            return;
+        }
+        entries.put(key, token);
+    }
+
+    //Remove uma entrada específica, usado quando um token deixa de ser válido antes do 'exp'
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    //Tira do cache os tokens expirados que ninguém mais buscou, fora da thread da requisição
+    @Scheduled(fixedDelayString = "${api.security.token.cache.purge-interval:PT1M}")
+    public void purgeExpired() {
+        entries.purgeExpired(System.currentTimeMillis());
+    }
+
+    //Remove os tokens dos usuários que mudaram, um cadastro novo não tem token no cache então ele é ignorado
+    //As mudanças de um ciclo inteiro são removidas em uma única passada pelo cache
+    @Override
+    public void onUserChanges(List<UserChange> changes) {
+        Set<String> subjects = new HashSet<>();
+        for (UserChange change : changes) {
+            if (change.getType() != UserChange.Type.CREATED) {
+                subjects.add(change.getEmailNormalized());
+            }
+        }
+        if (subjects.isEmpty() || entries.isEmpty()) {
+            return;
+        }
+
+        entries.removeIf(token -> subjects.contains(User.normalizeEmail(token.subject())));
+    }
+
+    @Override
+    public void attach(UserChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public void onResync() {
+        entries.clear();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return (MessageDigest) SHA_256.clone();
+        } catch (CloneNotSupportedException exception) {
+            throw new IllegalStateException("SHA-256 digest is not cloneable", exception);
+        }
+    }
+
+    //Sem uma leitura do 'UserChangeLog' dentro do limite esse cache pode ter entradas de usuários que já mudaram
+    private boolean isStale() {
+        UserChangeLog log = changeLog;
+        return log != null && log.isOverStalenessLimit();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("auth.token.cache.size", this, TokenCache::size).register(registry);
+        FunctionCounter.builder("auth.token.cache.hits", this, TokenCache::getHits).register(registry);
+        FunctionCounter.builder("auth.token.cache.misses", this, TokenCache::getMisses).register(registry);
+        FunctionCounter.builder("auth.token.cache.evictions", this, TokenCache::getEvictions).register(registry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return entries.evictions();
+    }
+}
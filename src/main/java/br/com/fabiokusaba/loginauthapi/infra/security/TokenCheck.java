@@ -0,0 +1,20 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Resultado da verificação de um token pelo 'TokenService': o token verificado quando ele é válido ou o motivo pelo qual
+//ele foi recusado
+//Os resultados de falha não carregam nada além do motivo, então usamos sempre as mesmas instâncias
+
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics.TokenOutcome;
+
+public record TokenCheck(TokenOutcome outcome, VerifiedToken token) {
+
+    public static final TokenCheck MISSING = new TokenCheck(TokenOutcome.MISSING, null);
+    public static final TokenCheck MALFORMED = new TokenCheck(TokenOutcome.MALFORMED, null);
+    public static final TokenCheck INVALID = new TokenCheck(TokenOutcome.INVALID, null);
+    public static final TokenCheck EXPIRED = new TokenCheck(TokenOutcome.EXPIRED, null);
+    public static final TokenCheck REVOKED = new TokenCheck(TokenOutcome.REVOKED, null);
+
+    public boolean isValid() {
+        return token != null;
+    }
+}
@@ -0,0 +1,132 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Introspecção de tokens em lote para o gateway, que antes precisava chamar um endpoint protegido por token e pagar o
+//caminho inteiro do 'SecurityFilter' (inclusive a busca do usuário) para cada um
+//Os tokens do lote são verificados em paralelo pelo mesmo 'TokenService' do filtro (com o cache de tokens e a lista de
+//revogação) e, para os que precisam conferir o usuário, fazemos uma única consulta 'in' com todos os emails do lote
+//As mesmas regras do 'SecurityFilter' valem aqui: um token autossuficiente no modo stateless não consulta o banco, e um
+//token com uma versão que não é mais a do usuário não está ativo
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.dto.IntrospectionResultDTO;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+@Service
+public class TokenIntrospectionService {
+
+    //Lotes pequenos não compensam o custo de distribuir o trabalho entre as threads
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    private final TokenService tokenService;
+    private final UserRepository userRepository;
+    private final UserPartitioning userPartitioning;
+    private final AuthMetrics authMetrics;
+    private final ForkJoinPool pool;
+
+    public TokenIntrospectionService(TokenService tokenService, UserRepository userRepository,
+                                     UserPartitioning userPartitioning, AuthMetrics authMetrics,
+                                     @Value("${api.security.token.introspection.threads:0}") int threads) {
+        this.tokenService = tokenService;
+        this.userRepository = userRepository;
+        this.userPartitioning = userPartitioning;
+        this.authMetrics = authMetrics;
+
+        //Pool próprio para que a verificação das assinaturas não dispute o 'commonPool' com o resto da JVM
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("token-introspection-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public List<IntrospectionResultDTO> introspect(List<String> tokens) {
+        List<TokenCheck> checks = this.verifyAll(tokens);
+
+        //Emails dos tokens válidos que precisam conferir o usuário no banco de dados
+        Set<String> emails = new HashSet<>();
+        for (TokenCheck check : checks) {
+            if (check.isValid() && !tokenService.isSelfContained(check.token())) {
+                emails.add(User.normalizeEmail(check.token().subject()));
+            }
+        }
+        Map<String, UserCredentials> users = this.loadUsers(emails);
+
+        List<IntrospectionResultDTO> results = new ArrayList<>(checks.size());
+        for (TokenCheck check : checks) {
+            results.add(this.toResult(check, users));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private List<TokenCheck> verifyAll(List<String> tokens) {
+        if (tokens.size() < PARALLEL_THRESHOLD) {
+            return tokens.stream().map(tokenService::check).toList();
+        }
+
+        //Um parallel stream iniciado de dentro de um ForkJoinPool roda nas threads desse pool
+        try {
+            return pool.submit(() -> tokens.parallelStream().map(tokenService::check).toList()).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Token introspection interrupted", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Token introspection failed", exception.getCause());
+        }
+    }
+
+    //Uma única consulta para todos os usuários do lote (uma por partição no modo particionado)
+    private Map<String, UserCredentials> loadUsers(Set<String> emails) {
+        if (emails.isEmpty()) {
+            return Map.of();
+        }
+
+        long start = System.nanoTime();
+        Map<String, UserCredentials> users = new HashMap<>();
+        for (UserCredentials user : userPartitioning.byPartition(emails,
+                userRepository::findCredentialsByEmailNormalizedIn)) {
+            users.put(User.normalizeEmail(user.email()), user);
+        }
+        authMetrics.record(AuthMetrics.Phase.PRINCIPAL_LOAD, start);
+        return users;
+    }
+
+    private IntrospectionResultDTO toResult(TokenCheck check, Map<String, UserCredentials> users) {
+        if (!check.isValid()) {
+            return IntrospectionResultDTO.inactive(check.outcome().name().toLowerCase());
+        }
+
+        VerifiedToken token = check.token();
+        if (!tokenService.isSelfContained(token)) {
+            UserCredentials user = users.get(User.normalizeEmail(token.subject()));
+            if (user == null) {
+                return IntrospectionResultDTO.inactive("unknown_user");
+            }
+            if (token.tokenVersion() != null && token.tokenVersion() != user.tokenVersion()) {
+                return IntrospectionResultDTO.inactive("stale_version");
+            }
+        }
+        return IntrospectionResultDTO.active(token.subject(), token.expiresAt().getEpochSecond());
+    }
+}
@@ -0,0 +1,35 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Principal leve que o 'SecurityFilter' coloca no contexto do Spring Security quando estamos no modo stateless
+//Ele é montado direto a partir das claims de um token já verificado, sem precisar buscar o usuário no banco de dados
+//As authorities já ficam prontas aqui dentro para que o filtro não precise criar uma nova lista a cada requisição
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+public record TokenPrincipal(String id, String email, String name, List<String> roles,
+                             List<GrantedAuthority> authorities) {
+
+    //Roles que todo usuário da nossa aplicação tem
+    public static final List<String> USER_ROLES = List.of("ROLE_USER");
+
+    //Roles dos administradores, que além de tudo que um usuário pode fazer acessam as ferramentas de administração
+    public static final List<String> ADMIN_ROLES = List.of("ROLE_USER", "ROLE_ADMIN");
+
+    //Nome da role de administrador para o 'hasRole' do 'SecurityConfig', sem o prefixo "ROLE_"
+    public static final String ADMIN = "ADMIN";
+
+    public static List<String> rolesOf(UserCredentials user) {
+        return user.admin() ? ADMIN_ROLES : USER_ROLES;
+    }
+
+    public static TokenPrincipal of(String id, String email, String name, List<String> roles) {
+        List<GrantedAuthority> authorities = roles.stream()
+                .<GrantedAuthority>map(SimpleGrantedAuthority::new)
+                .toList();
+        return new TokenPrincipal(id, email, name, roles, authorities);
+    }
+}
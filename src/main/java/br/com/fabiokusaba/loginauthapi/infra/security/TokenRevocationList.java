@@ -0,0 +1,109 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Lista de access tokens revogados antes do fim da validade, consultada pelo 'TokenService' em toda requisição
+//A consulta é um 'containsKey' em um 'ConcurrentHashMap' pelo "jti" do token, que não usa lock e não aloca nada, então
+//não pesa no caminho da requisição como pesaria uma consulta ao banco de dados
+//Para que a lista não cresça para sempre, cada "jti" também entra em um balde da sua hora de expiração (uma roda de
+//tempo com baldes de 'bucket-size'), e uma tarefa agendada descarta os baldes que já passaram, ou seja, um token sai
+//da lista assim que ele seria rejeitado de qualquer forma por estar expirado
+//A lista é persistida na tabela 'revoked_tokens', recarregada na subida e sincronizada periodicamente com as revogações
+//feitas nas outras réplicas
+//O 'revoked_at' e o cursor da sincronização vêm do relógio do banco, então a diferença entre os relógios das réplicas
+//não faz nenhuma revogação ser pulada, e cada sincronização relê um 'sync-interval' inteiro antes do cursor para pegar
+//as gravações que só fizeram commit depois da leitura anterior (reler uma revogação não muda nada)
+//As duas stacks usam a mesma lista, cada uma com o seu 'RevokedTokenStore', a reativa só lê as revogações feitas pelo
+//logout das réplicas servlet
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Component
+public class TokenRevocationList {
+
+    @Autowired
+    private RevokedTokenStore revokedTokenStore;
+
+    //Tamanho de cada balde da roda de tempo
+    @Value("${api.security.token.revocation.bucket-size:PT1M}")
+    private Duration bucketSize;
+
+    private final Map<String, Boolean> revoked = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Set<String>> wheel = new ConcurrentSkipListMap<>();
+
+    //Intervalo entre as sincronizações, também é a margem que cada uma relê antes do cursor
+    @Value("${api.security.token.revocation.sync-interval:PT30S}")
+    private Duration syncInterval;
+
+    //Instante da última sincronização com o banco de dados, no relógio do banco
+    private volatile Instant lastSync = Instant.EPOCH;
+
+    @PostConstruct
+    void load() {
+        Instant databaseNow = revokedTokenStore.currentTime();
+        revokedTokenStore.findActive(databaseNow).forEach(this::remember);
+        lastSync = databaseNow;
+    }
+
+    //Consulta feita a cada requisição autenticada
+    public boolean isRevoked(String jti) {
+        return jti != null && revoked.containsKey(jti);
+    }
+
+    //Revoga um token até o fim da validade dele, gravando primeiro no banco para que a revogação sobreviva a um
+    //restart e chegue nas outras réplicas
+    public void revoke(String jti, Instant expiresAt) {
+        if (jti == null || expiresAt.isBefore(Instant.now())) {
+            return;
+        }
+        RevokedToken token = new RevokedToken(jti, expiresAt, revokedTokenStore.currentTime());
+        revokedTokenStore.save(token);
+        this.remember(token);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    //Descarta os baldes cujos tokens já expiraram, tanto da memória quanto do banco de dados
+    @Scheduled(fixedDelayString = "${api.security.token.revocation.bucket-size:PT1M}")
+    public void purgeExpired() {
+        long currentBucket = this.bucketOf(Instant.now());
+        Map<Long, Set<String>> expired = wheel.headMap(currentBucket, false);
+        expired.values().forEach(bucket -> bucket.forEach(revoked::remove));
+        expired.clear();
+
+        revokedTokenStore.deleteExpired(Instant.now());
+    }
+
+    //Traz as revogações feitas nas outras réplicas desde a última sincronização, relendo um 'sync-interval' antes dela
+    //para não perder gravações que estavam em andamento
+    @Scheduled(fixedDelayString = "${api.security.token.revocation.sync-interval:PT30S}")
+    public void sync() {
+        Instant databaseNow = revokedTokenStore.currentTime();
+        revokedTokenStore.findRevokedSince(lastSync.minus(syncInterval)).forEach(this::remember);
+        lastSync = databaseNow;
+    }
+
+    private void remember(RevokedToken token) {
+        //Entra no balde seguinte ao da expiração para que o token só saia da lista depois de expirar
+        long bucket = this.bucketOf(token.getExpiresAt()) + 1;
+        wheel.computeIfAbsent(bucket, key -> ConcurrentHashMap.newKeySet()).add(token.getJti());
+        revoked.put(token.getJti(), Boolean.TRUE);
+    }
+
+    private long bucketOf(Instant instant) {
+        return instant.toEpochMilli() / bucketSize.toMillis();
+    }
+}
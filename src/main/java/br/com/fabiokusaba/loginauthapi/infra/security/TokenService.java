@@ -1,34 +1,83 @@
 package br.com.fabiokusaba.loginauthapi.infra.security;
 
 import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.exceptions.JWTCreationException;
+import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
 
 //Responsável pela lógica de validação e geração dos tokens
 
 @Service
 public class TokenService {
 
-    //Nós vamos salvar a nossa chave privada no 'application.properties' para isso vamos criar uma variável privada e
-    //usar a anotação '@Value' para indicar que estamos recuperando esse valor lá do nosso 'application.properties'
-    @Value("${api.security.token.secret}")
-    private String secret;
+    //Nomes das claims que vão dentro do token no modo stateless
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_NAME = "name";
+    private static final String CLAIM_ROLES = "roles";
+    private static final String CLAIM_VERSION = "ver";
+
+    //Chaveiro com as chaves de assinatura, ele decide o algorítmo (HS256 com o segredo do 'application.properties' ou
+    //RS256/ES256 com chaves geradas e rotacionadas) e guarda um 'JWTVerifier' pronto para cada chave
+    @Autowired
+    private SigningKeyRing signingKeyRing;
+
+    //Cache dos tokens que já foram verificados, dessa forma o nosso filtro não precisa refazer a verificação HMAC do
+    //mesmo token a cada requisição
+    @Autowired
+    private TokenCache tokenCache;
+
+    //Tokens revogados antes do fim da validade (logout)
+    //As duas stacks têm a lista, só a servlet revoga (logout) e a reativa recusa os mesmos tokens depois de sincronizar
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
+    //Métricas de tempo de assinatura e verificação e dos resultados das verificações
+    @Autowired
+    private AuthMetrics authMetrics;
+
+    //Modo stateless: quando ligado o token passa a carregar o id, o nome, as roles e a versão do token do usuário como
+    //claims e o 'SecurityFilter' monta o principal direto do token sem consultar o 'UserRepository'
+    @Value("${api.security.token.stateless.enabled:false}")
+    private boolean stateless;
+
+    //Validade do access token, ela é curta porque o cliente renova o token com o refresh token em "/auth/refresh"
+    @Value("${api.security.token.access-ttl:15m}")
+    private Duration accessTtl;
+
+    //Política de "frescor" do modo stateless: tokens emitidos há mais tempo do que esse limite voltam a ser conferidos
+    //no banco de dados (incluindo a versão do token), um valor zero significa que as claims sempre são suficientes
+    @Value("${api.security.token.stateless.max-age:0s}")
+    private Duration statelessMaxAge;
 
     //Geração do token para quando o usuário estiver fazendo o login na nossa aplicação
     public String generateToken(User user) {
+        return this.generateToken(UserCredentials.from(user));
+    }
+
+    //Mesma geração do token a partir da projeção enxuta do usuário que usamos no login
+    public String generateToken(UserCredentials user) {
+
+        long start = System.nanoTime();
 
         //Como pode ter um erro na hora de criar o nosso token vamos abrir um bloco try-catch
         try {
 
-            //Aqui dentro do bloco try a primeira coisa que precisamos fazer é definir o algorítmo de geração do token
+            //Aqui dentro do bloco try nós pegamos a chave atual do chaveiro, que já traz o algorítmo de geração do token
             //Quando definimos o algorítmo de geração do token nós precisamos passar uma secret key que vai ser a chave
             //privada que iremos utilizar na nossa criptografia
             //Os algorítmos de criptografia pegam uma informação e fazem um hash dessa informação, criptografam essa
@@ -37,21 +86,38 @@ public class TokenService {
             //O nosso servidor vai ter uma chave privada que vamos utilizar para criptografar e descriptografar os dados
             //dessa forma a gente consegue ter certeza que quem emitiu esse token foi o nosso servidor
             //Essa informação, chave privada, deve ser guardada de uma forma muito segura usando variáveis de ambiente
-            Algorithm algorithm = Algorithm.HMAC256(secret);
+
+            SigningKey key = signingKeyRing.current();
 
             //O próximo passo é fazer a geração do nosso token através do método 'JWT.create' onde vamos passar algumas
             //informações
-            String token = JWT.create()
+            JWTCreator.Builder builder = JWT.create()
+                    //Qual chave assinou o token, é por ela que a verificação (aqui ou em outro serviço) escolhe a chave
+                    .withKeyId(key.kid())
+                    //Identificador único do token, é por ele que um token pode ser revogado no logout
+                    .withJWTId(UUID.randomUUID().toString())
                     //Quem está emitindo o token
-                    .withIssuer("login-auth-api")
+                    .withIssuer(SigningKeyRing.ISSUER)
                     //Quem está sendo o sujeito que está ganhando esse token, estamos salvando o email no token
-                    .withSubject(user.getEmail())
+                    .withSubject(user.email())
+                    //Quando o token foi emitido, usado pela política de frescor do modo stateless
+                    .withIssuedAt(Instant.now())
                     //Tempo de expiração do nosso token
-                    .withExpiresAt(this.generateExpirationDate())
-                    //Por fim, vamos usar o 'sign' passando o nosso 'algorithm' para gerar de fato o nosso token
-                    .sign(algorithm);
+                    .withExpiresAt(this.generateExpirationDate());
+
+            //No modo stateless salvamos também as informações que o filtro precisa para montar o principal
+            if (stateless) {
+                builder.withClaim(CLAIM_USER_ID, user.id())
+                        .withClaim(CLAIM_NAME, user.name())
+                        .withClaim(CLAIM_ROLES, TokenPrincipal.rolesOf(user))
+                        .withClaim(CLAIM_VERSION, user.tokenVersion());
+            }
+
+            //Por fim, vamos usar o 'sign' passando o algorítmo da chave atual para gerar de fato o nosso token
+            String token = builder.sign(key.algorithm());
 
             //Retornamos o nosso token
+            authMetrics.record(AuthMetrics.Phase.TOKEN_SIGN, start);
             return token;
 
         } catch (JWTCreationException exception) {
@@ -62,47 +128,153 @@ public class TokenService {
     }
 
     //Validação do token da nossa aplicação
-    //Vamos receber como parâmetro o token
+    //Vamos receber como parâmetro o token e, se ele for válido, retornamos o email do usuário que está nesse token e a
+    //gente salvou na hora de gerar o token
     public String validateToken(String token) {
+        VerifiedToken verified = this.verifyToken(token);
+        return verified != null ? verified.subject() : null;
+    }
+
+    //Verificação do token passando primeiro pelo cache, só fazemos a verificação completa da assinatura quando é a
+    //primeira vez que vemos esse token (ou quando ele saiu do cache)
+    public VerifiedToken verifyToken(String token) {
+        return this.check(token).token();
+    }
+
+    //Mesma verificação do 'verifyToken', mas devolvendo também o motivo quando o token não é válido, usado na
+    //introspecção de tokens
+    //A verificação é feita em etapas da mais barata para a mais cara e cada recusa é um 'TokenCheck', não uma exceção:
+    //forma do token, cache, decodificação, "exp" e "iss" e só então a assinatura, assim um token lixo ou expirado custa
+    //menos do que um token válido em vez de custar mais
+    public TokenCheck check(String token) {
+
+        //Sem token não tem o que verificar, evitamos lançar e capturar uma exceção do JWT só para descobrir isso
+        if (token == null || token.isEmpty()) {
+            authMetrics.token(AuthMetrics.TokenOutcome.MISSING);
+            return TokenCheck.MISSING;
+        }
+
+        //Token que nem tem a forma de um JWT é recusado antes de calcular o digest do cache
+        if (!TokenSyntax.isWellFormed(token)) {
+            authMetrics.token(AuthMetrics.TokenOutcome.MALFORMED);
+            return TokenCheck.MALFORMED;
+        }
+
+        long start = System.nanoTime();
+        String key = tokenCache.digest(token);
+        VerifiedToken cached = tokenCache.get(key);
+        if (cached != null) {
+            authMetrics.record(AuthMetrics.Phase.TOKEN_VERIFY, start);
+            return this.checkRevocation(cached);
+        }
 
-        //Novamente vamos utilizar um bloco try-catch porque caso der algum erro na validação do token o JWT vai lançar
-        //uma exceção
         try {
 
-            //Se conseguirmos validar o token vou retornar o email do usuário que está nesse token e a gente salvou na
-            //hora de gerar o token
+            //Primeiro decodificamos o token (sem verificar), a forma já foi conferida então aqui só falha um base64 ou
+            //um JSON corrompido
+            DecodedJWT decoded;
+            try {
+                decoded = JWT.decode(token);
+            } catch (JWTDecodeException exception) {
+                authMetrics.token(AuthMetrics.TokenOutcome.MALFORMED);
+                return TokenCheck.MALFORMED;
+            }
+
+            //Antes de gastar a verificação da assinatura conferimos as claims que já temos em mãos: um token expirado
+            //ou de outro emissor seria recusado de qualquer forma
+            //Separamos os tokens expirados dos inválidos nas métricas, um volume alto de expirados é normal enquanto um
+            //volume alto de inválidos pode indicar um ataque
+            Instant expiresAt = decoded.getExpiresAtAsInstant();
+            if (expiresAt == null || !SigningKeyRing.ISSUER.equals(decoded.getIssuer())) {
+                authMetrics.token(AuthMetrics.TokenOutcome.INVALID);
+                return TokenCheck.INVALID;
+            }
+            if (!expiresAt.isAfter(Instant.now())) {
+                authMetrics.token(AuthMetrics.TokenOutcome.EXPIRED);
+                return TokenCheck.EXPIRED;
+            }
+
+            //Buscamos o 'verifier' já montado para a chave que assinou o token pelo header "kid", um "kid" que não
+            //conhecemos é um token inválido
+            JWTVerifier verifier = signingKeyRing.verifier(decoded.getKeyId());
+            if (verifier == null) {
+                authMetrics.token(AuthMetrics.TokenOutcome.INVALID);
+                return TokenCheck.INVALID;
+            }
+
+            //Aqui nós passamos o token para ele ser verificado
+            verifier.verify(decoded);
 
-            //Aqui basicamente vamos fazer a mesma construção do 'algorithm'
-            Algorithm algorithm = Algorithm.HMAC256(secret);
+            //Quando a gente fizer o 'getSubject' a gente vai pegar o valor que foi salvo no token no momento da geração
+            VerifiedToken verified = this.toVerifiedToken(decoded);
+            tokenCache.put(key, verified);
+            return this.checkRevocation(verified);
 
-            //Vamos retornar usando o método 'JWT.require' passando o nosso 'algorithm'
-            return JWT.require(algorithm)
-                    //Aqui vamos passar o mesmo Issuer, estamos montando o objeto para fazer a verificação
-                    .withIssuer("login-auth-api")
-                    .build()
-                    //Aqui nós passamos o token para ele ser verificado
-                    .verify(token)
-                    //Quando a gente fizer o 'getSubject' a gente vai pegar o valor que foi salvo no token no momento da
-                    //geração
-                    .getSubject();
+        } catch (TokenExpiredException exception) {
+
+            //O token expirou entre a nossa conferência do "exp" e a verificação da biblioteca
+            authMetrics.token(AuthMetrics.TokenOutcome.EXPIRED);
+            return TokenCheck.EXPIRED;
 
         } catch (JWTVerificationException exception) {
 
-            //Caso der um erro de verificação de token vou retornar nulo porque aqui estamos apenas validando o token
-            //então caso a gente não consiga validar esse token, por exemplo se for um token inválido, token faltando
-            //informação, etc, vamos retornar null e depois fazemos uma verificação no nosso filter chain, na nossa
-            //cadeia de segurança que a gente vai implementar que se vier como null vamos colocar o usuário como não
-            //autenticado
-            return null;
+            //Sobrou para a biblioteca recusar só o que passou por todas as etapas acima, na prática uma assinatura que
+            //não confere, e aí retornamos o motivo para o filtro tratar o usuário como não autenticado
+            authMetrics.token(AuthMetrics.TokenOutcome.INVALID);
+            return TokenCheck.INVALID;
+
+        } finally {
+            authMetrics.record(AuthMetrics.Phase.TOKEN_VERIFY, start);
+        }
+    }
+
+    //Revoga o token até o fim da validade dele, usado no logout
+    public void revoke(VerifiedToken token) {
+        tokenRevocationList.revoke(token.jti(), token.expiresAt());
+    }
+
+    //Mesmo um token com assinatura válida e ainda no cache pode ter sido revogado no logout
+    private TokenCheck checkRevocation(VerifiedToken token) {
+        if (tokenRevocationList.isRevoked(token.jti())) {
+            authMetrics.token(AuthMetrics.TokenOutcome.REVOKED);
+            return TokenCheck.REVOKED;
+        }
+        authMetrics.token(AuthMetrics.TokenOutcome.VALID);
+        return new TokenCheck(AuthMetrics.TokenOutcome.VALID, token);
+    }
+
+    //Diz se o principal que veio nas claims do token pode ser usado sem consultar o banco de dados
+    public boolean isSelfContained(VerifiedToken token) {
+        if (!stateless || token.principal() == null) {
+            return false;
+        }
+        if (statelessMaxAge.isZero()) {
+            return true;
+        }
+        return token.issuedAt() != null && token.issuedAt().plus(statelessMaxAge).isAfter(Instant.now());
+    }
+
+    //Monta o resultado da verificação a partir do token decodificado, o principal só é montado quando o token tem as
+    //claims do modo stateless
+    private VerifiedToken toVerifiedToken(DecodedJWT decoded) {
+        Integer version = decoded.getClaim(CLAIM_VERSION).asInt();
+        String userId = decoded.getClaim(CLAIM_USER_ID).asString();
+
+        TokenPrincipal principal = null;
+        if (userId != null) {
+            List<String> roles = decoded.getClaim(CLAIM_ROLES).asList(String.class);
+            principal = TokenPrincipal.of(userId, decoded.getSubject(), decoded.getClaim(CLAIM_NAME).asString(),
+                    roles != null ? List.copyOf(roles) : TokenPrincipal.USER_ROLES);
         }
 
+        return new VerifiedToken(decoded.getId(), decoded.getSubject(), decoded.getIssuedAtAsInstant(),
+                decoded.getExpiresAtAsInstant(), version, principal);
     }
 
     //Função responsável pelo tempo de expiração do nosso token
     private Instant generateExpirationDate() {
 
-        //A nossa regra consiste em pegar o tempo de agora e adicionar 2 horas
-        //Por fim, transformamos em um Instant passando a nossa time zone
-        return LocalDateTime.now().plusHours(2).toInstant(ZoneOffset.of("-03:00"));
+        //A nossa regra consiste em pegar o instante de agora e adicionar a validade configurada do access token
+        return Instant.now().plus(accessTtl);
     }
 }
@@ -0,0 +1,67 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Checagens de forma do token que não precisam de decodificação nem de criptografia
+//Elas rodam antes de qualquer outra etapa da verificação, assim um header qualquer ou um token lixo é recusado com uma
+//varredura dos caracteres, sem calcular o digest do cache, sem decodificar o JSON e sem lançar exceções
+//Um JWT que nós emitimos é sempre 'header.payload.assinatura' em base64url sem padding, e o header e o payload são
+//objetos JSON, então as duas primeiras partes sempre começam com "ey" ('{"' em base64)
+
+public final class TokenSyntax {
+
+    //Tamanho máximo aceito, os nossos tokens têm poucas centenas de caracteres
+    public static final int MAX_LENGTH = 8192;
+
+    private static final String BEARER = "Bearer ";
+
+    private TokenSyntax() {
+    }
+
+    //Extrai o token do header "Authorization" sem o prefixo "Bearer " (sem diferenciar maiúsculas)
+    //O prefixo e os espaços são conferidos direto no header, sem o 'replace' de antes, e o token sai em uma única
+    //cópia ('substring') do trecho certo, que é a string que a decodificação do JWT vai precisar de qualquer forma
+    //Devolve nulo quando não há header ou ele não é do tipo Bearer
+    public static String fromAuthorizationHeader(String header) {
+        if (header == null || !header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return null;
+        }
+
+        int start = BEARER.length();
+        int end = header.length();
+        while (start < end && header.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && header.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return header.substring(start, end);
+    }
+
+    //Três partes não vazias separadas por ponto, só com caracteres do alfabeto base64url
+    public static boolean isWellFormed(String token) {
+        int length = token.length();
+        if (length > MAX_LENGTH || !token.startsWith("ey")) {
+            return false;
+        }
+
+        int dots = 0;
+        int segmentStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                if (i == segmentStart || ++dots > 2) {
+                    return false;
+                }
+                segmentStart = i + 1;
+            } else if (!isBase64Url(c)) {
+                return false;
+            } else if (i == segmentStart && dots == 1 && !token.startsWith("ey", i)) {
+                return false;
+            }
+        }
+        return dots == 2 && segmentStart < length;
+    }
+
+    private static boolean isBase64Url(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+}
@@ -0,0 +1,19 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+//Resultado de um token que já passou pela verificação de assinatura, contém apenas as informações que o nosso filtro
+//precisa para autenticar o usuário sem ter que verificar o token novamente
+//O 'principal' só existe quando o token foi emitido no modo stateless e carrega as claims do usuário, caso contrário
+//ele fica nulo e o filtro precisa buscar o usuário no banco de dados
+//O 'tokenVersion' também pode ser nulo quando o token não tem a claim de versão
+//O 'jti' é o identificador único do token, usado para revogar o token no logout
+
+import java.time.Instant;
+
+public record VerifiedToken(String jti, String subject, Instant issuedAt, Instant expiresAt, Integer tokenVersion,
+                            TokenPrincipal principal) {
+
+    //Um token só pode ser reaproveitado enquanto ainda não tiver expirado
+    public boolean isExpired(long nowMillis) {
+        return expiresAt.toEpochMilli() <= nowMillis;
+    }
+}
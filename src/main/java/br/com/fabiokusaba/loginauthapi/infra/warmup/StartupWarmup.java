@@ -0,0 +1,255 @@
+package br.com.fabiokusaba.loginauthapi.infra.warmup;
+
+//Aquecimento da aplicação antes de ela receber tráfego
+//Logo depois de um deploy as primeiras milhares de requisições eram várias vezes mais lentas: o BCrypt e a assinatura
+//e verificação dos tokens ainda rodavam no interpretador da JVM, o Hibernate montava as consultas do 'UserRepository'
+//na primeira chamada e o pool de conexões estava vazio
+//Aqui repetimos em rodadas essas operações com dados sintéticos (um usuário que não existe no banco) até a latência
+//média de cada uma parar de cair, ou até acabar o 'budget', e antes disso enchemos o pool de conexões
+//Só contamos como melhora uma rodada mais rápida do que a melhor anterior por mais do que a tolerância, assim uma rodada
+//mais lenta por ruído (GC, outro processo na máquina) não prolonga o aquecimento
+//Rodamos como 'ApplicationRunner': o Spring Boot só muda o readiness para ACCEPTING_TRAFFIC depois que todos os
+//runners terminam, então o probe "/actuator/health/readiness" responde OUT_OF_SERVICE durante o aquecimento e o load
+//balancer não manda tráfego para a réplica
+//A duração e a latência de cada operação na primeira e na última rodada vão para o log e para as métricas
+//('warmup.*'), as operações sintéticas também aparecem nas métricas de autenticação
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.infra.partition.PartitionRoutingDataSource;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenCache;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    public enum Operation {
+        PASSWORD_MATCHES, TOKEN_GENERATE, TOKEN_VALIDATE, USER_LOOKUP
+    }
+
+    //Latência média de cada operação na primeira rodada ('before') e na última ('after'), em nanossegundos
+    public record Report(Duration duration, int rounds, boolean settled, int poolConnections,
+                         Map<Operation, Long> before, Map<Operation, Long> after) {
+    }
+
+    private final PasswordEncoder passwordEncoder;
+    private final TokenService tokenService;
+    private final TokenCache tokenCache;
+    private final UserRepository userRepository;
+    private final UserPartitioning userPartitioning;
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${api.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${api.warmup.budget:PT30S}")
+    private Duration budget;
+
+    @Value("${api.warmup.iterations:200}")
+    private int iterations;
+
+    @Value("${api.warmup.hash-iterations:2}")
+    private int hashIterations;
+
+    @Value("${api.warmup.settle-tolerance:0.1}")
+    private double settleTolerance;
+
+    @Value("${api.warmup.settle-rounds:3}")
+    private int settleRounds;
+
+    private volatile Report report;
+
+    public StartupWarmup(PasswordEncoder passwordEncoder, TokenService tokenService, TokenCache tokenCache,
+                         UserRepository userRepository, UserPartitioning userPartitioning, DataSource dataSource,
+                         MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.tokenService = tokenService;
+        this.tokenCache = tokenCache;
+        this.userRepository = userRepository;
+        this.userPartitioning = userPartitioning;
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budget.toNanos();
+        int poolConnections = this.fillPool();
+
+        //Usuário sintético, o email não existe no banco (a busca percorre o índice e não acha nada) e o hash é gerado
+        //com o custo atual do encoder
+        String password = UUID.randomUUID().toString();
+        UserCredentials user = new UserCredentials(UUID.randomUUID().toString(), "Warm-up",
+                "warmup-" + UUID.randomUUID() + "@warmup.invalid", passwordEncoder.encode(password), 0, false, false);
+
+        Map<Operation, Long> before = null;
+        Map<Operation, Long> best = new EnumMap<>(Operation.class);
+        Map<Operation, Long> current;
+        int rounds = 0;
+        int stableRounds = 0;
+        //Pelo menos uma rodada sempre roda, mesmo com o 'budget' zerado, para termos com o que comparar
+        do {
+            current = this.round(user, password);
+            rounds++;
+            if (before == null) {
+                before = current;
+            }
+            stableRounds = rounds > 1 && !this.improved(best, current) ? stableRounds + 1 : 0;
+            current.forEach((operation, latency) -> best.merge(operation, latency, Math::min));
+        } while (System.nanoTime() < deadline && stableRounds < settleRounds);
+
+        report = new Report(Duration.ofNanos(System.nanoTime() - start), rounds, stableRounds >= settleRounds,
+                poolConnections, before, current);
+        this.publish(report);
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    //Segura ao mesmo tempo tantas conexões quanto o mínimo de conexões ociosas do Hikari, o que obriga o pool a abrir
+    //todas elas agora e não nas primeiras requisições
+    //No modo particionado fazemos isso no pool de cada partição
+    private int fillPool() {
+        List<HikariDataSource> pools;
+        if (dataSource instanceof PartitionRoutingDataSource routing) {
+            pools = routing.getPartitions();
+        } else if (dataSource instanceof HikariDataSource hikari) {
+            pools = List.of(hikari);
+        } else {
+            return 0;
+        }
+
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (HikariDataSource hikari : pools) {
+                for (int i = 0; i < hikari.getMinimumIdle(); i++) {
+                    connections.add(hikari.getConnection());
+                }
+            }
+        } catch (SQLException exception) {
+            log.warn("Could not fill the connection pool during warm-up: {}", exception.getMessage());
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException exception) {
+                    log.debug("Could not return a warm-up connection to the pool", exception);
+                }
+            }
+        }
+        return connections.size();
+    }
+
+    //Uma rodada executa cada operação algumas vezes e mede a média, o BCrypt roda poucas vezes porque cada chamada já é
+    //cara o suficiente para o JIT compilar o laço dele
+    private Map<Operation, Long> round(UserCredentials user, String password) {
+        Map<Operation, Long> latencies = new EnumMap<>(Operation.class);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < hashIterations; i++) {
+            passwordEncoder.matches(i % 2 == 0 ? password : "wrong-" + password, user.password());
+        }
+        latencies.put(Operation.PASSWORD_MATCHES, (System.nanoTime() - start) / Math.max(1, hashIterations));
+
+        String[] tokens = new String[iterations];
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            tokens[i] = tokenService.generateToken(user);
+        }
+        latencies.put(Operation.TOKEN_GENERATE, (System.nanoTime() - start) / Math.max(1, iterations));
+
+        //Cada token é novo, então todas as validações passam pela verificação completa da assinatura, e depois tiramos
+        //os tokens sintéticos do cache para não ocuparem o lugar dos tokens de verdade
+        start = System.nanoTime();
+        for (String token : tokens) {
+            tokenService.validateToken(token);
+        }
+        latencies.put(Operation.TOKEN_VALIDATE, (System.nanoTime() - start) / Math.max(1, iterations));
+        for (String token : tokens) {
+            tokenCache.invalidate(tokenCache.digest(token));
+        }
+
+        start = System.nanoTime();
+        userPartitioning.forEmail(user.email(), () -> {
+            for (int i = 0; i < iterations; i++) {
+                userRepository.findByEmail(user.email());
+                userRepository.findCredentialsByEmail(user.email());
+            }
+            return null;
+        });
+        latencies.put(Operation.USER_LOOKUP, (System.nanoTime() - start) / Math.max(1, iterations));
+        return latencies;
+    }
+
+    //Alguma operação ficou mais rápida do que a melhor rodada anterior por mais do que a tolerância
+    private boolean improved(Map<Operation, Long> best, Map<Operation, Long> current) {
+        for (Operation operation : Operation.values()) {
+            if (current.get(operation) < best.get(operation) * (1 - settleTolerance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publish(Report report) {
+        log.info("Warm-up finished in {} ms after {} rounds ({}), {} pooled connections, latency before -> after: {}",
+                report.duration().toMillis(), report.rounds(), report.settled() ? "settled" : "budget exhausted",
+                report.poolConnections(), report.before().keySet().stream()
+                        .map(operation -> operation.name().toLowerCase(Locale.ROOT) + " " + micros(report.before().get(operation))
+                                + " -> " + micros(report.after().get(operation)) + " us")
+                        .collect(Collectors.joining(", ")));
+
+        Gauge.builder("warmup.duration", report, value -> value.duration().toNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                .description("Time spent warming up before accepting traffic")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        for (Operation operation : Operation.values()) {
+            String name = operation.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("warmup.latency", report, value -> value.before().get(operation) / 1000.0)
+                    .tags("operation", name, "round", "first")
+                    .baseUnit("microseconds")
+                    .register(meterRegistry);
+            Gauge.builder("warmup.latency", report, value -> value.after().get(operation) / 1000.0)
+                    .tags("operation", name, "round", "last")
+                    .baseUnit("microseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
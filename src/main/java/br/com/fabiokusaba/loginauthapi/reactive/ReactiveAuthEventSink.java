@@ -0,0 +1,55 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Destino da trilha de auditoria na stack reativa: o mesmo insert do 'JdbcAuthEventSink' feito pelo R2DBC, com todas
+//as linhas do lote em um único 'Statement'
+//Quem chama é a thread de gravação do 'AuthAuditLog', que não é do event loop, então aqui podemos esperar o lote ser
+//gravado com o 'block'
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthEventSink;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+public class ReactiveAuthEventSink implements AuthEventSink {
+
+    private static final String INSERT_EVENT = "insert into auth_events (type, email, ip, reason, occurred_at) " +
+            "values ($1, $2, $3, $4, $5)";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveAuthEventSink(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public void write(List<AuthEvent> events) {
+        databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement(INSERT_EVENT);
+            for (int i = 0; i < events.size(); i++) {
+                if (i > 0) {
+                    statement.add();
+                }
+                AuthEvent event = events.get(i);
+                statement.bind(0, event.getType().name());
+                bind(statement, 1, event.getEmail());
+                bind(statement, 2, event.getIp());
+                bind(statement, 3, event.getReason());
+                statement.bind(4, event.getOccurredAt().atOffset(ZoneOffset.UTC));
+            }
+            return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+        }).then().block();
+    }
+
+    private static void bind(Statement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index, String.class);
+        } else {
+            statement.bind(index, value);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Handlers de login e de cadastro da stack reativa, com o mesmo comportamento do 'AuthController'
+//Nenhum passo bloqueia a thread do event loop: a busca do usuário é R2DBC e o BCrypt roda no scheduler de hashing
+//A emissão de refresh tokens, o logout e o import em lote continuam só na stack servlet, então aqui o 'refreshToken' da
+//resposta vem nulo
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.dto.LoginRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.RegisterRequestDTO;
+import br.com.fabiokusaba.loginauthapi.dto.ResponseDTO;
+import br.com.fabiokusaba.loginauthapi.exceptions.ErrorBody;
+import br.com.fabiokusaba.loginauthapi.exceptions.LoginThrottledException;
+import br.com.fabiokusaba.loginauthapi.exceptions.PasswordHashingUnavailableException;
+import br.com.fabiokusaba.loginauthapi.exceptions.UserNotFoundException;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.security.LoginThrottle;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+public class ReactiveAuthHandler {
+
+    private final ReactiveUserStore userStore;
+    private final ReactivePasswordHashing passwordHashing;
+    private final TokenService tokenService;
+    private final LoginThrottle loginThrottle;
+    private final AuthMetrics authMetrics;
+    private final AuthAuditLog authAuditLog;
+
+    public ReactiveAuthHandler(ReactiveUserStore userStore, ReactivePasswordHashing passwordHashing,
+                               TokenService tokenService, LoginThrottle loginThrottle, AuthMetrics authMetrics,
+                               AuthAuditLog authAuditLog) {
+        this.userStore = userStore;
+        this.passwordHashing = passwordHashing;
+        this.tokenService = tokenService;
+        this.loginThrottle = loginThrottle;
+        this.authMetrics = authMetrics;
+        this.authAuditLog = authAuditLog;
+    }
+
+    public Mono<ServerResponse> login(ServerRequest request) {
+        return request.bodyToMono(LoginRequestDTO.class)
+                .flatMap(body -> {
+
+                    //Assim como no servlet o limite de tentativas é conferido antes da busca e do hashing
+                    long retryAfter = loginThrottle.tryAcquire(body.email(), clientIp(request));
+                    if (retryAfter > 0) {
+                        authMetrics.login(AuthMetrics.LoginOutcome.THROTTLED);
+                        this.audit(AuthEvent.Type.LOGIN_THROTTLED, body.email(), request, null);
+                        return Mono.error(new LoginThrottledException(retryAfter));
+                    }
+
+                    long lookupStart = System.nanoTime();
+                    return userStore.findCredentialsByEmail(body.email())
+                            .doFinally(signal -> authMetrics.record(AuthMetrics.Phase.LOOKUP, lookupStart))
+                            .switchIfEmpty(Mono.defer(() -> {
+                                //Mesmo BCrypt fictício da stack servlet antes de responder que o email não existe
+                                authMetrics.login(AuthMetrics.LoginOutcome.UNKNOWN_USER);
+                                this.audit(AuthEvent.Type.LOGIN_FAILED, body.email(), request, "unknown_user");
+                                return passwordHashing.simulateMatch(body.password())
+                                        .then(Mono.error(new UserNotFoundException()));
+                            }))
+                            .flatMap(user -> this.verifyPassword(body, user, request));
+                })
+                .onErrorResume(this::errorResponse);
+    }
+
+    public Mono<ServerResponse> register(ServerRequest request) {
+        return request.bodyToMono(RegisterRequestDTO.class)
+                .flatMap(body -> passwordHashing.encode(body.password())
+                        .flatMap(hash -> userStore.insert(body.name(), body.email(), hash))
+                        .flatMap(user -> {
+                            authMetrics.register(AuthMetrics.RegisterOutcome.SUCCESS);
+                            this.audit(AuthEvent.Type.REGISTERED, user.email(), request, null);
+                            return this.tokenResponse(user);
+                        })
+                        .onErrorResume(DataIntegrityViolationException.class, exception -> {
+                            authMetrics.register(AuthMetrics.RegisterOutcome.DUPLICATE);
+                            this.audit(AuthEvent.Type.REGISTER_REJECTED, body.email(), request, "duplicate");
+                            return ServerResponse.badRequest().build();
+                        }))
+                .onErrorResume(this::errorResponse);
+    }
+
+    //Mesmo endpoint de teste do 'UserController'
+    public Mono<ServerResponse> user(ServerRequest request) {
+        return ServerResponse.ok().contentType(MediaType.TEXT_PLAIN).bodyValue("sucesso em buscar user!");
+    }
+
+    private Mono<ServerResponse> verifyPassword(LoginRequestDTO body, UserCredentials user, ServerRequest request) {
+        long hashStart = System.nanoTime();
+        return passwordHashing.matches(body.password(), user.password())
+                .flatMap(matches -> {
+                    authMetrics.record(AuthMetrics.Phase.HASH_VERIFY, hashStart);
+                    if (!matches) {
+                        authMetrics.login(AuthMetrics.LoginOutcome.BAD_PASSWORD);
+                        this.audit(AuthEvent.Type.LOGIN_FAILED, user.email(), request, "bad_password");
+                        return ServerResponse.badRequest().build();
+                    }
+
+                    //Rehash em segundo plano quando o custo do BCrypt mudou, sem atrasar a resposta
+                    if (passwordHashing.upgradeEncoding(user.password())) {
+                        passwordHashing.encode(body.password())
+                                .flatMap(hash -> userStore.updatePassword(user.id(), user.email(), user.password(), hash))
+                                .onErrorResume(exception -> Mono.empty())
+                                .subscribe();
+                    }
+
+                    authMetrics.login(AuthMetrics.LoginOutcome.SUCCESS);
+                    this.audit(AuthEvent.Type.LOGIN_SUCCEEDED, user.email(), request, null);
+                    return this.tokenResponse(user);
+                });
+    }
+
+    private Mono<ServerResponse> tokenResponse(UserCredentials user) {
+        String token = tokenService.generateToken(user);
+        return ServerResponse.ok().bodyValue(new ResponseDTO(user.name(), token, null));
+    }
+
+    //Mesmas respostas de erro do 'RestExceptionHandler', com os corpos já serializados do 'ErrorBody'
+    private Mono<ServerResponse> errorResponse(Throwable exception) {
+        if (exception instanceof UserNotFoundException) {
+            return this.error(ErrorBody.USER_NOT_FOUND, 0);
+        }
+        if (exception instanceof LoginThrottledException throttled) {
+            return this.error(ErrorBody.LOGIN_THROTTLED, throttled.getRetryAfterSeconds());
+        }
+        if (exception instanceof PasswordHashingUnavailableException unavailable) {
+            return this.error(ErrorBody.HASHING_UNAVAILABLE, unavailable.getRetryAfterSeconds());
+        }
+        return this.error(ErrorBody.INTERNAL_ERROR, 0);
+    }
+
+    private Mono<ServerResponse> error(ErrorBody body, long retryAfterSeconds) {
+        authMetrics.failure(body);
+        ServerResponse.BodyBuilder response = ServerResponse.status(body.status())
+                .contentType(MediaType.APPLICATION_JSON);
+        if (retryAfterSeconds > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        return response.bodyValue(body.json());
+    }
+
+    //O 'record' nunca bloqueia com a política 'drop', que é a usada nesta stack ('application-reactive.properties')
+    private void audit(AuthEvent.Type type, String email, ServerRequest request, String reason) {
+        authAuditLog.record(type, User.normalizeEmail(email), clientIp(request), reason);
+    }
+
+    private static String clientIp(ServerRequest request) {
+        return request.remoteAddress()
+                .map(address -> address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString())
+                .orElse("");
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Ponto de entrada da stack reativa, sobe a 'ReactiveStackConfiguration' com o perfil 'reactive' ativo
+//Com o jar: java -Dloader.main=br.com.fabiokusaba.loginauthapi.reactive.ReactiveLoginAuthApiApplication \
+//  -cp login-auth-api.jar org.springframework.boot.loader.launch.PropertiesLauncher
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+public class ReactiveLoginAuthApiApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(ReactiveStackConfiguration.class)
+                .profiles("reactive")
+                .web(WebApplicationType.REACTIVE)
+                .run(args);
+    }
+}
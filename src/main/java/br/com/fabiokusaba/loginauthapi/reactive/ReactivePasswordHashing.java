@@ -0,0 +1,64 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Equivalente reativo do 'PasswordHashingService'
+//Na stack reativa as poucas threads do event loop atendem todas as conexões, então um único BCrypt rodando nelas
+//travaria todas as outras requisições, por isso o hashing roda em um scheduler próprio com uma thread por core e uma
+//fila limitada
+//Quando a fila está cheia o scheduler recusa a tarefa e respondemos o mesmo 503 com "Retry-After" da stack servlet
+
+import br.com.fabiokusaba.loginauthapi.exceptions.PasswordHashingUnavailableException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ReactivePasswordHashing {
+
+    private final PasswordEncoder passwordEncoder;
+    private final Scheduler scheduler;
+    private final long retryAfterSeconds;
+    private final String dummyHash;
+
+    public ReactivePasswordHashing(PasswordEncoder passwordEncoder, int threads, int queueCapacity,
+                                   Duration retryAfter) {
+        this.passwordEncoder = passwordEncoder;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.dummyHash = passwordEncoder.encode(UUID.randomUUID().toString());
+
+        //A capacidade da fila do 'boundedElastic' é por thread, então dividimos a fila total entre as threads
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.scheduler = Schedulers.newBoundedElastic(poolSize, Math.max(1, queueCapacity / poolSize),
+                "password-hashing");
+    }
+
+    public Mono<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return this.execute(Mono.fromCallable(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    //Mesmo BCrypt fictício do 'PasswordHashingService' para os emails que não existem
+    public Mono<Boolean> simulateMatch(CharSequence rawPassword) {
+        return this.matches(rawPassword, dummyHash);
+    }
+
+    public Mono<String> encode(CharSequence rawPassword) {
+        return this.execute(Mono.fromCallable(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public boolean upgradeEncoding(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    public void dispose() {
+        scheduler.dispose();
+    }
+
+    private <T> Mono<T> execute(Mono<T> task) {
+        return task.subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class,
+                        exception -> new PasswordHashingUnavailableException(retryAfterSeconds));
+    }
+}
@@ -0,0 +1,72 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Revogações na stack reativa: as mesmas consultas do 'JpaRevokedTokenStore' feitas pelo R2DBC na tabela
+//'revoked_tokens', assim um token revogado no logout da stack servlet também é recusado aqui depois da próxima
+//sincronização do 'TokenRevocationList'
+//A stack reativa não tem logout, então ela só lê: a gravação nunca é chamada e a limpeza dos expirados fica com as
+//réplicas servlet (a lista em memória daqui descarta os expirados do mesmo jeito)
+//Quem chama é a subida da aplicação e as tarefas agendadas, nenhuma delas roda no event loop, então podemos esperar a
+//consulta com o 'block' como no 'ReactiveAuthEventSink'
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+import br.com.fabiokusaba.loginauthapi.infra.security.RevokedTokenStore;
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+public class ReactiveRevokedTokenStore implements RevokedTokenStore {
+
+    private static final String SELECT_REVOKED = "select jti, expires_at, revoked_at from revoked_tokens ";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveRevokedTokenStore(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public List<RevokedToken> findActive(Instant now) {
+        return this.query(SELECT_REVOKED + "where expires_at > :instant", now);
+    }
+
+    @Override
+    public List<RevokedToken> findRevokedSince(Instant since) {
+        return this.query(SELECT_REVOKED + "where revoked_at >= :instant", since);
+    }
+
+    @Override
+    public Instant currentTime() {
+        return databaseClient.sql("select current_timestamp")
+                .map(row -> row.get(0, OffsetDateTime.class).toInstant())
+                .one()
+                .block();
+    }
+
+    @Override
+    public void save(RevokedToken token) {
+        throw new UnsupportedOperationException("Token revocation is only available on the servlet stack");
+    }
+
+    @Override
+    public void deleteExpired(Instant now) {
+    }
+
+    private List<RevokedToken> query(String sql, Instant instant) {
+        return databaseClient.sql(sql)
+                .bind("instant", instant.atOffset(ZoneOffset.UTC))
+                .map(ReactiveRevokedTokenStore::toRevokedToken)
+                .all()
+                .collectList()
+                .block();
+    }
+
+    private static RevokedToken toRevokedToken(Readable row) {
+        return new RevokedToken(row.get("jti", String.class),
+                row.get("expires_at", OffsetDateTime.class).toInstant(),
+                row.get("revoked_at", OffsetDateTime.class).toInstant());
+    }
+}
@@ -0,0 +1,74 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Chaves de assinatura na stack reativa: as mesmas operações do 'JpaSigningKeyStore' feitas pelo R2DBC na tabela
+//'signing_keys', assim as réplicas reativas e servlet assinam e verificam com as mesmas chaves
+//Diferente das revogações aqui também gravamos, uma réplica reativa pode ser a que cria a próxima chave
+//Quem chama é a subida da aplicação e a tarefa agendada do 'SigningKeyRing', nenhuma delas roda no event loop, então
+//podemos esperar a consulta com o 'block' como no 'ReactiveRevokedTokenStore'
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKeyStore;
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+
+public class ReactiveSigningKeyStore implements SigningKeyStore {
+
+    private static final String SELECT_KEYS = "select kid, algorithm, public_key, private_key, activates_at " +
+            "from signing_keys where algorithm = :algorithm order by activates_at desc";
+
+    private static final String INSERT_KEY = "insert into signing_keys " +
+            "(kid, algorithm, public_key, private_key, activates_at) " +
+            "values (:kid, :algorithm, :publicKey, :privateKey, :activatesAt)";
+
+    private static final String DELETE_KEYS = "delete from signing_keys where kid in (:kids)";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveSigningKeyStore(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public List<StoredSigningKey> findAll(String algorithm) {
+        return databaseClient.sql(SELECT_KEYS)
+                .bind("algorithm", algorithm)
+                .map(ReactiveSigningKeyStore::toStoredSigningKey)
+                .all()
+                .collectList()
+                .block();
+    }
+
+    @Override
+    public void save(StoredSigningKey key) {
+        databaseClient.sql(INSERT_KEY)
+                .bind("kid", key.getKid())
+                .bind("algorithm", key.getAlgorithm())
+                .bind("publicKey", key.getPublicKey())
+                .bind("privateKey", key.getPrivateKey())
+                .bind("activatesAt", key.getActivatesAt().atOffset(ZoneOffset.UTC))
+                .then()
+                .block();
+    }
+
+    @Override
+    public void delete(Collection<String> kids) {
+        if (kids.isEmpty()) {
+            return;
+        }
+        databaseClient.sql(DELETE_KEYS)
+                .bind("kids", List.copyOf(kids))
+                .then()
+                .block();
+    }
+
+    private static StoredSigningKey toStoredSigningKey(Readable row) {
+        return new StoredSigningKey(row.get("kid", String.class), row.get("algorithm", String.class),
+                row.get("public_key", String.class), row.get("private_key", String.class),
+                row.get("activates_at", OffsetDateTime.class).toInstant());
+    }
+}
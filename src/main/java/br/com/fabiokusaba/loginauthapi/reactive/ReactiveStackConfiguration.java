@@ -0,0 +1,173 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Stack reativa alternativa: WebFlux (Netty) no lugar do Tomcat e R2DBC no lugar do JPA, para quando a aplicação fica
+//atrás de um gateway que mantém dezenas de milhares de conexões keep-alive ociosas
+//Ela é selecionada pelo perfil 'reactive' e sobe pelo 'ReactiveLoginAuthApiApplication'
+//Só reaproveitamos da stack servlet os componentes que não bloqueiam (tokens, chaves de assinatura, lista de tokens
+//revogados, limitador de login e métricas), o resto é declarado aqui como '@Bean' em vez de '@Component' para que a varredura de componentes da stack
+//servlet não encontre essas classes
+
+import br.com.fabiokusaba.loginauthapi.controllers.JwksController;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthEventSink;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.security.BCryptStrengthCalibrator;
+import br.com.fabiokusaba.loginauthapi.infra.security.LoginThrottle;
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKeyRing;
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKeyStore;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenCache;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenPrincipal;
+import br.com.fabiokusaba.loginauthapi.infra.security.RevokedTokenStore;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenRevocationList;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsWebFilter;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@Profile("reactive")
+@EnableAutoConfiguration
+@EnableScheduling
+@EnableWebFluxSecurity
+@Import({SigningKeyRing.class, TokenCache.class, TokenService.class, TokenRevocationList.class, LoginThrottle.class,
+        AuthMetrics.class, JwksController.class, AuthAuditLog.class})
+public class ReactiveStackConfiguration {
+
+    //O 'ReactiveUserStore' só conhece a conexão R2DBC padrão, com o modo particionado ligado ele leria e gravaria os
+    //usuários de todas as partições na primeira sem erro nenhum, então recusamos subir assim
+    public ReactiveStackConfiguration(@Value("${api.user.partitions.enabled:false}") boolean partitioned) {
+        if (partitioned) {
+            throw new IllegalStateException("The reactive stack does not support partitioned users, " +
+                    "disable api.user.partitions.enabled or run the servlet stack");
+        }
+    }
+
+    //Mesma regra de custo do BCrypt do 'SecurityConfig'
+    @Bean
+    public PasswordEncoder passwordEncoder(@Value("${api.security.password.bcrypt.strength:-1}") int strength,
+                                           @Value("${api.security.password.bcrypt.target-latency:100ms}") Duration targetLatency,
+                                           @Value("${api.security.password.bcrypt.min-strength:10}") int minStrength,
+                                           @Value("${api.security.password.bcrypt.max-strength:16}") int maxStrength) {
+        if (strength < 0) {
+            strength = BCryptStrengthCalibrator.calibrate(targetLatency, minStrength, maxStrength);
+        }
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ReactivePasswordHashing reactivePasswordHashing(PasswordEncoder passwordEncoder,
+                                                           @Value("${api.security.password.hashing.threads:0}") int threads,
+                                                           @Value("${api.security.password.hashing.queue-capacity:64}") int queueCapacity,
+                                                           @Value("${api.security.password.hashing.retry-after:1s}") Duration retryAfter) {
+        return new ReactivePasswordHashing(passwordEncoder, threads, queueCapacity, retryAfter);
+    }
+
+    @Bean
+    public ReactiveUserStore reactiveUserStore(DatabaseClient databaseClient,
+                                               ReactiveTransactionManager transactionManager) {
+        return new ReactiveUserStore(databaseClient, TransactionalOperator.create(transactionManager));
+    }
+
+    //Revogações lidas da mesma tabela 'revoked_tokens' das réplicas servlet, o 'TokenRevocationList' carrega elas na
+    //subida, então a tabela precisa ter sido criada pelo script antes
+    @Bean
+    @DependsOnDatabaseInitialization
+    public RevokedTokenStore reactiveRevokedTokenStore(DatabaseClient databaseClient) {
+        return new ReactiveRevokedTokenStore(databaseClient);
+    }
+
+    //Chaves de assinatura da mesma tabela 'signing_keys' das réplicas servlet, o 'SigningKeyRing' carrega elas na
+    //subida, então a tabela também precisa ter sido criada pelo script antes
+    @Bean
+    @DependsOnDatabaseInitialization
+    public SigningKeyStore reactiveSigningKeyStore(DatabaseClient databaseClient) {
+        return new ReactiveSigningKeyStore(databaseClient);
+    }
+
+    //Destino da trilha de auditoria, o 'AuthAuditLog' é o mesmo da stack servlet
+    @Bean
+    public AuthEventSink reactiveAuthEventSink(DatabaseClient databaseClient) {
+        return new ReactiveAuthEventSink(databaseClient);
+    }
+
+    @Bean
+    public ReactiveAuthHandler reactiveAuthHandler(ReactiveUserStore userStore, ReactivePasswordHashing passwordHashing,
+                                                   TokenService tokenService, LoginThrottle loginThrottle,
+                                                   AuthMetrics authMetrics, AuthAuditLog authAuditLog) {
+        return new ReactiveAuthHandler(userStore, passwordHashing, tokenService, loginThrottle, authMetrics,
+                authAuditLog);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> authRoutes(ReactiveAuthHandler handler) {
+        return RouterFunctions.route()
+                .POST("/auth/login", handler::login)
+                .POST("/auth/register", handler::register)
+                .GET("/user", handler::user)
+                .build();
+    }
+
+    //Mesmas regras de acesso do 'SecurityConfig': login, cadastro, JWKS e health abertos, o resto do actuator só para
+    //administradores e o resto autenticado
+    //Sem sessão e respondendo 403 para quem não está autenticado, como na stack servlet
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, TokenService tokenService,
+                                                         ReactiveUserStore userStore, AuthMetrics authMetrics,
+                                                         AuthAuditLog authAuditLog) {
+        return http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN)))
+                .authorizeExchange(authorize -> authorize
+                        .pathMatchers(HttpMethod.POST, "/auth/login", "/auth/register").permitAll()
+                        .pathMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
+                        .pathMatchers(HttpMethod.GET, "/actuator/health/**").permitAll()
+                        .pathMatchers("/actuator/**").hasRole(TokenPrincipal.ADMIN)
+                        .anyExchange().authenticated())
+                .addFilterAt(new TokenAuthenticationWebFilter(tokenService, userStore, authMetrics, authAuditLog),
+                        SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    //Mesma configuração do 'CorsConfig'
+    @Bean
+    public CorsWebFilter corsWebFilter() {
+        CorsConfiguration configuration = new CorsConfiguration();
+        configuration.setAllowedOrigins(List.of("http://localhost:4200"));
+        configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE"));
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", configuration);
+        return new CorsWebFilter(source);
+    }
+}
@@ -0,0 +1,93 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Acesso à tabela 'users' pela stack reativa, via R2DBC
+//É a mesma tabela que o 'UserRepository' usa na stack servlet, só que sem o JPA: as consultas devolvem a projeção
+//'UserCredentials' direto das colunas e nenhuma thread fica parada esperando o banco de dados
+//Os inserts seguem as mesmas regras da entidade 'User' (UUID gerado aqui e email normalizado), quem garante que o email
+//é único continua sendo o índice único da coluna de email normalizado
+//As escritas também entram na tabela 'user_changes' para que os caches das réplicas servlet fiquem sabendo delas, na
+//mesma transação R2DBC da escrita ('TransactionalOperator'), como o 'TransactionTemplate' da stack servlet: se o
+//registro da mudança falhar a escrita também volta atrás
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import io.r2dbc.spi.Readable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+public class ReactiveUserStore {
+
+    private static final String SELECT_CREDENTIALS = "select id, name, email, password, token_version, " +
+            "credential_cache_disabled, admin from users ";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveUserStore(DatabaseClient databaseClient, TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    //Mesma busca do 'UserRepository.findCredentialsByEmail', sempre pela coluna normalizada
+    public Mono<UserCredentials> findCredentialsByEmail(String email) {
+        return databaseClient.sql(SELECT_CREDENTIALS + "where email_normalized = :email")
+                .bind("email", User.normalizeEmail(email))
+                .map(ReactiveUserStore::toCredentials)
+                .one();
+    }
+
+    //Cadastra o usuário, um email já cadastrado chega como 'DataIntegrityViolationException' assim como no JPA
+    public Mono<UserCredentials> insert(String name, String email, String encodedPassword) {
+        String id = UUID.randomUUID().toString();
+        return databaseClient.sql("insert into users (id, name, name_normalized, email, email_normalized, password, " +
+                        "token_version, credential_cache_disabled, admin) " +
+                        "values (:id, :name, :nameNormalized, :email, :emailNormalized, :password, 0, false, false)")
+                .bind("id", id)
+                .bind("name", name)
+                .bind("nameNormalized", User.normalizeName(name))
+                .bind("email", email)
+                .bind("emailNormalized", User.normalizeEmail(email))
+                .bind("password", encodedPassword)
+                .then()
+                .then(this.appendChange(UserChange.Type.CREATED, email))
+                .thenReturn(new UserCredentials(id, name, email, encodedPassword, 0, false, false))
+                .as(transactionalOperator::transactional);
+    }
+
+    //Mesmo compare-and-set do 'UserRepository.updatePassword'
+    public Mono<Long> updatePassword(String id, String email, String previousPassword, String password) {
+        return databaseClient.sql("update users set password = :password where id = :id and password = :previous")
+                .bind("password", password)
+                .bind("id", id)
+                .bind("previous", previousPassword)
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 1
+                        ? this.appendChange(UserChange.Type.PASSWORD_CHANGED, email).thenReturn(updated)
+                        : Mono.just(updated))
+                .as(transactionalOperator::transactional);
+    }
+
+    //Mesmo registro do 'UserChangeLog.append', a stack reativa só escreve no log (ela não tem cache de usuários)
+    private Mono<Void> appendChange(UserChange.Type type, String email) {
+        return databaseClient.sql("insert into user_changes (email_normalized, type, changed_at) " +
+                        "values (:email, :type, :changedAt)")
+                .bind("email", User.normalizeEmail(email))
+                .bind("type", type.name())
+                .bind("changedAt", OffsetDateTime.now(ZoneOffset.UTC))
+                .then();
+    }
+
+    private static UserCredentials toCredentials(Readable row) {
+        return new UserCredentials(row.get("id", String.class), row.get("name", String.class),
+                row.get("email", String.class), row.get("password", String.class),
+                row.get("token_version", Integer.class), row.get("credential_cache_disabled", Boolean.class),
+                row.get("admin", Boolean.class));
+    }
+}
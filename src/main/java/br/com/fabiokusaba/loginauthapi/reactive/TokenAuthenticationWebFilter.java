@@ -0,0 +1,91 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+//Equivalente reativo do 'SecurityFilter': verifica o token do header "Authorization" e coloca o usuário no contexto
+//reativo do Spring Security
+//A verificação do token usa o mesmo 'TokenService' (com o cache de tokens já verificados), e quando o token não é
+//autossuficiente o usuário é buscado pelo R2DBC, então o filtro nunca bloqueia a thread do event loop
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import br.com.fabiokusaba.loginauthapi.infra.metrics.AuthMetrics;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenCheck;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenPrincipal;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenSyntax;
+import br.com.fabiokusaba.loginauthapi.infra.security.VerifiedToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Optional;
+
+public class TokenAuthenticationWebFilter implements WebFilter {
+
+    private final TokenService tokenService;
+    private final ReactiveUserStore userStore;
+    private final AuthMetrics authMetrics;
+    private final AuthAuditLog authAuditLog;
+
+    public TokenAuthenticationWebFilter(TokenService tokenService, ReactiveUserStore userStore,
+                                        AuthMetrics authMetrics, AuthAuditLog authAuditLog) {
+        this.tokenService = tokenService;
+        this.userStore = userStore;
+        this.authMetrics = authMetrics;
+        this.authAuditLog = authAuditLog;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        TokenCheck check = tokenService.check(recoverToken(exchange.getRequest()));
+        VerifiedToken verified = check.token();
+        if (verified == null) {
+            //Mesma trilha de auditoria do 'SecurityFilter' para os tokens recusados
+            if (check.outcome() != AuthMetrics.TokenOutcome.MISSING) {
+                authAuditLog.record(AuthEvent.Type.TOKEN_REJECTED, null, clientIp(exchange.getRequest()),
+                        check.outcome().name().toLowerCase(Locale.ROOT));
+            }
+            return chain.filter(exchange);
+        }
+
+        if (tokenService.isSelfContained(verified)) {
+            return this.authenticated(exchange, chain, verified, verified.principal());
+        }
+
+        long start = System.nanoTime();
+        return userStore.findCredentialsByEmail(verified.subject())
+                .doFinally(signal -> authMetrics.record(AuthMetrics.Phase.PRINCIPAL_LOAD, start))
+                //Token de uma versão antiga do usuário não autentica, igual ao 'SecurityFilter'
+                .filter(user -> verified.tokenVersion() == null || verified.tokenVersion() == user.tokenVersion())
+                .map(user -> TokenPrincipal.of(user.id(), user.email(), user.name(), TokenPrincipal.rolesOf(user)))
+                //O 'chain.filter' completa vazio, então não dá para usar 'switchIfEmpty' depois dele sem rodar a cadeia
+                //duas vezes, por isso decidimos o caminho com um 'Optional'
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(principal -> principal.isPresent()
+                        ? this.authenticated(exchange, chain, verified, principal.get())
+                        : chain.filter(exchange));
+    }
+
+    private Mono<Void> authenticated(ServerWebExchange exchange, WebFilterChain chain, VerifiedToken verified,
+                                     TokenPrincipal principal) {
+        var authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.authorities());
+        authentication.setDetails(verified);
+        return chain.filter(exchange)
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication));
+    }
+
+    private static String clientIp(ServerHttpRequest request) {
+        return request.getRemoteAddress() == null || request.getRemoteAddress().getAddress() == null
+                ? null : request.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private static String recoverToken(ServerHttpRequest request) {
+        return TokenSyntax.fromAuthorizationHeader(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    }
+}
@@ -0,0 +1,38 @@
+package br.com.fabiokusaba.loginauthapi.repositories;
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    //Busca pelo hash do token, que tem índice único
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    //Diz se algum token da família já foi revogado, usado para rejeitar tokens emitidos por uma troca que correu em
+    //paralelo com a detecção de reutilização
+    boolean existsByFamilyIdAndRevokedTrue(String familyId);
+
+    //Marca o token como usado apenas se ele ainda não tiver sido usado, como é um único update condicional só uma
+    //entre várias trocas simultâneas do mesmo token consegue o retorno 1
+    @Modifying
+    @Transactional
+    @Query("update RefreshToken t set t.used = true where t.id = :id and t.used = false and t.revoked = false")
+    int markUsed(@Param("id") String id);
+
+    @Modifying
+    @Transactional
+    @Query("update RefreshToken t set t.revoked = true where t.familyId = :familyId")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Transactional
+    @Query("delete from RefreshToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
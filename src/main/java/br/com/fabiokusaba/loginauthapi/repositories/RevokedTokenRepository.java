@@ -0,0 +1,25 @@
+package br.com.fabiokusaba.loginauthapi.repositories;
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    //Revogações que ainda não expiraram, carregadas na subida da aplicação
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    //Revogações feitas a partir de um instante, usado para sincronizar as revogações feitas em outras réplicas
+    List<RevokedToken> findByRevokedAtGreaterThanEqual(Instant since);
+
+    @Modifying
+    @Transactional
+    @Query("delete from RevokedToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
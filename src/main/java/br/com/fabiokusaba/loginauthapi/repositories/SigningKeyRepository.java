@@ -0,0 +1,23 @@
+package br.com.fabiokusaba.loginauthapi.repositories;
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface SigningKeyRepository extends JpaRepository<StoredSigningKey, String> {
+
+    //Chaves do algoritmo configurado, a que ativa por último primeiro
+    List<StoredSigningKey> findByAlgorithmOrderByActivatesAtDesc(String algorithm);
+
+    //Várias réplicas podem apagar as mesmas chaves ao mesmo tempo, então a remoção não pode falhar se a chave já saiu
+    @Modifying
+    @Transactional
+    @Query("delete from StoredSigningKey k where k.kid in :kids")
+    int deleteByKids(@Param("kids") Collection<String> kids);
+}
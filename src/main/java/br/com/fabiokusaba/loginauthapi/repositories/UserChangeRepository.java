@@ -0,0 +1,31 @@
+package br.com.fabiokusaba.loginauthapi.repositories;
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface UserChangeRepository extends JpaRepository<UserChange, Long> {
+
+    //Leitura incremental pela chave primária, cada réplica pede só o que veio depois da última sequência que ela leu
+    List<UserChange> findBySeqGreaterThanOrderBySeqAsc(long seq, Limit limit);
+
+    //Releitura das sequências que ficaram para trás (transações que ainda não tinham feito commit)
+    List<UserChange> findBySeqIn(Collection<Long> seqs);
+
+    //Última sequência gravada, de onde uma réplica que acabou de subir começa a ler
+    @Query("select coalesce(max(c.seq), 0) from UserChange c")
+    long findMaxSeq();
+
+    @Modifying
+    @Transactional
+    @Query("delete from UserChange c where c.changedAt < :before")
+    int deleteOlderThan(@Param("before") Instant before);
+}
@@ -1,12 +1,60 @@
 package br.com.fabiokusaba.loginauthapi.repositories;
 
 import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, String> {
 
-    //Declarando o método 'findByEmail' para que o Spring possa fazer a geração automática filtrando pela coluna email
-    Optional<User> findByEmail(String email);
+    //Declarando o método 'findByEmailNormalized' para que o Spring possa fazer a geração automática filtrando pela
+    //coluna email_normalized que tem índice único
+    Optional<User> findByEmailNormalized(String emailNormalized);
+
+    //Busca apenas os campos que a autenticação precisa, sem carregar a entidade inteira
+    @Query("select new br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials(u.id, u.name, u.email, u.password, u.tokenVersion, " +
+            "u.credentialCacheDisabled, u.admin) " +
+            "from User u where u.emailNormalized = :email")
+    Optional<UserCredentials> findCredentialsByEmailNormalized(@Param("email") String emailNormalized);
+
+    //Mesma projeção buscando pelo id, usada na renovação do token onde só conhecemos o dono do refresh token
+    @Query("select new br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials(u.id, u.name, u.email, u.password, u.tokenVersion, " +
+            "u.credentialCacheDisabled, u.admin) " +
+            "from User u where u.id = :id")
+    Optional<UserCredentials> findCredentialsById(@Param("id") String id);
+
+    //Mesma projeção para vários emails normalizados de uma vez, usada na introspecção de tokens em lote
+    @Query("select new br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials(u.id, u.name, u.email, u.password, u.tokenVersion, " +
+            "u.credentialCacheDisabled, u.admin) " +
+            "from User u where u.emailNormalized in :emails")
+    List<UserCredentials> findCredentialsByEmailNormalizedIn(@Param("emails") Collection<String> emailsNormalized);
+
+    //Quais desses emails normalizados já estão cadastrados, usado pelo import em lote para descartar duplicados com
+    //uma única consulta por lote
+    @Query("select u.emailNormalized from User u where u.emailNormalized in :emails")
+    List<String> findExistingEmailsNormalized(@Param("emails") Collection<String> emailsNormalized);
+
+    //Troca o hash da senha apenas se ele ainda for o hash que lemos, dessa forma um rehash atrasado não sobrescreve
+    //uma troca de senha que aconteceu nesse meio tempo
+    @Modifying
+    @Transactional
+    @Query("update User u set u.password = :password where u.id = :id and u.password = :previousPassword")
+    int updatePassword(@Param("id") String id, @Param("previousPassword") String previousPassword,
+                       @Param("password") String password);
+
+    //As buscas por email sempre normalizam o valor recebido antes de consultar o banco de dados
+    default Optional<User> findByEmail(String email) {
+        return findByEmailNormalized(User.normalizeEmail(email));
+    }
+
+    default Optional<UserCredentials> findCredentialsByEmail(String email) {
+        return findCredentialsByEmailNormalized(User.normalizeEmail(email));
+    }
 }
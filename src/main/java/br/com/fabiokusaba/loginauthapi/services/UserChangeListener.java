@@ -0,0 +1,25 @@
+package br.com.fabiokusaba.loginauthapi.services;
+
+//Cache local que precisa saber das escritas feitas em usuários, inclusive nas outras réplicas
+//Os beans que implementam essa interface são chamados pelo 'UserChangeLog' a cada leitura da tabela 'user_changes'
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+
+import java.util.List;
+
+public interface UserChangeListener {
+
+    //Mudanças lidas em um ciclo, em ordem de sequência (uma mesma mudança pode chegar mais de uma vez)
+    void onUserChanges(List<UserChange> changes);
+
+    //Não conseguimos ler a tabela dentro do limite de desatualização configurado, então o cache não sabe mais o que
+    //está desatualizado e deve descartar tudo
+    void onResync();
+
+    //Chamado uma vez na subida pelo 'UserChangeLog', o cache guarda ele para conferir na leitura se o log foi lido
+    //dentro do limite de desatualização ('isOverStalenessLimit'), o 'onResync' só acontece quando a leitura roda e
+    //falha, se ela nem rodar (tarefa agendada travada) é essa conferência que impede o cache de servir dados velhos
+    //Sem 'UserChangeLog' (stack reativa) ninguém chama esse método e o cache não tem limite
+    default void attach(UserChangeLog changeLog) {
+    }
+}
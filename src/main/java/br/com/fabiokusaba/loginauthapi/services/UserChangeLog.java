@@ -0,0 +1,289 @@
+package br.com.fabiokusaba.loginauthapi.services;
+
+//Log de mudanças de usuários no estilo outbox, é assim que os caches das várias réplicas ficam sabendo das escritas
+//feitas nas outras sem um broker de mensagens
+//Toda escrita em usuário (cadastro, import, troca do hash da senha) grava uma linha em 'user_changes' na mesma
+//transação da escrita, e cada réplica lê a tabela a cada 'poll-interval' pela sequência (chave primária), pedindo só o
+//que veio depois da última sequência lida, o que é uma busca barata no índice
+//As sequências são geradas antes do commit, então uma transação mais lenta pode aparecer com uma sequência menor do
+//que uma que já lemos: quando a leitura pula uma sequência guardamos o buraco e perguntamos por ele de novo nas
+//leituras seguintes, até ele aparecer ou passar o 'gap-timeout' (transação que voltou atrás)
+//Se a tabela não puder ser lida por mais do que 'max-staleness' os caches são avisados para descartar tudo, e se a
+//leitura nem chegar a rodar nesse tempo os próprios caches percebem na leitura ('isOverStalenessLimit') e deixam de
+//responder até ela voltar, assim nenhuma réplica fica servindo dados mais velhos do que esse limite
+//O atraso entre a escrita e a leitura em cada réplica fica exposto como métrica ('user.changes.*')
+//No modo particionado cada partição tem a sua tabela 'user_changes' (a mudança é gravada na transação da escrita, que
+//roda na partição do usuário), então guardamos uma sequência e os buracos de cada partição e lemos uma de cada vez
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.repositories.UserChangeRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class UserChangeLog implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(UserChangeLog.class);
+
+    private static final String INSERT_CHANGE = "insert into user_changes (email_normalized, type, changed_at) " +
+            "values (?, ?, ?)";
+
+    //Um salto maior do que isso na sequência não é uma transação atrasada (por exemplo o cache de sequências do banco
+    //depois de um restart), então não guardamos os buracos dele
+    private static final int MAX_GAP = 1000;
+
+    private final UserChangeRepository userChangeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final UserPartitioning userPartitioning;
+    private final List<UserChangeListener> listeners;
+    private final int batchSize;
+    private final long maxStalenessNanos;
+    private final long gapTimeoutNanos;
+    private final Duration retention;
+
+    //Última sequência lida e as sequências que ficaram para trás, com o instante em que percebemos o buraco, uma por
+    //partição
+    private final Cursor[] cursors;
+
+    //Instante da última leitura bem sucedida e se os caches já foram avisados para descartar tudo
+    private volatile long lastPollNanos = System.nanoTime();
+    private volatile boolean stale;
+
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    //Timer do atraso entre a escrita e a leitura, ele só existe depois que o Micrometer chama o 'bindTo'
+    private volatile Timer lag;
+
+    public UserChangeLog(UserChangeRepository userChangeRepository, JdbcTemplate jdbcTemplate,
+                         UserPartitioning userPartitioning, List<UserChangeListener> listeners,
+                         @Value("${api.user.changes.batch-size:500}") int batchSize,
+                         @Value("${api.user.changes.max-staleness:PT10S}") Duration maxStaleness,
+                         @Value("${api.user.changes.gap-timeout:PT1M}") Duration gapTimeout,
+                         @Value("${api.user.changes.retention:PT1H}") Duration retention) {
+        this.userChangeRepository = userChangeRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.userPartitioning = userPartitioning;
+        this.listeners = listeners;
+        this.batchSize = batchSize;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.gapTimeoutNanos = gapTimeout.toNanos();
+        this.retention = retention;
+        this.cursors = new Cursor[userPartitioning.count()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = new Cursor();
+        }
+    }
+
+    //Uma réplica que acabou de subir está com os caches vazios, então ela começa a ler a partir da última mudança
+    @PostConstruct
+    void start() {
+        userPartitioning.forEachPartition(partition -> cursors[partition].seq = userChangeRepository.findMaxSeq());
+        listeners.forEach(listener -> listener.attach(this));
+    }
+
+    //Registra uma mudança, participando da transação da escrita quando existe uma
+    //Os caches desta réplica são avisados logo depois do commit, sem esperar a próxima leitura da tabela
+    public void append(UserChange.Type type, String email) {
+        UserChange change = userChangeRepository.save(
+                new UserChange(null, User.normalizeEmail(email), type, Instant.now()));
+        this.afterCommit(List.of(change));
+    }
+
+    //Mesmo registro para várias mudanças de uma vez com um batch insert, usado pelo import em lote
+    public void appendAll(UserChange.Type type, Collection<String> emailsNormalized) {
+        Instant now = Instant.now();
+        List<Object[]> batch = new ArrayList<>(emailsNormalized.size());
+        List<UserChange> changes = new ArrayList<>(emailsNormalized.size());
+        for (String email : emailsNormalized) {
+            batch.add(new Object[]{email, type.name(), Timestamp.from(now)});
+            changes.add(new UserChange(null, email, type, now));
+        }
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, batch);
+        this.afterCommit(changes);
+    }
+
+    //Lê as mudanças novas (e os buracos pendentes) e repassa para os caches
+    //Uma partição que falha não impede as outras de serem lidas, e o que já foi lido é repassado mesmo assim porque a
+    //sequência daquelas partições já avançou
+    @Scheduled(fixedDelayString = "${api.user.changes.poll-interval:PT1S}")
+    public void poll() {
+        long now = System.nanoTime();
+        List<UserChange> changes = new ArrayList<>();
+        List<DataAccessException> failures = new ArrayList<>();
+        userPartitioning.forEachPartition(partition -> {
+            try {
+                changes.addAll(this.read(cursors[partition], now));
+            } catch (DataAccessException exception) {
+                failures.add(exception);
+            }
+        });
+
+        if (!changes.isEmpty()) {
+            this.dispatch(changes);
+            Timer timer = lag;
+            if (timer != null) {
+                Instant readAt = Instant.now();
+                for (UserChange change : changes) {
+                    timer.record(Duration.between(change.getChangedAt(), readAt));
+                }
+            }
+            applied.add(changes.size());
+        }
+
+        if (!failures.isEmpty()) {
+            log.warn("Could not read user changes: {}", failures.get(0).getMessage());
+
+            //Enquanto a tabela não puder ser lida os caches são esvaziados a cada tentativa, dessa forma o que eles
+            //guardarem nunca fica mais velho do que o limite
+            if (now - lastPollNanos > maxStalenessNanos) {
+                stale = true;
+                resyncs.increment();
+                listeners.forEach(UserChangeListener::onResync);
+            }
+            return;
+        }
+
+        lastPollNanos = now;
+        stale = false;
+    }
+
+    //Remove as mudanças que todas as réplicas já tiveram tempo de ler
+    @Scheduled(fixedDelayString = "${api.user.changes.purge-interval:PT10M}")
+    public void purge() {
+        Instant limit = Instant.now().minus(retention);
+        userPartitioning.forEachPartition(partition -> userChangeRepository.deleteOlderThan(limit));
+    }
+
+    //Última sequência lida da partição principal (a única fora do modo particionado)
+    public long getCursor() {
+        return cursors[0].seq;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    //Tempo desde a última leitura bem sucedida, é o quanto os caches podem estar desatualizados nesse momento
+    public double getStalenessSeconds() {
+        return (System.nanoTime() - lastPollNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    //Conferido pelos caches a cada leitura: passou do 'max-staleness' sem uma leitura bem sucedida, seja porque ela
+    //falhou ou porque ela não rodou, e o cache não pode responder
+    public boolean isOverStalenessLimit() {
+        return System.nanoTime() - lastPollNanos > maxStalenessNanos;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        lag = Timer.builder("user.changes.lag")
+                .description("Time between a user change being written and this replica reading it")
+                .register(registry);
+        Gauge.builder("user.changes.staleness", this, UserChangeLog::getStalenessSeconds)
+                .description("Seconds since the user change log was last read successfully")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("user.changes.gaps", this, UserChangeLog::getGaps)
+                .description("Sequences skipped by the reader that are still expected to show up")
+                .register(registry);
+        FunctionCounter.builder("user.changes.applied", applied, LongAdder::sum)
+                .description("User changes read and passed to the local caches")
+                .register(registry);
+        FunctionCounter.builder("user.changes.resyncs", resyncs, LongAdder::sum)
+                .description("Times the local caches were flushed because the change log was unreadable")
+                .register(registry);
+    }
+
+    public int getGaps() {
+        int gaps = 0;
+        for (Cursor cursor : cursors) {
+            gaps += cursor.gaps.size();
+        }
+        return gaps;
+    }
+
+    private List<UserChange> read(Cursor cursor, long now) {
+        Map<Long, Long> gaps = cursor.gaps;
+        List<UserChange> changes = new ArrayList<>();
+        if (!gaps.isEmpty()) {
+            for (UserChange change : userChangeRepository.findBySeqIn(List.copyOf(gaps.keySet()))) {
+                gaps.remove(change.getSeq());
+                changes.add(change);
+            }
+            gaps.values().removeIf(since -> now - since > gapTimeoutNanos);
+        }
+
+        List<UserChange> page;
+        do {
+            page = userChangeRepository.findBySeqGreaterThanOrderBySeqAsc(cursor.seq, Limit.of(batchSize));
+            for (UserChange change : page) {
+                long seq = change.getSeq();
+                if (seq - cursor.seq - 1 <= MAX_GAP) {
+                    for (long missing = cursor.seq + 1; missing < seq; missing++) {
+                        gaps.put(missing, now);
+                    }
+                }
+                cursor.seq = seq;
+                changes.add(change);
+            }
+        } while (page.size() == batchSize);
+        return changes;
+    }
+
+    private void afterCommit(List<UserChange> changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.dispatch(changes);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                UserChangeLog.this.dispatch(changes);
+            }
+        });
+    }
+
+    //Um cache com problema não pode impedir os outros de receberem as mudanças
+    private void dispatch(List<UserChange> changes) {
+        for (UserChangeListener listener : listeners) {
+            try {
+                listener.onUserChanges(changes);
+            } catch (RuntimeException exception) {
+                log.warn("User change listener {} failed", listener.getClass().getSimpleName(), exception);
+            }
+        }
+    }
+
+    private static final class Cursor {
+        private volatile long seq;
+        private final Map<Long, Long> gaps = new ConcurrentHashMap<>();
+    }
+}
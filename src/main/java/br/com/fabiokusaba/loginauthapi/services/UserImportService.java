@@ -0,0 +1,363 @@
+package br.com.fabiokusaba.loginauthapi.services;
+
+//Import de usuários em lote, usado no onboarding de um tenant novo no lugar de chamar o "/auth/register" uma vez por
+//usuário (o que faz uma busca, um hash, um insert e assina um token que ninguém usa para cada usuário)
+//O corpo da requisição (NDJSON ou CSV) é lido linha a linha direto do stream, sem carregar o arquivo inteiro, e os
+//registros são processados em lotes de 'chunk-size':
+// - emails repetidos dentro do lote e emails já cadastrados (uma única consulta 'in' por lote) são descartados
+// - as senhas do lote são hasheadas em paralelo em um executor próprio, separado do bulkhead do login para que um
+//   import não tire a vez dos logins na fila do 'PasswordHashingService', e com no máximo um core a menos do que a
+//   máquina tem (metade dos cores por padrão), assim um import grande nunca ocupa todos os cores e sempre sobra CPU
+//   para o BCrypt dos logins
+// - os usuários são gravados com um batch insert via JDBC, com os UUIDs gerados aqui mesmo, porque o Hibernate com
+//   '@GeneratedValue' gravaria linha por linha
+// - cada usuário gravado também entra no 'UserChangeLog', na mesma transação do lote
+// - no modo particionado o lote é dividido pelas partições dos emails, com uma consulta e um insert por partição
+//Assim a memória usada depende só do tamanho do lote e do limite de erros listados, não do tamanho do arquivo
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.dto.ImportErrorDTO;
+import br.com.fabiokusaba.loginauthapi.dto.ImportReportDTO;
+import br.com.fabiokusaba.loginauthapi.dto.RegisterRequestDTO;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final String INSERT_USER = "insert into users (id, name, name_normalized, email, " +
+            "email_normalized, password, token_version, credential_cache_disabled, admin) " +
+            "values (?, ?, ?, ?, ?, ?, 0, false, false)";
+
+    //Formatos aceitos, no CSV as colunas são 'name,email,password' e a linha de cabeçalho é opcional
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    private final UserRepository userRepository;
+    private final UserChangeLog userChangeLog;
+    private final UserPartitioning userPartitioning;
+    private final PasswordEncoder passwordEncoder;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService hashingExecutor;
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public UserImportService(UserRepository userRepository, UserChangeLog userChangeLog,
+                             UserPartitioning userPartitioning,
+                             PasswordEncoder passwordEncoder, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                             @Value("${api.user.import.hashing-threads:0}") int threads,
+                             @Value("${api.user.import.chunk-size:1000}") int chunkSize,
+                             @Value("${api.user.import.max-errors:1000}") int maxErrors) {
+        this.userRepository = userRepository;
+        this.userChangeLog = userChangeLog;
+        this.userPartitioning = userPartitioning;
+        this.passwordEncoder = passwordEncoder;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+
+        int poolSize = importHashingThreads(threads, Runtime.getRuntime().availableProcessors());
+        AtomicInteger counter = new AtomicInteger();
+        this.hashingExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "user-import-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ImportReportDTO importUsers(InputStream input, Format format) throws IOException {
+        Report report = new Report(maxErrors);
+        List<Row> chunk = new ArrayList<>(chunkSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && isCsvHeader(line))) {
+                continue;
+            }
+
+            report.received++;
+            Row row = this.parse(line, lineNumber, format, report);
+            if (row != null) {
+                chunk.add(row);
+                if (chunk.size() >= chunkSize) {
+                    this.flush(chunk, report);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            this.flush(chunk, report);
+        }
+
+        log.info("User import finished: {} received, {} imported, {} duplicates, {} invalid",
+                report.received, report.imported, report.duplicates, report.invalid);
+        return report.toDTO();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+
+    private Row parse(String line, long lineNumber, Format format, Report report) {
+        RegisterRequestDTO record;
+        if (format == Format.NDJSON) {
+            try {
+                record = objectMapper.readValue(line, RegisterRequestDTO.class);
+            } catch (JsonProcessingException exception) {
+                report.invalid(lineNumber, null, "Malformed JSON");
+                return null;
+            }
+        } else {
+            List<String> fields = parseCsv(line);
+            if (fields == null || fields.size() != 3) {
+                report.invalid(lineNumber, null, "Expected 3 CSV columns: name,email,password");
+                return null;
+            }
+            record = new RegisterRequestDTO(fields.get(0), fields.get(1), fields.get(2));
+        }
+
+        if (record.name() == null || record.name().isBlank()) {
+            report.invalid(lineNumber, record.email(), "Missing name");
+            return null;
+        }
+        if (record.email() == null || record.email().indexOf('@') < 1) {
+            report.invalid(lineNumber, record.email(), "Invalid email");
+            return null;
+        }
+        if (record.password() == null || record.password().isEmpty()) {
+            report.invalid(lineNumber, record.email(), "Missing password");
+            return null;
+        }
+        return new Row(lineNumber, record.name(), record.email(), User.normalizeEmail(record.email()),
+                record.password());
+    }
+
+    //Processa um lote: descarta os duplicados, gera os hashes em paralelo e grava tudo com um batch insert
+    private void flush(List<Row> chunk, Report report) {
+        List<Row> rows = new ArrayList<>(chunk.size());
+        Set<String> emails = new HashSet<>();
+        for (Row row : chunk) {
+            if (emails.add(row.emailNormalized())) {
+                rows.add(row);
+            } else {
+                report.duplicate(row, "Email repeated in the import");
+            }
+        }
+
+        //Os duplicados de cada partição são descartados com uma consulta na própria partição e as senhas do lote todo
+        //são hasheadas de uma vez, na ordem das partições, para o paralelismo do hash não depender da divisão
+        Map<Integer, List<Row>> partitions = userPartitioning.group(rows, Row::emailNormalized);
+        List<Row> fresh = new ArrayList<>(rows.size());
+        partitions.forEach((partition, group) -> {
+            List<String> groupEmails = group.stream().map(Row::emailNormalized).toList();
+            Set<String> existing = new HashSet<>(userPartitioning.onPartition(partition,
+                    () -> userRepository.findExistingEmailsNormalized(groupEmails)));
+            if (!existing.isEmpty()) {
+                group.removeIf(row -> {
+                    if (existing.contains(row.emailNormalized())) {
+                        report.duplicate(row, "Email already registered");
+                        return true;
+                    }
+                    return false;
+                });
+            }
+            fresh.addAll(group);
+        });
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batch = this.hash(fresh);
+        int offset = 0;
+        for (Map.Entry<Integer, List<Row>> partition : partitions.entrySet()) {
+            List<Row> group = partition.getValue();
+            List<Object[]> users = batch.subList(offset, offset + group.size());
+            offset += group.size();
+            if (!group.isEmpty()) {
+                userPartitioning.onPartition(partition.getKey(), () -> {
+                    this.insert(group, users, report);
+                    return null;
+                });
+            }
+        }
+    }
+
+    //Grava os usuários de uma partição com um batch insert em uma única transação
+    private void insert(List<Row> rows, List<Object[]> batch, Report report) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_USER, batch);
+                userChangeLog.appendAll(UserChange.Type.CREATED, rows.stream().map(Row::emailNormalized).toList());
+            });
+            report.imported += batch.size();
+        } catch (DataIntegrityViolationException exception) {
+
+            //Algum email foi cadastrado por outra requisição entre a consulta e o insert, o lote inteiro voltou atrás
+            //então gravamos linha por linha para saber exatamente quais registros eram duplicados
+            for (int i = 0; i < batch.size(); i++) {
+                Row row = rows.get(i);
+                Object[] user = batch.get(i);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        jdbcTemplate.update(INSERT_USER, user);
+                        userChangeLog.append(UserChange.Type.CREATED, row.emailNormalized());
+                    });
+                    report.imported++;
+                } catch (DataIntegrityViolationException duplicate) {
+                    report.duplicate(row, "Email already registered");
+                }
+            }
+        }
+    }
+
+    //Gera os hashes do lote em paralelo, cada linha do resultado já são os parâmetros do insert
+    private List<Object[]> hash(List<Row> rows) {
+        List<Callable<String>> tasks = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            tasks.add(() -> passwordEncoder.encode(row.password()));
+        }
+
+        try {
+            List<Future<String>> hashes = hashingExecutor.invokeAll(tasks);
+            List<Object[]> batch = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                batch.add(new Object[]{UUID.randomUUID().toString(), row.name(), User.normalizeName(row.name()),
+                        row.email(), row.emailNormalized(), hashes.get(i).get()});
+            }
+            return batch;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("User import interrupted", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Password hashing failed during user import", exception.getCause());
+        }
+    }
+
+    //Threads de hashing do import: metade dos cores quando não configurado e nunca todos os cores, com um core só o
+    //import fica com uma thread e divide a CPU com os logins
+    static int importHashingThreads(int configured, int cores) {
+        int max = Math.max(1, cores - 1);
+        int threads = configured > 0 ? configured : cores / 2;
+        return Math.max(1, Math.min(threads, max));
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.replace(" ", "").equalsIgnoreCase("name,email,password");
+    }
+
+    //Separa as colunas de uma linha CSV, aceitando valores entre aspas com vírgulas e aspas duplicadas dentro
+    //Devolve nulo quando uma aspa não foi fechada
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private record Row(long line, String name, String email, String emailNormalized, String password) {
+    }
+
+    //Totais do import, os erros listados param em 'maxErrors' para que um arquivo todo inválido não encha a memória
+    private static final class Report {
+
+        private final int maxErrors;
+        private final List<ImportErrorDTO> errors = new ArrayList<>();
+        private long received;
+        private long imported;
+        private long duplicates;
+        private long invalid;
+        private boolean truncated;
+
+        Report(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        void invalid(long line, String email, String reason) {
+            invalid++;
+            this.error(line, email, reason);
+        }
+
+        void duplicate(Row row, String reason) {
+            duplicates++;
+            this.error(row.line(), row.email(), reason);
+        }
+
+        private void error(long line, String email, String reason) {
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportErrorDTO(line, email, reason));
+            } else {
+                truncated = true;
+            }
+        }
+
+        ImportReportDTO toDTO() {
+            return new ImportReportDTO(received, imported, duplicates, invalid, List.copyOf(errors), truncated);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package br.com.fabiokusaba.loginauthapi.services;
+
+//Listagem, busca e export de usuários para as ferramentas de administração
+//A listagem é paginada por chave (keyset) e não por 'offset': cada página pede as linhas depois da última linha da
+//página anterior ('where email_normalized > :ultimo order by email_normalized limit n'), o que é uma busca no índice
+//com o mesmo custo na primeira página e na milionésima, enquanto o 'offset' precisa percorrer e descartar todas as
+//linhas das páginas anteriores
+//A busca é por prefixo do email normalizado (índice único) ou do nome normalizado (índice 'name_normalized, id', o id
+//desempata nomes iguais), e o cursor devolvido ao cliente é a chave da última linha codificada em Base64
+//No modo particionado cada partição devolve a sua melhor página e juntamos as páginas pela mesma ordem, por isso a
+//ordem das chaves no banco precisa ser a ordem binária das strings do Java (padrão do H2, 'COLLATE "C"' no PostgreSQL)
+//O export devolve todos os usuários da busca em NDJSON escrevendo cada linha assim que ela sai do cursor JDBC, que
+//busca 'export-fetch-size' linhas por vez, então a memória usada não depende do tamanho da tabela
+//O PostgreSQL só respeita o 'fetchSize' dentro de uma transação, por isso o export roda em uma transação só de leitura
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.dto.UserPageDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserSummaryDTO;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class UserListingService {
+
+    private static final String SELECT = "select id, name, email, email_normalized, name_normalized from users ";
+
+    //Campo da ordenação e da busca por prefixo
+    public enum Field {
+        EMAIL("email_normalized"),
+        NAME("name_normalized");
+
+        private final String column;
+
+        Field(String column) {
+            this.column = column;
+        }
+
+        public static Field parse(String value) {
+            return Field.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final UserPartitioning userPartitioning;
+    private final ObjectMapper objectMapper;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public UserListingService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              UserPartitioning userPartitioning, ObjectMapper objectMapper,
+                              @Value("${api.user.listing.default-page-size:50}") int defaultPageSize,
+                              @Value("${api.user.listing.max-page-size:500}") int maxPageSize,
+                              @Value("${api.user.listing.export-fetch-size:500}") int exportFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userPartitioning = userPartitioning;
+        this.objectMapper = objectMapper;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+
+        this.exportTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportTemplate.setFetchSize(exportFetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    //Uma página de usuários ordenada pelo campo, começando depois do cursor (ou do início sem cursor)
+    //Um cursor que não foi gerado por aqui é recusado com 'IllegalArgumentException'
+    public UserPageDTO page(Field by, String prefix, String cursor, Integer limit) {
+        int size = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        Key after = cursor == null || cursor.isBlank() ? null : Key.decode(cursor);
+        Query query = Query.of(by, prefix, after);
+
+        //Pedimos uma linha a mais para saber se existe uma próxima página sem fazer um 'count'
+        List<Row> rows = new ArrayList<>();
+        String sql = query.sql() + " limit ?";
+        Object[] args = query.args(size + 1);
+        userPartitioning.forEachPartition(partition -> rows.addAll(jdbcTemplate.query(sql, Row.mapper(by), args)));
+        rows.sort(Row.ORDER);
+
+        boolean more = rows.size() > size;
+        List<Row> page = more ? rows.subList(0, size) : rows;
+        String next = more ? page.get(page.size() - 1).key().encode() : null;
+        return new UserPageDTO(page.stream().map(Row::summary).toList(), next);
+    }
+
+    //Escreve todos os usuários da busca em NDJSON, um por linha, e devolve quantos foram escritos
+    //No modo particionado as partições são escritas uma depois da outra, cada uma na ordem do campo
+    public long export(Field by, String prefix, OutputStream output) throws IOException {
+        Query query = Query.of(by, prefix, null);
+        AtomicLong written = new AtomicLong();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            RowCallbackHandler writer = rs -> {
+                try {
+                    generator.writeObject(new UserSummaryDTO(rs.getString(1), rs.getString(2), rs.getString(3)));
+                    generator.writeRaw('\n');
+                    written.incrementAndGet();
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            };
+            userPartitioning.forEachPartition(partition -> readOnlyTransaction.executeWithoutResult(
+                    status -> exportTemplate.query(query.sql(), writer, query.args())));
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        return written.get();
+    }
+
+    //Chave de ordenação de uma linha, o id só entra na ordenação por nome porque o email já é único
+    private record Key(String value, String id) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((value + '\0' + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Key decode(String cursor) {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('\0');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid user listing cursor");
+            }
+            return new Key(decoded.substring(0, separator), decoded.substring(separator + 1));
+        }
+    }
+
+    private record Row(String id, String name, String email, Key key) {
+
+        static final Comparator<Row> ORDER = Comparator.comparing((Row row) -> row.key().value())
+                .thenComparing(row -> row.key().id());
+
+        static RowMapper<Row> mapper(Field by) {
+            int keyColumn = by == Field.EMAIL ? 4 : 5;
+            return (rs, rowNum) -> new Row(rs.getString(1), rs.getString(2), rs.getString(3),
+                    new Key(rs.getString(keyColumn), rs.getString(1)));
+        }
+
+        UserSummaryDTO summary() {
+            return new UserSummaryDTO(id, name, email);
+        }
+    }
+
+    //Monta o 'where' da busca: o prefixo vira um 'like' que o banco resolve como um intervalo do índice e o cursor
+    //vira a comparação com a chave da última linha
+    private record Query(String sql, List<Object> params) {
+
+        static Query of(Field by, String prefix, Key after) {
+            List<String> conditions = new ArrayList<>();
+            List<Object> params = new ArrayList<>();
+            String normalized = by == Field.EMAIL ? User.normalizeEmail(prefix) : User.normalizeName(prefix);
+            if (normalized != null && !normalized.isEmpty()) {
+                conditions.add(by.column + " like ? escape '\\'");
+                params.add(escapeLike(normalized) + "%");
+            } else if (by == Field.NAME) {
+                conditions.add(by.column + " is not null");
+            }
+            if (after != null && by == Field.EMAIL) {
+                conditions.add(by.column + " > ?");
+                params.add(after.value());
+            } else if (after != null) {
+                conditions.add("(" + by.column + " > ? or (" + by.column + " = ? and id > ?))");
+                params.add(after.value());
+                params.add(after.value());
+                params.add(after.id());
+            }
+
+            String where = conditions.isEmpty() ? "" : "where " + String.join(" and ", conditions) + " ";
+            String order = by == Field.EMAIL ? "order by email_normalized" : "order by name_normalized, id";
+            return new Query(SELECT + where + order, params);
+        }
+
+        Object[] args(Object... extra) {
+            List<Object> all = new ArrayList<>(params);
+            all.addAll(List.of(extra));
+            return all.toArray();
+        }
+
+        private static String escapeLike(String value) {
+            return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+-- Tabelas das partições de usuários além da principal (perfil 'partitioned'), na principal o Hibernate cria tudo
+-- Mesmas colunas das entidades 'User' e 'UserChange'
+create table if not exists users (
+    id varchar(255) primary key,
+    name varchar(255),
+    name_normalized varchar(255),
+    email varchar(255),
+    email_normalized varchar(255) not null,
+    password varchar(255),
+    token_version integer not null default 0,
+    credential_cache_disabled boolean not null default false,
+    admin boolean not null default false,
+    constraint uk_users_email_normalized unique (email_normalized)
+);
+create index if not exists ix_users_name_normalized on users (name_normalized, id);
+
+create table if not exists user_changes (
+    seq bigint generated by default as identity primary key,
+    email_normalized varchar(255) not null,
+    type varchar(32) not null,
+    changed_at timestamp(6) with time zone not null
+);
+create index if not exists ix_user_changes_changed_at on user_changes (changed_at);
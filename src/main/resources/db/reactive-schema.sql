@@ -0,0 +1,53 @@
+-- Tabela de usuários para a stack reativa, na stack servlet quem cria a tabela é o Hibernate a partir da entidade 'User'
+create table if not exists users (
+    id varchar(255) not null primary key,
+    name varchar(255),
+    name_normalized varchar(255),
+    email varchar(255),
+    email_normalized varchar(255) not null,
+    password varchar(255),
+    token_version integer not null default 0,
+    credential_cache_disabled boolean not null default false,
+    admin boolean not null default false,
+    constraint uk_users_email_normalized unique (email_normalized)
+);
+create index if not exists ix_users_name_normalized on users (name_normalized, id);
+
+-- Log de mudanças de usuários lido pelas réplicas servlet (entidade 'UserChange')
+create table if not exists user_changes (
+    seq bigint generated by default as identity primary key,
+    email_normalized varchar(255) not null,
+    type varchar(32) not null,
+    changed_at timestamp(6) with time zone not null
+);
+create index if not exists ix_user_changes_changed_at on user_changes (changed_at);
+
+-- Trilha de auditoria da autenticação gravada em lote pelo 'AuthAuditLog' (entidade 'AuthEvent')
+create table if not exists auth_events (
+    id bigint generated by default as identity primary key,
+    type varchar(32) not null,
+    email varchar(255),
+    ip varchar(64),
+    reason varchar(32),
+    occurred_at timestamp(6) with time zone not null
+);
+create index if not exists ix_auth_events_occurred_at on auth_events (occurred_at);
+
+-- Tokens revogados no logout das réplicas servlet, a stack reativa só lê (entidade 'RevokedToken')
+create table if not exists revoked_tokens (
+    jti varchar(36) not null primary key,
+    expires_at timestamp(6) with time zone not null,
+    revoked_at timestamp(6) with time zone not null
+);
+create index if not exists ix_revoked_tokens_expires_at on revoked_tokens (expires_at);
+create index if not exists ix_revoked_tokens_revoked_at on revoked_tokens (revoked_at);
+
+-- Chaves assimétricas de assinatura dos tokens, lidas e rotacionadas pelas duas stacks (entidade 'StoredSigningKey')
+create table if not exists signing_keys (
+    kid varchar(36) not null primary key,
+    algorithm varchar(8) not null,
+    public_key varchar(1024) not null,
+    private_key varchar(4096) not null,
+    activates_at timestamp(6) with time zone not null
+);
+create index if not exists ix_signing_keys_algorithm on signing_keys (algorithm);
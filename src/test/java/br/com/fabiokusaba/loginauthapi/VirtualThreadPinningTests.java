@@ -0,0 +1,126 @@
+package br.com.fabiokusaba.loginauthapi;
+
+//Confere que o caminho de login e de requisição autenticada não prende (pin) as virtual threads nas threads carregadoras
+//Gravamos os eventos 'jdk.VirtualThreadPinned' do JFR enquanto fazemos cadastros, logins e chamadas autenticadas em
+//paralelo, passando pela cadeia de filtros do Spring Security, pelo JPA/Hikari e pelo H2
+//Uma virtual thread presa em um bloco 'synchronized' enquanto espera por I/O ou por um lock segura a thread carregadora
+//e derruba a concorrência que o modo de virtual threads deveria nos dar
+//Só roda em Java 21 ou superior, que é onde o perfil 'virtual' realmente liga as virtual threads
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledForJreRange(min = JRE.JAVA_21)
+@ActiveProfiles("virtual")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        //Custo baixo para o teste não ser dominado pelo BCrypt
+        "api.security.password.bcrypt.strength=4",
+        "api.security.password.hashing.queue-capacity=1000",
+        "api.security.password.hashing.max-queue-time=30s"
+})
+class VirtualThreadPinningTests {
+
+    private static final int USERS = 50;
+    private static final int AUTHENTICATED_CALLS_PER_USER = 20;
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @Test
+    void authPathsDoNotPinVirtualThreads() throws Exception {
+        Path dump = Files.createTempFile("pinning", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            List<CompletableFuture<Void>> flows = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                flows.add(this.userFlow("pinning" + i + "@example.com"));
+            }
+            CompletableFuture.allOf(flows.toArray(CompletableFuture[]::new)).join();
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> pinned = RecordingFile.readAllEvents(dump);
+        Files.deleteIfExists(dump);
+
+        assertTrue(pinned.isEmpty(), () -> "virtual threads pinned:\n" + pinned.stream()
+                .map(VirtualThreadPinningTests::describe)
+                .collect(Collectors.joining("\n---\n")));
+    }
+
+    //Cadastro, login e várias chamadas autenticadas para um mesmo usuário
+    private CompletableFuture<Void> userFlow(String email) {
+        String credentials = "{\"name\":\"Pinning\",\"email\":\"" + email + "\",\"password\":\"secret\"}";
+
+        return this.post("/auth/register", credentials)
+                .thenCompose(registered -> this.post("/auth/login", credentials))
+                .thenCompose(login -> {
+                    assertEquals(200, login.statusCode(), login.body());
+                    Matcher matcher = TOKEN.matcher(login.body());
+                    assertTrue(matcher.find(), login.body());
+                    String token = matcher.group(1);
+
+                    List<CompletableFuture<HttpResponse<String>>> calls = new ArrayList<>();
+                    for (int i = 0; i < AUTHENTICATED_CALLS_PER_USER; i++) {
+                        calls.add(client.sendAsync(HttpRequest.newBuilder(this.uri("/user"))
+                                        .header("Authorization", "Bearer " + token).GET().build(),
+                                HttpResponse.BodyHandlers.ofString()));
+                    }
+                    return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                            .thenRun(() -> calls.forEach(call -> assertEquals(200, call.join().statusCode())));
+                });
+    }
+
+    private CompletableFuture<HttpResponse<String>> post(String path, String json) {
+        return client.sendAsync(HttpRequest.newBuilder(this.uri(path))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static String describe(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return event.toString();
+        }
+        return event.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining("\n  at "));
+    }
+}
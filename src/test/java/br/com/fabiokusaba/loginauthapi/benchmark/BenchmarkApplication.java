@@ -0,0 +1,45 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Sobe a aplicação inteira para os benchmarks JMH que precisam dos beans reais (token, filtro e repositório)
+//Cada benchmark passa as propriedades que quer variar, o resto vem do 'application.properties'
+//Usamos um banco H2 com nome próprio para que benchmarks diferentes não compartilhem dados
+
+import br.com.fabiokusaba.loginauthapi.LoginAuthApiApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        List<String> all = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";DB_CLOSE_ON_EXIT=FALSE",
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN",
+                //Custo fixo e baixo para a subida não ficar calibrando o BCrypt
+                "api.security.password.bcrypt.strength=4",
+                //Os benchmarks repetem o login do mesmo usuário muito além do limite de tentativas
+                "api.security.login.throttle.enabled=false"));
+
+        //Uma propriedade repetida na linha de comando vira uma lista ("4,10"), então a do benchmark substitui o padrão
+        for (String property : properties) {
+            String key = property.substring(0, property.indexOf('=') + 1);
+            all.removeIf(existing -> existing.startsWith(key));
+            all.add(property);
+        }
+
+        //Passamos como argumentos de linha de comando porque o '.properties(...)' do builder só define valores padrão, que
+        //perdem para o 'application.properties' (a calibração do BCrypt e o throttle continuariam ligados)
+        return new SpringApplicationBuilder(LoginAuthApiApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run(all.stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+}
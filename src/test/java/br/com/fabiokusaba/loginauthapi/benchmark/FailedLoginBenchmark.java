@@ -0,0 +1,105 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark do caminho de falha do login, do POST em "/auth/login" até a resposta de erro escrita pelo
+//'RestExceptionHandler'
+//Em um ataque de credential stuffing quase todas as requisições são de emails que não existem ou de senhas erradas,
+//então o custo de uma falha precisa ser o BCrypt (o de verdade para senha errada, o fictício para email desconhecido)
+//e mais nada: a exceção não tem stack trace, o corpo da resposta já está serializado e a falha só incrementa um contador
+//Comparando 'unknownUser' e 'wrongPassword' com 'dummyHash' (só o BCrypt) a diferença é o resto do caminho, que deve
+//ser desprezível em qualquer custo do BCrypt, e os dois tipos de falha devem custar o mesmo
+//'failureOnly' mede só a exceção e a resposta de erro, sem a requisição e sem o hash
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.exceptions.UserNotFoundException;
+import br.com.fabiokusaba.loginauthapi.infra.RestExceptionHandler;
+import br.com.fabiokusaba.loginauthapi.infra.security.PasswordHashingService;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FailedLoginBenchmark {
+
+    private static final String UNKNOWN_USER = "{\"email\":\"nobody@example.com\",\"password\":\"guess\"}";
+    private static final String WRONG_PASSWORD = "{\"email\":\"benchmark@example.com\",\"password\":\"guess\"}";
+
+    //Custo baixo (o mesmo dos outros benchmarks) e o custo padrão de produção
+    @Param({"4", "10"})
+    public int strength;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private PasswordHashingService passwordHashingService;
+    private RestExceptionHandler restExceptionHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("api.security.password.bcrypt.strength=" + strength);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+        passwordHashingService = context.getBean(PasswordHashingService.class);
+        restExceptionHandler = context.getBean(RestExceptionHandler.class);
+
+        User user = new User();
+        user.setName("Benchmark");
+        user.setEmail("benchmark@example.com");
+        user.setPassword(context.getBean(PasswordEncoder.class).encode("right-password"));
+        context.getBean(UserRepository.class).saveAndFlush(user);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int unknownUser() throws Exception {
+        return this.login(UNKNOWN_USER);
+    }
+
+    @Benchmark
+    public int wrongPassword() throws Exception {
+        return this.login(WRONG_PASSWORD);
+    }
+
+    @Benchmark
+    public void dummyHash() {
+        passwordHashingService.simulateMatch("guess");
+    }
+
+    //O handler do 404 é privado, então passamos pelo handler genérico, que faz o mesmo trabalho com outro corpo
+    @Benchmark
+    public Object failureOnly() {
+        return restExceptionHandler.runtimeExceptionHandler(new UserNotFoundException());
+    }
+
+    private int login(String body) throws Exception {
+        return mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andReturn().getResponse().getStatus();
+    }
+}
@@ -0,0 +1,292 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Teste de carga que reproduz as tempestades de login que vemos quando muitos clientes reconectam ao mesmo tempo
+//Sobe a aplicação em uma porta aleatória com H2, popula N usuários e dispara requisições em modelo aberto: elas saem
+//em uma taxa fixa de chegada, independente de as anteriores já terem respondido, assim como acontece em produção
+//A latência é medida a partir do instante em que a requisição deveria ter saído e não de quando ela saiu de fato, assim
+//um servidor lento não "segura" o gerador de carga e esconde a própria fila (coordinated omission)
+//A mistura de requisições segue o tráfego real: 90% "/user" autenticado, 9% login e 1% cadastro
+//Cada estágio (taxa de chegada) gera um histograma HDR por endpoint, o p50/p95/p99/max e a vazão são impressos e a
+//distribuição completa é gravada em target/load/<taxa>-<endpoint>.hgrm, que pode ser plotada ou comparada entre commits
+//O teste falha quando algum endpoint passa do p99 ou da taxa de erros configurados, então ele pode ser usado para
+//barrar um merge
+//Esse teste não roda no 'mvn test' padrão, para rodar: mvn test -Pload
+//As opções são trocadas com -Dload.users=100000 -Dload.rates=100,200,400 -Dload.stage-duration=PT30S
+//-Dload.warm-up=PT10S -Dload.mix=90,9,1 -Dload.max-p99-ms=500 -Dload.max-error-rate=0.01
+//O 'HdrHistogram' já vem no classpath pelo Micrometer
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("load")
+class LoginStormLoadTests {
+
+    private static final String PASSWORD = "secret";
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    //Quantidade de usuários que fazem login antes da carga para termos tokens válidos para o "/user"
+    private static final int TOKEN_POOL = 64;
+    //Maior latência que o histograma registra (em microssegundos), valores maiores são gravados como esse limite
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    @Test
+    void loginStorm() throws Exception {
+        int users = Integer.getInteger("load.users", 10_000);
+        int[] rates = ints(System.getProperty("load.rates", "50,100,200"));
+        Duration stageDuration = Duration.parse(System.getProperty("load.stage-duration", "PT20S"));
+        Duration warmUp = Duration.parse(System.getProperty("load.warm-up", "PT5S"));
+        int[] mix = ints(System.getProperty("load.mix", "90,9,1"));
+        long maxP99Millis = Long.getLong("load.max-p99-ms", 500);
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+        Path reportDir = Path.of(System.getProperty("load.report-dir", "target/load"));
+
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start()) {
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+
+            seed(context, users);
+            Scenario scenario = new Scenario(base, users, mix, tokens(client, base, users));
+
+            //Aquecimento na primeira taxa para o JIT e o pool de conexões não entrarem na medição
+            run(client, scenario, rates[0], warmUp);
+
+            Files.createDirectories(reportDir);
+            List<Executable> checks = new ArrayList<>();
+            for (int rate : rates) {
+                Stage stage = run(client, scenario, rate, stageDuration);
+                for (Endpoint endpoint : Endpoint.values()) {
+                    Stats stats = stage.stats(endpoint);
+                    System.out.println(stats.summary(rate, stageDuration));
+                    stats.write(reportDir.resolve(rate + "-" + endpoint.label + ".hgrm"));
+
+                    long p99Millis = stats.latencies.getValueAtPercentile(99) / 1_000;
+                    double errorRate = stats.errorRate();
+                    checks.add(() -> assertTrue(p99Millis <= maxP99Millis, String.format(
+                            "%s at %d req/s: p99 %dms exceeds %dms", endpoint.label, rate, p99Millis, maxP99Millis)));
+                    checks.add(() -> assertTrue(errorRate <= maxErrorRate, String.format(
+                            "%s at %d req/s: error rate %.4f exceeds %.4f", endpoint.label, rate, errorRate,
+                            maxErrorRate)));
+                }
+            }
+            assertAll(checks);
+        }
+    }
+
+    //Dispara requisições na taxa pedida durante o tempo do estágio e espera todas responderem
+    //Cada requisição tem um instante de saída planejado ('intended'), se o gerador atrasar (GC, CPU cheia) ele não
+    //espera, manda as atrasadas em seguida e a latência delas já conta o atraso
+    private static Stage run(HttpClient client, Scenario scenario, int rate, Duration duration) {
+        Stage stage = new Stage();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = duration.toNanos() / interval;
+        List<CompletableFuture<?>> pending = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE));
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * interval;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Endpoint endpoint = scenario.next();
+            Stats stats = stage.stats(endpoint);
+            pending.add(client.sendAsync(scenario.request(endpoint), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        long micros = (System.nanoTime() - intended) / 1_000;
+                        stats.latencies.recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+                        if (failure != null || response.statusCode() != 200) {
+                            stats.error(failure != null ? failure.getClass().getSimpleName()
+                                    : String.valueOf(response.statusCode()));
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).exceptionally(failure -> null).join();
+        return stage;
+    }
+
+    //Popula a tabela direto no H2 com 'SYSTEM_RANGE', todos os usuários com a mesma senha já codificada pelo encoder da
+    //aplicação para que o login passe pela verificação de hash de verdade
+    private static void seed(ConfigurableApplicationContext context, int users) {
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        context.getBean(JdbcTemplate.class).update(
+                "INSERT INTO users (id, name, email, email_normalized, password, token_version) " +
+                        "SELECT RANDOM_UUID(), 'User ' || X, 'user' || X || '@example.com', " +
+                        "'user' || X || '@example.com', ?, 0 FROM SYSTEM_RANGE(0, ?)", hash, users - 1);
+    }
+
+    private static List<String> tokens(HttpClient client, String base, int users) throws IOException,
+            InterruptedException {
+        int count = Math.min(TOKEN_POOL, users);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String email = "user" + (i * (users / count)) + "@example.com";
+            HttpResponse<String> response = client.send(login(base, email), HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = TOKEN.matcher(response.body());
+            assertTrue(matcher.find(), response.body());
+            tokens.add(matcher.group(1));
+        }
+        return tokens;
+    }
+
+    private static HttpRequest login(String base, String email) {
+        return json(base + "/auth/login", "{\"email\":\"" + email + "\",\"password\":\"" + PASSWORD + "\"}");
+    }
+
+    private static HttpRequest json(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static int[] ints(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private enum Endpoint {
+        USER("user"),
+        LOGIN("login"),
+        REGISTER("register");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    //Escolhe o próximo endpoint pela mistura configurada e monta a requisição dele
+    //Só é chamado pela thread que dispara a carga, então o 'SplittableRandom' não precisa ser thread-safe
+    private static final class Scenario {
+
+        private final String base;
+        private final int users;
+        private final int[] mix;
+        private final int mixTotal;
+        private final List<HttpRequest> userRequests;
+        private final SplittableRandom random = new SplittableRandom(42);
+        private final AtomicLong registrations = new AtomicLong();
+
+        Scenario(String base, int users, int[] mix, List<String> tokens) {
+            this.base = base;
+            this.users = users;
+            this.mix = mix;
+            this.mixTotal = Arrays.stream(mix).sum();
+            this.userRequests = tokens.stream()
+                    .map(token -> HttpRequest.newBuilder(URI.create(base + "/user"))
+                            .header("Authorization", "Bearer " + token)
+                            .GET()
+                            .build())
+                    .toList();
+        }
+
+        Endpoint next() {
+            int pick = random.nextInt(mixTotal);
+            for (Endpoint endpoint : Endpoint.values()) {
+                pick -= mix[endpoint.ordinal()];
+                if (pick < 0) {
+                    return endpoint;
+                }
+            }
+            return Endpoint.USER;
+        }
+
+        HttpRequest request(Endpoint endpoint) {
+            return switch (endpoint) {
+                case USER -> userRequests.get(random.nextInt(userRequests.size()));
+                case LOGIN -> login(base, "user" + random.nextInt(users) + "@example.com");
+                //Emails novos a cada cadastro, um email repetido receberia 400 e contaria como erro
+                case REGISTER -> json(base + "/auth/register", "{\"name\":\"Storm\",\"email\":\"storm" +
+                        registrations.incrementAndGet() + "@example.com\",\"password\":\"" + PASSWORD + "\"}");
+            };
+        }
+    }
+
+    private static final class Stage {
+
+        private final Stats[] stats = Arrays.stream(Endpoint.values()).map(Stats::new).toArray(Stats[]::new);
+
+        Stats stats(Endpoint endpoint) {
+            return stats[endpoint.ordinal()];
+        }
+    }
+
+    //O histograma é gravado pelas threads do 'HttpClient' ao mesmo tempo, por isso o 'ConcurrentHistogram'
+    private static final class Stats {
+
+        private final Endpoint endpoint;
+        private final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        //Erros agrupados pelo status HTTP (ou pela exceção quando nem houve resposta), um 503 do bulkhead de hashing
+        //indica um problema bem diferente de um 401
+        private final Map<String, LongAdder> errorsByCause = new ConcurrentHashMap<>();
+
+        Stats(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        void error(String cause) {
+            errors.increment();
+            errorsByCause.computeIfAbsent(cause, ignored -> new LongAdder()).increment();
+        }
+
+        double errorRate() {
+            long count = latencies.getTotalCount();
+            return count == 0 ? 0 : (double) errors.sum() / count;
+        }
+
+        String summary(int rate, Duration duration) {
+            long count = latencies.getTotalCount();
+            return String.format("rate=%,d req/s endpoint=%-8s requests=%,d throughput=%,.1f req/s p50=%,.2fms " +
+                            "p95=%,.2fms p99=%,.2fms max=%,.2fms errors=%,d %s", rate, endpoint.label, count,
+                    (count - errors.sum()) / (duration.toMillis() / 1_000.0), millis(50), millis(95), millis(99),
+                    latencies.getMaxValue() / 1_000.0, errors.sum(), errorsByCause);
+        }
+
+        void write(Path file) throws IOException {
+            try (PrintStream output = new PrintStream(Files.newOutputStream(file))) {
+                //Escala de microssegundos para milissegundos
+                latencies.outputPercentileDistribution(output, 1_000.0);
+            }
+        }
+
+        private double millis(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1_000.0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark de vazão da tabela de usuários particionada com 1, 2 e 4 bancos H2 em memória
+//Para cada quantidade de partições sobe a aplicação e várias threads fazem cadastros (insert do usuário e do
+//'user_changes' na mesma transação, sem o BCrypt, que é medido nos outros benchmarks) e depois buscas de login
+//Cada banco tem o seu pool e os seus locks, então a vazão de escrita precisa crescer com as partições quando há
+//núcleos sobrando, numa máquina com um núcleo só o ganho é pequeno e o teste só confere que não existe perda
+//Esse teste não roda no 'mvn test' padrão, para rodar:
+//mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=PartitionedUserStoreBenchmarkTests
+//As quantidades podem ser trocadas com -Dbenchmark.partitions=1,2,4,8 e as threads com -Dbenchmark.threads=32
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.infra.partition.UserPartitioning;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+class PartitionedUserStoreBenchmarkTests {
+
+    private static final int USERS = 20_000;
+    private static final int LOOKUPS = 100_000;
+
+    //Com mais partições a vazão pode ser no mínimo essa fração da vazão com uma partição
+    private static final double MIN_RATIO = 0.8;
+
+    @Test
+    void userStoreThroughputScalesWithPartitions() throws Exception {
+        int threads = Integer.getInteger("benchmark.threads", 16);
+        List<double[]> results = new ArrayList<>();
+
+        for (int partitions : partitionCounts()) {
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(properties(partitions))) {
+                UserPartitioning userPartitioning = context.getBean(UserPartitioning.class);
+                UserRepository userRepository = context.getBean(UserRepository.class);
+                UserChangeLog userChangeLog = context.getBean(UserChangeLog.class);
+                TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+
+                //Aquecimento com outros emails para o JIT e os pools não entrarem na medida
+                run(threads, 2_000, i -> register(userPartitioning, userRepository, userChangeLog,
+                        transactionTemplate, "warmup" + i + "@bench.com"));
+
+                double writes = run(threads, USERS, i -> register(userPartitioning, userRepository, userChangeLog,
+                        transactionTemplate, "user" + i + "@bench.com"));
+                double reads = run(threads, LOOKUPS, i -> {
+                    String email = "user" + (i % USERS) + "@bench.com";
+                    userPartitioning.forEmail(email, () -> userRepository.findCredentialsByEmail(email))
+                            .orElseThrow();
+                });
+
+                results.add(new double[]{partitions, writes, reads});
+                System.out.printf("partitions=%d threads=%d writes=%,.0f/s lookups=%,.0f/s%n",
+                        partitions, threads, writes, reads);
+            }
+        }
+
+        double[] single = results.get(0);
+        for (double[] result : results) {
+            assertTrue(result[1] >= single[1] * MIN_RATIO && result[2] >= single[2] * MIN_RATIO,
+                    "throughput with " + (int) result[0] + " partitions dropped below " + MIN_RATIO + "x of one");
+        }
+    }
+
+    private static void register(UserPartitioning userPartitioning, UserRepository userRepository,
+                                 UserChangeLog userChangeLog, TransactionTemplate transactionTemplate, String email) {
+        User user = new User();
+        user.setName("Bench");
+        user.setEmail(email);
+        user.setPassword("{noop}secret");
+        userPartitioning.forEmail(email, () -> {
+            transactionTemplate.executeWithoutResult(status -> {
+                userRepository.saveAndFlush(user);
+                userChangeLog.append(UserChange.Type.CREATED, email);
+            });
+            return null;
+        });
+    }
+
+    //Divide as operações entre as threads e devolve as operações por segundo
+    private static double run(int threads, int operations, IntConsumer operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < operations; i += threads) {
+                        operation.accept(i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return operations / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String[] properties(int partitions) {
+        String run = UUID.randomUUID().toString();
+        String urls = IntStream.range(0, partitions)
+                .mapToObj(i -> "jdbc:h2:mem:bench-" + run + "-" + i + ";DB_CLOSE_DELAY=-1")
+                .collect(Collectors.joining(","));
+        return new String[]{
+                "api.user.partitions.enabled=true",
+                "api.user.partitions.urls=" + urls,
+                "spring.jpa.open-in-view=false"
+        };
+    }
+
+    private static int[] partitionCounts() {
+        return Arrays.stream(System.getProperty("benchmark.partitions", "1,2,4").split(","))
+                .mapToInt(value -> Integer.parseInt(value.trim()))
+                .toArray();
+    }
+}
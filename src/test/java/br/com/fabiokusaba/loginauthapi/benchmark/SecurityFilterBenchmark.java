@@ -0,0 +1,126 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark de ponta a ponta do 'SecurityFilter' com uma requisição mock, do header "Authorization" até o usuário estar
+//no contexto do Spring Security
+//Medimos o modo tradicional (busca o usuário no banco a cada requisição) e o modo stateless, além das requisições que
+//são recusadas: token que nem é um JWT, token expirado, assinatura que não confere e sem token
+//As recusas devem custar menos do que um token válido, elas não chegam a verificar a assinatura (exceto a de assinatura
+//errada, que precisa) nem lançam exceções
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.infra.security.SecurityFilter;
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKey;
+import br.com.fabiokusaba.loginauthapi.infra.security.SigningKeyRing;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import com.auth0.jwt.JWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityFilterBenchmark {
+
+    @Param({"false", "true"})
+    public boolean stateless;
+
+    private ConfigurableApplicationContext context;
+    private SecurityFilter securityFilter;
+    private String validHeader;
+    private String expiredHeader;
+    private String badSignatureHeader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("api.security.token.stateless.enabled=" + stateless);
+        securityFilter = context.getBean(SecurityFilter.class);
+
+        User user = new User();
+        user.setName("Benchmark");
+        user.setEmail("benchmark@example.com");
+        user.setPassword("not-used");
+        context.getBean(UserRepository.class).saveAndFlush(user);
+
+        validHeader = "Bearer " + context.getBean(TokenService.class).generateToken(user);
+
+        SigningKey key = context.getBean(SigningKeyRing.class).current();
+        expiredHeader = "Bearer " + JWT.create()
+                .withKeyId(key.kid())
+                .withIssuer("login-auth-api")
+                .withSubject(user.getEmail())
+                .withExpiresAt(Instant.now().minusSeconds(60))
+                .sign(key.algorithm());
+
+        //Troca um caractere do meio da assinatura, o último pode só mexer nos bits de padding
+        int middle = validHeader.lastIndexOf('.') + 5;
+        char replaced = validHeader.charAt(middle) == 'A' ? 'B' : 'A';
+        badSignatureHeader = validHeader.substring(0, middle) + replaced + validHeader.substring(middle + 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object validToken() throws Exception {
+        return this.filter(validHeader);
+    }
+
+    @Benchmark
+    public Object malformedToken() throws Exception {
+        return this.filter("Bearer not.a.token");
+    }
+
+    @Benchmark
+    public Object expiredToken() throws Exception {
+        return this.filter(expiredHeader);
+    }
+
+    @Benchmark
+    public Object badSignatureToken() throws Exception {
+        return this.filter(badSignatureHeader);
+    }
+
+    @Benchmark
+    public Object missingToken() throws Exception {
+        return this.filter(null);
+    }
+
+    //O 'OncePerRequestFilter' marca a requisição como já filtrada, então cada chamada precisa de uma requisição nova
+    private Object filter(String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        try {
+            securityFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
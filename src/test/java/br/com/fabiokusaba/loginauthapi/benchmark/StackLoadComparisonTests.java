@@ -0,0 +1,203 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Comparação de carga entre a stack servlet (Tomcat + JPA) e a stack reativa (WebFlux + R2DBC)
+//Reproduz o cenário do gateway: primeiro abre N conexões keep-alive que fazem uma requisição e ficam ociosas, depois,
+//com essas conexões ainda abertas, mantém C conexões ativas fazendo chamadas autenticadas em "/user" (que passam pelo
+//filtro de token e pelo banco de dados)
+//No final imprime, para cada stack, a vazão, o p50/p99, o pico de threads e o heap usado, que é onde o custo das
+//conexões ociosas aparece
+//Esse teste não roda no 'mvn test' padrão, para rodar:
+//mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=StackLoadComparisonTests
+//Os tamanhos podem ser trocados com -Dbenchmark.idle-connections=20000 -Dbenchmark.concurrency=500 (muitas conexões
+//ociosas precisam de um 'ulimit -n' maior que o dobro delas, já que cliente e servidor estão no mesmo processo)
+
+import br.com.fabiokusaba.loginauthapi.LoginAuthApiApplication;
+import br.com.fabiokusaba.loginauthapi.reactive.ReactiveStackConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+class StackLoadComparisonTests {
+
+    private static final int REQUESTS_PER_CONNECTION = 50;
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    @Test
+    void compareServletAndReactiveStacks() throws Exception {
+        int idle = Integer.getInteger("benchmark.idle-connections", 5_000);
+        int concurrency = Integer.getInteger("benchmark.concurrency", 200);
+
+        Result servlet = this.run("servlet", idle, concurrency);
+        Result reactive = this.run("reactive", idle, concurrency);
+
+        System.out.println(servlet);
+        System.out.println(reactive);
+
+        assertEquals(0, servlet.errors(), "servlet stack had errors");
+        assertEquals(0, reactive.errors(), "reactive stack had errors");
+    }
+
+    private Result run(String stack, int idle, int concurrency) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        List<Socket> idleConnections = new ArrayList<>();
+        try (ConfigurableApplicationContext context = start(stack)) {
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+            String token = this.register(client, base);
+
+            threads.resetPeakThreadCount();
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            for (int i = 0; i < idle; i++) {
+                idleConnections.add(keepAlive(port));
+            }
+            long heapWithIdle = usedHeapMegabytes();
+
+            int total = concurrency * REQUESTS_PER_CONNECTION;
+            AtomicLongArray latencies = new AtomicLongArray(total);
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/user"))
+                    .header("Authorization", "Bearer " + token).GET().build();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> connections = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                connections.add(this.connection(client, request, REQUESTS_PER_CONNECTION, latencies, next, errors));
+            }
+            CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new)).join();
+            long elapsed = System.nanoTime() - start;
+
+            long[] sorted = new long[next.get()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            return new Result(stack, idle, concurrency, sorted.length * 1e9 / elapsed, sorted[sorted.length / 2],
+                    sorted[(int) (sorted.length * 0.99)], threads.getPeakThreadCount(), heapWithIdle, errors.get());
+        } finally {
+            for (Socket socket : idleConnections) {
+                socket.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String stack) {
+        //Argumentos de linha de comando, o '.properties(...)' do builder perderia para o 'application.properties'
+        String[] common = {
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--api.security.password.bcrypt.strength=4",
+                "--api.security.login.throttle.enabled=false"
+        };
+        if (stack.equals("servlet")) {
+            return new SpringApplicationBuilder(LoginAuthApiApplication.class)
+                    .run(concat(common,
+                            "--spring.datasource.url=jdbc:h2:mem:stack-" + UUID.randomUUID(),
+                            "--server.tomcat.max-connections=50000",
+                            "--server.tomcat.accept-count=5000",
+                            //O Tomcat fecharia as conexões ociosas no meio da medição
+                            "--server.tomcat.keep-alive-timeout=10m",
+                            "--server.tomcat.connection-timeout=10m"));
+        }
+        return new SpringApplicationBuilder(ReactiveStackConfiguration.class)
+                .profiles("reactive")
+                .web(WebApplicationType.REACTIVE)
+                .run(concat(common,
+                        "--spring.r2dbc.url=r2dbc:h2:mem:///stack-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        String[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+
+    //Abre uma conexão, faz uma requisição com keep-alive e deixa a conexão aberta sem fazer mais nada
+    private static Socket keepAlive(int port) throws IOException {
+        Socket socket = new Socket("localhost", port);
+        OutputStream output = socket.getOutputStream();
+        output.write(("GET /actuator/health HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+        InputStream input = socket.getInputStream();
+        byte[] buffer = new byte[1024];
+        if (input.read(buffer) < 0) {
+            throw new IOException("Connection closed before the response");
+        }
+        return socket;
+    }
+
+    private CompletableFuture<Void> connection(HttpClient client, HttpRequest request, int remaining,
+                                               AtomicLongArray latencies, AtomicInteger next, AtomicInteger errors) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    latencies.set(next.getAndIncrement(), System.nanoTime() - start);
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> this.connection(client, request, remaining - 1, latencies, next, errors));
+    }
+
+    private String register(HttpClient client, String base) throws Exception {
+        String body = "{\"name\":\"Load\",\"email\":\"load@example.com\",\"password\":\"secret\"}";
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/auth/register"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(response.body());
+        assertTrue(matcher.find(), response.body());
+        return matcher.group(1);
+    }
+
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+
+    private record Result(String stack, int idle, int concurrency, double throughput, long p50Nanos, long p99Nanos,
+                          int peakThreads, long heapMegabytes, int errors) {
+
+        @Override
+        public String toString() {
+            return String.format("stack=%s idle=%,d active=%,d throughput=%,.0f req/s p50=%,dus p99=%,dus " +
+                            "peakThreads=%d heap=%,dMB errors=%d", stack, idle, concurrency, throughput,
+                    p50Nanos / 1_000, p99Nanos / 1_000, peakThreads, heapMegabytes, errors);
+        }
+    }
+}
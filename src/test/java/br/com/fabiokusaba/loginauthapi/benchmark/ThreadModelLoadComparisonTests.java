@@ -0,0 +1,155 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Comparação de carga entre o modo tradicional (uma thread de plataforma por requisição no Tomcat) e o modo de virtual
+//threads (perfil 'virtual')
+//Para cada modo sobe a aplicação inteira, cria um usuário e mantém N conexões simultâneas fazendo chamadas autenticadas
+//em "/user", que passam pelo 'SecurityFilter' e pelo banco de dados
+//No final imprime a vazão, o p50/p99 e o pico de threads da JVM em cada modo, o pico de threads é o que mostra quanto
+//de memória de pilha cada modo precisa para a mesma concorrência
+//Esse teste não roda no 'mvn test' padrão e só faz sentido em Java 21 ou superior, para rodar:
+//mvn test -Pvirtual-threads -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=ThreadModelLoadComparisonTests
+//As concorrências podem ser trocadas com -Dbenchmark.concurrency=1000,10000 (10 mil conexões precisam de um
+//'ulimit -n' maior que 20 mil)
+
+import br.com.fabiokusaba.loginauthapi.LoginAuthApiApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+@EnabledForJreRange(min = JRE.JAVA_21)
+class ThreadModelLoadComparisonTests {
+
+    private static final int REQUESTS_PER_CONNECTION = 20;
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+    @Test
+    void compareVirtualAndPlatformThreads() throws Exception {
+        for (int concurrency : concurrencyLevels()) {
+            Result platform = this.run(false, concurrency);
+            Result virtual = this.run(true, concurrency);
+
+            System.out.println(platform);
+            System.out.println(virtual);
+
+            assertEquals(0, platform.errors(), "platform-thread mode had errors");
+            assertEquals(0, virtual.errors(), "virtual-thread mode had errors");
+        }
+    }
+
+    private Result run(boolean virtualThreads, int concurrency) throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(LoginAuthApiApplication.class);
+        if (virtualThreads) {
+            builder.profiles("virtual");
+        }
+
+        //Argumentos de linha de comando, o '.properties(...)' do builder perderia para o 'application.properties' e a
+        //medição sairia com o BCrypt calibrado e com o mesmo banco nos dois modos
+        String[] args = {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + mode + concurrency,
+                "--api.security.password.bcrypt.strength=4",
+                "--server.tomcat.max-connections=20000",
+                "--server.tomcat.accept-count=1000"
+        };
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try (ConfigurableApplicationContext context = builder.run(args)) {
+            String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+            String token = this.login(client, base);
+
+            threads.resetPeakThreadCount();
+            int total = concurrency * REQUESTS_PER_CONNECTION;
+            AtomicLongArray latencies = new AtomicLongArray(total);
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/user"))
+                    .header("Authorization", "Bearer " + token).GET().build();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> connections = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                connections.add(this.connection(client, request, REQUESTS_PER_CONNECTION, latencies, next, errors));
+            }
+            CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new)).join();
+            long elapsed = System.nanoTime() - start;
+
+            long[] sorted = new long[next.get()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            return new Result(mode, concurrency, sorted.length * 1e9 / elapsed,
+                    sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.99)], threads.getPeakThreadCount(),
+                    errors.get());
+        }
+    }
+
+    //Cada "conexão" faz as suas requisições em sequência, então temos sempre 'concurrency' requisições em andamento
+    private CompletableFuture<Void> connection(HttpClient client, HttpRequest request, int remaining,
+                                               AtomicLongArray latencies, AtomicInteger next, AtomicInteger errors) {
+        if (remaining == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, failure) -> {
+                    latencies.set(next.getAndIncrement(), System.nanoTime() - start);
+                    if (failure != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> this.connection(client, request, remaining - 1, latencies, next, errors));
+    }
+
+    private String login(HttpClient client, String base) throws Exception {
+        String body = "{\"name\":\"Load\",\"email\":\"load@example.com\",\"password\":\"secret\"}";
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/auth/register"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(response.body());
+        assertTrue(matcher.find(), response.body());
+        return matcher.group(1);
+    }
+
+    private static int[] concurrencyLevels() {
+        String levels = System.getProperty("benchmark.concurrency", "1000,10000");
+        return Arrays.stream(levels.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private record Result(String mode, int concurrency, double throughput, long p50Nanos, long p99Nanos,
+                          int peakThreads, int errors) {
+
+        @Override
+        public String toString() {
+            return String.format("mode=%s connections=%,d throughput=%,.0f req/s p50=%,dus p99=%,dus peakThreads=%d errors=%d",
+                    mode, concurrency, throughput, p50Nanos / 1_000, p99Nanos / 1_000, peakThreads, errors);
+        }
+    }
+}
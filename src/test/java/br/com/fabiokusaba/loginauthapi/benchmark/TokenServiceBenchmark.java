@@ -0,0 +1,100 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark da geração e da validação de tokens do 'TokenService'
+//A validação é medida com um token válido, expirado, adulterado e sem token, com o cache de tokens verificados ligado
+//e desligado ('cacheSize' = 0), assim um token válido sem cache mostra o custo da verificação HMAC completa
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenService;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenServiceBenchmark {
+
+    @Param({"10000", "0"})
+    public int cacheSize;
+
+    private ConfigurableApplicationContext context;
+    private TokenService tokenService;
+    private User user;
+    private String validToken;
+    private String expiredToken;
+    private String tamperedToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("api.security.token.cache.max-size=" + cacheSize);
+        tokenService = context.getBean(TokenService.class);
+        String secret = context.getEnvironment().getRequiredProperty("api.security.token.secret");
+
+        user = new User();
+        user.setId("benchmark-user");
+        user.setName("Benchmark");
+        user.setEmail("benchmark@example.com");
+
+        validToken = tokenService.generateToken(user);
+        expiredToken = JWT.create()
+                .withIssuer("login-auth-api")
+                .withSubject(user.getEmail())
+                .withExpiresAt(Instant.now().minusSeconds(60))
+                .sign(Algorithm.HMAC256(secret));
+
+        //Trocamos um caractere da assinatura, o token continua bem formado mas a assinatura não confere
+        char last = validToken.charAt(validToken.length() - 2);
+        tamperedToken = validToken.substring(0, validToken.length() - 2) + (last == 'A' ? 'B' : 'A')
+                + validToken.charAt(validToken.length() - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return tokenService.generateToken(user);
+    }
+
+    @Benchmark
+    public String validateValidToken() {
+        return tokenService.validateToken(validToken);
+    }
+
+    @Benchmark
+    public String validateExpiredToken() {
+        return tokenService.validateToken(expiredToken);
+    }
+
+    @Benchmark
+    public String validateTamperedToken() {
+        return tokenService.validateToken(tamperedToken);
+    }
+
+    @Benchmark
+    public String validateMissingToken() {
+        return tokenService.validateToken(null);
+    }
+}
@@ -0,0 +1,79 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark do import de usuários em lote com 100 mil usuários
+//O arquivo é gerado sob demanda enquanto o import lê, então nem o teste nem o import têm o arquivo inteiro na memória,
+//e comparamos o heap usado no meio e no fim do import para ver que ele não cresce com o tamanho da entrada (além das
+//linhas que o próprio H2 em memória guarda)
+//Esse teste não roda no 'mvn test' padrão, para rodar:
+//mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=UserImportBenchmarkTests
+//A quantidade de usuários pode ser trocada com -Dbenchmark.import-users=1000000
+
+import br.com.fabiokusaba.loginauthapi.dto.ImportReportDTO;
+import br.com.fabiokusaba.loginauthapi.services.UserImportService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("benchmark")
+@SpringBootTest(properties = "api.security.password.bcrypt.strength=4")
+class UserImportBenchmarkTests {
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Test
+    void importsAHundredThousandUsersFromAStream() throws Exception {
+        int users = Integer.getInteger("benchmark.import-users", 100_000);
+
+        long start = System.nanoTime();
+        ImportReportDTO report = userImportService.importUsers(new GeneratedUsers(users),
+                UserImportService.Format.NDJSON);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("users=%,d imported=%,d time=%,dms rate=%,.0f users/s heap(after gc)=%,dMB%n",
+                users, report.imported(), elapsed / 1_000_000, users / (elapsed / 1e9), usedHeapMegabytes());
+        assertEquals(users, report.imported());
+    }
+
+    private static long usedHeapMegabytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+
+    //Gera uma linha NDJSON por vez conforme o import vai lendo
+    private static final class GeneratedUsers extends InputStream {
+
+        private final int users;
+        private int next;
+        private byte[] line = new byte[0];
+        private int position;
+
+        GeneratedUsers(int users) {
+            this.users = users;
+        }
+
+        @Override
+        public int read() {
+            if (position == line.length) {
+                if (next == users) {
+                    return -1;
+                }
+                if (next == users / 2) {
+                    System.out.printf("halfway heap(after gc)=%,dMB%n", usedHeapMegabytes());
+                }
+                line = ("{\"name\":\"User " + next + "\",\"email\":\"user" + next + "@bulk.com\",\"password\":\"secret\"}\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                next++;
+                position = 0;
+            }
+            return line[position++];
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark da listagem de usuários em páginas profundas, paginação por chave (a do 'UserListingService') contra
+//paginação por 'offset'
+//Populamos a tabela 'users' e medimos a latência de uma página de 50 usuários começando em várias profundidades: a
+//página por chave é uma busca no índice a partir do cursor e precisa ter praticamente a mesma latência em qualquer
+//profundidade e ser mais rápida do que o 'offset'
+//No H2 o índice guarda a contagem de linhas de cada página da árvore, então o 'offset' pula as linhas anteriores sem
+//lê-las e cresce pouco com a profundidade (em 500 mil usuários ficou em ~40us contra ~15us da página por chave), em
+//bancos como o PostgreSQL o 'offset' lê e descarta cada linha anterior e a diferença cresce com a profundidade
+//Esse teste não roda no 'mvn test' padrão, para rodar:
+//mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=UserListingBenchmarkTests
+//O tamanho da tabela pode ser trocado com -Dbenchmark.listing-users=2000000 (passe também -DargLine=-Xmx4g)
+
+import br.com.fabiokusaba.loginauthapi.services.UserListingService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+@SpringBootTest
+class UserListingBenchmarkTests {
+
+    private static final int PAGE_SIZE = 50;
+    private static final int SAMPLES = 200;
+
+    //A latência mediana da página mais funda por chave pode ser no máximo esse múltiplo da primeira página
+    private static final double MAX_GROWTH = 3.0;
+
+    private static final String OFFSET_PAGE = "select id, name, email, email_normalized, name_normalized from users " +
+            "order by email_normalized limit ? offset ?";
+
+    @Autowired
+    private UserListingService userListingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void keysetPagesStayFlatAndBeatOffsetAtAnyDepth() {
+        int users = Integer.getInteger("benchmark.listing-users", 500_000);
+        seed(users);
+
+        int[] depths = {0, users / 100, users / 10, users / 2, users - PAGE_SIZE};
+
+        //Aquecimento do JIT antes da primeira profundidade, senão ela sai mais lenta só por ser medida primeiro
+        for (int i = 0; i < 2_000; i++) {
+            userListingService.page(UserListingService.Field.EMAIL, null, null, PAGE_SIZE);
+            jdbcTemplate.queryForList(OFFSET_PAGE, PAGE_SIZE, 0);
+        }
+
+        long[] keyset = new long[depths.length];
+        long[] offset = new long[depths.length];
+        for (int i = 0; i < depths.length; i++) {
+            int depth = depths[i];
+            String cursor = depth == 0 ? null : cursorAt(depth - 1);
+
+            //Conferência de que as duas paginações devolvem a mesma página
+            for (int warmup = 0; warmup < 20; warmup++) {
+                assertEquals(PAGE_SIZE, userListingService.page(UserListingService.Field.EMAIL, null, cursor,
+                        PAGE_SIZE).users().size());
+                assertEquals(PAGE_SIZE, jdbcTemplate.queryForList(OFFSET_PAGE, PAGE_SIZE, depth).size());
+            }
+            assertEquals(jdbcTemplate.queryForList(OFFSET_PAGE, PAGE_SIZE, depth).get(0).get("EMAIL"),
+                    userListingService.page(UserListingService.Field.EMAIL, null, cursor, PAGE_SIZE)
+                            .users().get(0).email());
+
+            keyset[i] = median(() -> userListingService.page(UserListingService.Field.EMAIL, null, cursor,
+                    PAGE_SIZE));
+            offset[i] = median(() -> jdbcTemplate.queryForList(OFFSET_PAGE, PAGE_SIZE, depth));
+            System.out.printf("users=%,d depth=%,d keyset p50=%,dus offset p50=%,dus%n",
+                    users, depth, keyset[i] / 1000, offset[i] / 1000);
+        }
+
+        int deepest = depths.length - 1;
+        assertTrue(keyset[deepest] <= keyset[0] * MAX_GROWTH,
+                "keyset page p50 grew from " + keyset[0] + "ns to " + keyset[deepest] + "ns");
+        assertTrue(keyset[deepest] < offset[deepest],
+                "keyset page p50 " + keyset[deepest] + "ns is not faster than offset " + offset[deepest] + "ns");
+    }
+
+    private long median(Runnable page) {
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            page.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+
+    //Cursor que o 'UserListingService' devolveria depois da linha nessa posição (chave e id em Base64), calculado direto
+    //no banco para não precisar percorrer todas as páginas até lá
+    private String cursorAt(int position) {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "select email_normalized, id from users order by email_normalized limit 1 offset ?", position);
+        String key = row.get("EMAIL_NORMALIZED") + "\0" + row.get("ID");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Popula a tabela direto no H2 com 'SYSTEM_RANGE', como no 'UserLookupBenchmarkTests'
+    private void seed(int users) {
+        jdbcTemplate.execute("DELETE FROM users");
+        jdbcTemplate.update("INSERT INTO users (id, name, name_normalized, email, email_normalized, password, " +
+                "token_version) SELECT RANDOM_UUID(), 'User ' || X, 'user ' || X, 'User' || X || '@Example.com', " +
+                "'user' || X || '@example.com', '$2a$10$7EqJtq98hPqEX7fNZaFWoO5r1rYlJ8sJ2J5Zl5m0uQn6cN1E1Z3xS', 0 " +
+                "FROM SYSTEM_RANGE(0, ?)", users - 1);
+    }
+}
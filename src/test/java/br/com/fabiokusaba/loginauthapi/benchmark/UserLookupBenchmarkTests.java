@@ -0,0 +1,91 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark de tamanho de dados da busca de usuário por email usada no login
+//Para cada tamanho de tabela populamos a tabela 'users' e medimos a latência de 'findCredentialsByEmail', com o índice
+//único no email normalizado a latência precisa ficar praticamente a mesma de 10 mil até 10 milhões de usuários
+//Esse teste não roda no 'mvn test' padrão, para rodar:
+//mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=UserLookupBenchmarkTests
+//Os tamanhos podem ser trocados com -Dbenchmark.user-counts=10000,100000 (10 milhões de linhas precisam de uns 4GB
+//de heap no H2 em memória, então passe também -DargLine=-Xmx6g)
+
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("benchmark")
+@SpringBootTest
+class UserLookupBenchmarkTests {
+
+    private static final int WARMUP_LOOKUPS = 5_000;
+    private static final int MEASURED_LOOKUPS = 20_000;
+
+    //A latência mediana no maior tamanho pode ser no máximo esse múltiplo da latência no menor tamanho
+    private static final double MAX_GROWTH = 3.0;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void loginLookupLatencyStaysFlatAsTableGrows() {
+        List<Long> medians = new ArrayList<>();
+
+        for (int userCount : userCounts()) {
+            seed(userCount);
+
+            for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+                lookupRandom(userCount);
+            }
+
+            long[] samples = new long[MEASURED_LOOKUPS];
+            for (int i = 0; i < MEASURED_LOOKUPS; i++) {
+                long start = System.nanoTime();
+                lookupRandom(userCount);
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+
+            long p50 = samples[samples.length / 2];
+            long p99 = samples[(int) (samples.length * 0.99)];
+            medians.add(p50);
+            System.out.printf("users=%,d p50=%,dns p99=%,dns%n", userCount, p50, p99);
+        }
+
+        long smallest = medians.get(0);
+        long largest = medians.get(medians.size() - 1);
+        assertTrue(largest <= smallest * MAX_GROWTH,
+                "login lookup p50 grew from " + smallest + "ns to " + largest + "ns");
+    }
+
+    private void lookupRandom(int userCount) {
+        //Misturamos maiúsculas para exercitar a normalização e 10% de emails inexistentes como no login real
+        int index = ThreadLocalRandom.current().nextInt(userCount + userCount / 10);
+        userRepository.findCredentialsByEmail("User" + index + "@Example.com");
+    }
+
+    //Popula a tabela direto no H2 com 'SYSTEM_RANGE' porque inserir milhões de linhas pelo JPA levaria muito tempo
+    private void seed(int userCount) {
+        jdbcTemplate.execute("DELETE FROM users");
+        jdbcTemplate.update("INSERT INTO users (id, name, email, email_normalized, password, token_version) " +
+                "SELECT RANDOM_UUID(), 'User ' || X, 'User' || X || '@Example.com', 'user' || X || '@example.com', " +
+                "'$2a$10$7EqJtq98hPqEX7fNZaFWoO5r1rYlJ8sJ2J5Zl5m0uQn6cN1E1Z3xS', 0 FROM SYSTEM_RANGE(0, ?)",
+                userCount - 1);
+    }
+
+    private static int[] userCounts() {
+        String counts = System.getProperty("benchmark.user-counts", "10000,100000,1000000,10000000");
+        return Arrays.stream(counts.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
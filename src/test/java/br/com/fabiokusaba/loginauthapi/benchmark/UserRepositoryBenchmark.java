@@ -0,0 +1,78 @@
+package br.com.fabiokusaba.loginauthapi.benchmark;
+
+//Benchmark da busca de usuário por email no H2 com diferentes tamanhos de tabela, tanto a projeção enxuta usada no
+//login quanto a entidade completa
+
+import br.com.fabiokusaba.loginauthapi.domain.user.User;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.repositories.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserRepositoryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int userCount;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        userRepository = context.getBean(UserRepository.class);
+
+        //Populamos a tabela direto no H2 porque inserir milhões de linhas pelo JPA levaria muito tempo
+        context.getBean(JdbcTemplate.class).update(
+                "INSERT INTO users (id, name, email, email_normalized, password, token_version) " +
+                        "SELECT RANDOM_UUID(), 'User ' || X, 'user' || X || '@example.com', 'user' || X || '@example.com', " +
+                        "'not-used', 0 FROM SYSTEM_RANGE(0, ?)", userCount - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<UserCredentials> findCredentialsByEmail() {
+        return userRepository.findCredentialsByEmail(this.randomEmail());
+    }
+
+    @Benchmark
+    public Optional<User> findByEmail() {
+        return userRepository.findByEmail(this.randomEmail());
+    }
+
+    @Benchmark
+    public Optional<UserCredentials> findUnknownEmail() {
+        return userRepository.findCredentialsByEmail("unknown" + ThreadLocalRandom.current().nextInt() + "@example.com");
+    }
+
+    private String randomEmail() {
+        return "user" + ThreadLocalRandom.current().nextInt(userCount) + "@example.com";
+    }
+}
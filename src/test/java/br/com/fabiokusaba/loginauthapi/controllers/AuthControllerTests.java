@@ -0,0 +1,155 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "api.security.password.bcrypt.strength=4")
+@AutoConfigureMockMvc
+class AuthControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void registerLoginAndAccessProtectedEndpoint() throws Exception {
+        register("Ana", "ana@example.com", "secret").andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Ana"));
+
+        //O email é normalizado, então um cadastro com outra grafia do mesmo email é recusado
+        register("Ana", " ANA@example.com", "secret").andExpect(status().isBadRequest());
+
+        JsonNode login = json(login("Ana@Example.com", "secret").andExpect(status().isOk()));
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + login.get("token").asText()))
+                .andExpect(status().isOk());
+
+        login("ana@example.com", "wrong").andExpect(status().isBadRequest());
+        login("nobody@example.com", "secret").andExpect(status().isNotFound());
+        mockMvc.perform(get("/user")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void refreshTokensRotateAndReuseRevokesTheFamily() throws Exception {
+        JsonNode registered = json(register("Bia", "bia@example.com", "secret").andExpect(status().isOk()));
+        String first = registered.get("refreshToken").asText();
+
+        JsonNode refreshed = json(refresh(first).andExpect(status().isOk()));
+        String second = refreshed.get("refreshToken").asText();
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + refreshed.get("token").asText()))
+                .andExpect(status().isOk());
+
+        //Reutilizar o primeiro token revoga a família, inclusive o token emitido na troca anterior
+        refresh(first).andExpect(status().isUnauthorized());
+        refresh(second).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void logoutRevokesTheAccessTokenAndTheRefreshFamily() throws Exception {
+        JsonNode registered = json(register("Caio", "caio@example.com", "secret").andExpect(status().isOk()));
+        String authorization = "Bearer " + registered.get("token").asText();
+        mockMvc.perform(get("/user").header("Authorization", authorization)).andExpect(status().isOk());
+
+        mockMvc.perform(post("/auth/logout").header("Authorization", authorization)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"" + registered.get("refreshToken").asText() + "\"}"))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/user").header("Authorization", authorization)).andExpect(status().isForbidden());
+        refresh(registered.get("refreshToken").asText()).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void repeatedLoginAttemptsForTheSameEmailAreThrottled() throws Exception {
+        register("Duda", "duda@example.com", "secret").andExpect(status().isOk());
+        for (int attempt = 0; attempt < 5; attempt++) {
+            login("duda@example.com", "wrong").andExpect(status().isBadRequest());
+        }
+
+        //Passado o limite nem a senha certa é verificada até o bucket se recarregar
+        login("DUDA@example.com", "secret").andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void introspectReportsEachTokenInOrder() throws Exception {
+        String token = json(register("Enzo", "enzo@example.com", "secret").andExpect(status().isOk()))
+                .get("token").asText();
+        String revoked = json(login("enzo@example.com", "secret").andExpect(status().isOk())).get("token").asText();
+        mockMvc.perform(post("/auth/logout").header("Authorization", "Bearer " + revoked))
+                .andExpect(status().isNoContent());
+
+        //Sem o segredo do gateway (ou com um token de usuário no lugar dele) a introspecção é recusada
+        String body = "[\"" + token + "\",\"not-a-token\",\"\",\"" + revoked + "\"]";
+        mockMvc.perform(post("/auth/introspect").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/auth/introspect").header("Authorization", "Bearer " + token)
+                        .header("X-Introspection-Secret", "wrong")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(post("/auth/introspect").header("X-Introspection-Secret", "test-gateway-secret")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].active").value(true))
+                .andExpect(jsonPath("$[0].sub").value("enzo@example.com"))
+                .andExpect(jsonPath("$[0].exp").isNumber())
+                .andExpect(jsonPath("$[0].reason").doesNotExist())
+                .andExpect(jsonPath("$[1].reason").value("malformed"))
+                .andExpect(jsonPath("$[2].reason").value("missing"))
+                .andExpect(jsonPath("$[3].active").value(false))
+                .andExpect(jsonPath("$[3].reason").value("revoked"));
+    }
+
+    @Test
+    void metricsAreOnlyForAdminsWhileHealthStaysOpen() throws Exception {
+        String token = json(register("Fabi", "fabi@example.com", "secret").andExpect(status().isOk()))
+                .get("token").asText();
+
+        mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/metrics")).andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+
+        jdbcTemplate.update("update users set admin = true where email_normalized = ?", "fabi@example.com");
+        mockMvc.perform(get("/actuator/metrics").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    private ResultActions register(String name, String email, String password) throws Exception {
+        return mockMvc.perform(post("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"" + password + "\"}"));
+    }
+
+    private ResultActions login(String email, String password) throws Exception {
+        return mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}"));
+    }
+
+    private ResultActions refresh(String refreshToken) throws Exception {
+        return mockMvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + refreshToken + "\"}"));
+    }
+
+    private JsonNode json(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsString());
+    }
+}
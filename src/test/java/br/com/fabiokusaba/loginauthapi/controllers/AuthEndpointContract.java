@@ -0,0 +1,91 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+//Comportamento dos endpoints de autenticação que as duas stacks (servlet e reativa) precisam ter
+//Os testes falam HTTP de verdade com a aplicação em uma porta aleatória, então a mesma suíte vale para o Tomcat e para o
+//Netty, cada stack tem a sua subclasse que só diz como subir a aplicação
+
+import br.com.fabiokusaba.loginauthapi.infra.audit.AuthAuditLog;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public abstract class AuthEndpointContract {
+
+    @Autowired
+    protected WebTestClient client;
+
+    @Autowired
+    protected AuthAuditLog authAuditLog;
+
+    @Test
+    void registerLoginAndAccessProtectedEndpoint() {
+        register("Gabi", "gabi@contract.com", "secret").expectStatus().isOk()
+                .expectBody().jsonPath("$.name").isEqualTo("Gabi");
+
+        //O email é normalizado, então um cadastro com outra grafia do mesmo email é recusado
+        register("Gabi", " GABI@contract.com", "secret").expectStatus().isBadRequest();
+
+        JsonNode login = login("Gabi@Contract.com", "secret").expectStatus().isOk()
+                .expectBody(JsonNode.class).returnResult().getResponseBody();
+        client.get().uri("/user").header("Authorization", "Bearer " + login.get("token").asText())
+                .exchange().expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("sucesso em buscar user!");
+
+        login("gabi@contract.com", "wrong").expectStatus().isBadRequest();
+        login("nobody@contract.com", "secret").expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("User not found!");
+        client.get().uri("/user").exchange().expectStatus().isForbidden();
+        client.get().uri("/user").header("Authorization", "Bearer not-a-token").exchange().expectStatus().isForbidden();
+    }
+
+    @Test
+    void repeatedLoginAttemptsForTheSameEmailAreThrottled() {
+        register("Hugo", "hugo@contract.com", "secret").expectStatus().isOk();
+        for (int attempt = 0; attempt < 5; attempt++) {
+            login("hugo@contract.com", "wrong").expectStatus().isBadRequest();
+        }
+
+        login("hugo@contract.com", "secret").expectStatus().isEqualTo(429)
+                .expectHeader().exists("Retry-After");
+    }
+
+    //Cadastro, login errado e token recusado chegam ao banco pela gravação em segundo plano, sem descartes
+    @Test
+    void authEventsAreWrittenToTheAuditLog() throws InterruptedException {
+        long before = authAuditLog.getWritten();
+        register("Iris", "iris@contract.com", "secret").expectStatus().isOk();
+        login("iris@contract.com", "wrong").expectStatus().isBadRequest();
+        client.get().uri("/user").header("Authorization", "Bearer not-a-token").exchange().expectStatus().isForbidden();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (authAuditLog.getWritten() - before < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(authAuditLog.getWritten() - before).isGreaterThanOrEqualTo(3);
+        assertThat(authAuditLog.getDropped()).isZero();
+    }
+
+    @Test
+    void jwksIsPublic() {
+        client.get().uri("/.well-known/jwks.json").exchange().expectStatus().isOk()
+                .expectBody().jsonPath("$.keys").isArray();
+    }
+
+    private WebTestClient.ResponseSpec register(String name, String email, String password) {
+        return client.post().uri("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"" + password + "\"}")
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec login(String email, String password) {
+        return client.post().uri("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}")
+                .exchange();
+    }
+}
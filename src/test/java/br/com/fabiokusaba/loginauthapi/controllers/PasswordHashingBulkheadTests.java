@@ -0,0 +1,83 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+import br.com.fabiokusaba.loginauthapi.infra.security.PasswordHashingService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Bulkhead com uma thread e uma vaga na fila, a senha "hold" segura a thread de hashing até o teste liberar
+@SpringBootTest(properties = {
+        "api.security.password.bcrypt.strength=4",
+        "api.security.password.hashing.threads=1",
+        "api.security.password.hashing.queue-capacity=1",
+        "api.security.password.hashing.max-queue-time=5s",
+        "api.security.password.hashing.retry-after=2s"
+})
+@AutoConfigureMockMvc
+class PasswordHashingBulkheadTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+
+    @SpyBean
+    private PasswordEncoder passwordEncoder;
+
+    @Test
+    void aLoginWithTheHashingPoolSaturatedGetsA503WithRetryAfter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return false;
+        }).when(passwordEncoder).matches(eq("hold"), anyString());
+
+        //Uma verificação ocupa a única thread e outra a única vaga da fila
+        CompletableFuture<Void> running = CompletableFuture.runAsync(this::hold);
+        await(() -> passwordHashingService.getActiveCount() == 1);
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(this::hold);
+        await(() -> passwordHashingService.getQueueDepth() == 1);
+
+        try {
+            mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"email\":\"nobody@bulkhead.com\",\"password\":\"secret\"}"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "2"));
+        } finally {
+            release.countDown();
+        }
+        running.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+        assertThat(passwordHashingService.getRejected()).isEqualTo(1);
+    }
+
+    private void hold() {
+        passwordHashingService.simulateMatch("hold");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
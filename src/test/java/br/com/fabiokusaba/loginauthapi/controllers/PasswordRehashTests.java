@@ -0,0 +1,55 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//O BCrypt só refaz hashes mais fracos do que o custo atual, então esse contexto usa o custo 5 e o hash salvo o custo 4
+@SpringBootTest(properties = "api.security.password.bcrypt.strength=5")
+@AutoConfigureMockMvc
+class PasswordRehashTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void aLoginRehashesAPasswordStoredWithALowerCost() throws Exception {
+        mockMvc.perform(post("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Davi\",\"email\":\"davi@example.com\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk());
+        jdbcTemplate.update("update users set password = ? where email_normalized = ?",
+                new BCryptPasswordEncoder(4).encode("secret"), "davi@example.com");
+
+        login("davi@example.com", "secret").andExpect(status().isOk());
+
+        //O hash é refeito em segundo plano com o custo atual e a troca entra no log de mudanças
+        String password = null;
+        for (int i = 0; i < 100 && (password == null || !password.startsWith("$2a$05$")); i++) {
+            Thread.sleep(50);
+            password = jdbcTemplate.queryForObject("select password from users where email_normalized = ?",
+                    String.class, "davi@example.com");
+        }
+        assertThat(password).startsWith("$2a$05$");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from user_changes where email_normalized = ? " +
+                "and type = 'PASSWORD_CHANGED'", Integer.class, "davi@example.com")).isEqualTo(1);
+        login("davi@example.com", "secret").andExpect(status().isOk());
+    }
+
+    private ResultActions login(String email, String password) throws Exception {
+        return mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}"));
+    }
+}
@@ -0,0 +1,8 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "api.security.password.bcrypt.strength=4")
+class ServletAuthEndpointTests extends AuthEndpointContract {
+}
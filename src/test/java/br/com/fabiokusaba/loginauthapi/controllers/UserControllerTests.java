@@ -0,0 +1,167 @@
+package br.com.fabiokusaba.loginauthapi.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "api.security.password.bcrypt.strength=4")
+@AutoConfigureMockMvc
+class UserControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void importReportsDuplicatesAndInvalidRecordsPerLine() throws Exception {
+        String token = admin("Admin", "admin@import.com");
+        String existing = register("Existing", "existing@import.com");
+
+        //Um usuário comum não pode criar usuários em massa
+        mockMvc.perform(post("/user/import").header("Authorization", "Bearer " + existing)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"Mallory\",\"email\":\"mallory@import.com\",\"password\":\"x\"}"))
+                .andExpect(status().isForbidden());
+
+        String ndjson = """
+                {"name":"Eva","email":"eva@import.com","password":"secret"}
+                {"name":"Eva again","email":" EVA@import.com","password":"secret"}
+                {"name":"Existing","email":"existing@import.com","password":"secret"}
+                {"name":"Broken",
+                {"name":"No password","email":"nopass@import.com"}
+                """;
+        mockMvc.perform(post("/user/import").header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(5))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.duplicates").value(2))
+                .andExpect(jsonPath("$.invalid").value(2))
+                .andExpect(jsonPath("$.errors[0].line").value(4))
+                .andExpect(jsonPath("$.errors[2].reason").value("Email repeated in the import"));
+
+        String csv = """
+                name,email,password
+                "Silva, Fabio",fabio@import.com,secret
+                """;
+        mockMvc.perform(post("/user/import").header("Authorization", "Bearer " + token)
+                        .contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1));
+
+        //Os usuários importados conseguem fazer login normalmente
+        mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"fabio@import.com\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Silva, Fabio"));
+    }
+
+    @Test
+    void listingPagesByKeyAndSearchesByPrefix() throws Exception {
+        String token = admin("Lister", "lister@list.com");
+        for (String name : List.of("Zoe", "Xenia Maria", "Bruno", "Xenia Clara", "Carla")) {
+            register(name, "Listed-" + name.replace(" ", "") + "@list.com");
+        }
+
+        //Percorremos a busca por email de 2 em 2 seguindo o cursor até a última página
+        List<String> emails = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            JsonNode page = list(token, "/user/list?q=LISTED-&limit=2" + (cursor == null ? "" : "&cursor=" + cursor));
+            page.get("users").forEach(user -> emails.add(user.get("email").asText()));
+            cursor = page.get("next").isNull() ? null : page.get("next").asText();
+            pages++;
+        } while (cursor != null);
+        assertThat(pages).isEqualTo(3);
+        assertThat(emails).containsExactly("Listed-Bruno@list.com", "Listed-Carla@list.com",
+                "Listed-XeniaClara@list.com", "Listed-XeniaMaria@list.com", "Listed-Zoe@list.com");
+
+        JsonNode byName = list(token, "/user/list?by=name&q=XENIA");
+        assertThat(byName.get("users")).extracting(user -> user.get("name").asText())
+                .containsExactly("Xenia Clara", "Xenia Maria");
+        assertThat(byName.get("next").isNull()).isTrue();
+
+        mockMvc.perform(get("/user/list?cursor=not-a-cursor").header("Authorization", "Bearer " + token))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/user/list?by=password").header("Authorization", "Bearer " + token))
+                .andExpect(status().isBadRequest());
+
+        String export = mockMvc.perform(get("/user/export?q=listed-").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(export.lines().map(line -> readTree(line).get("email").asText()).toList())
+                .containsExactlyElementsOf(emails);
+        assertThat(export).doesNotContain("password");
+    }
+
+    @Test
+    void listingAndExportRequireTheAdminRole() throws Exception {
+        String token = register("Curious", "curious@list.com");
+
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/user/export").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/user/list")).andExpect(status().isForbidden());
+
+        //O mesmo token passa a valer assim que o usuário vira administrador, as roles são lidas do banco a cada
+        //requisição fora do modo stateless
+        jdbcTemplate.update("update users set admin = true where email_normalized = ?", "curious@list.com");
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    private JsonNode list(String token, String uri) throws Exception {
+        String body = mockMvc.perform(get(uri).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    //Cadastra o usuário e promove ele a administrador direto no banco, que é a única forma de ganhar a 'ROLE_ADMIN'
+    private String admin(String name, String email) throws Exception {
+        String token = register(name, email);
+        jdbcTemplate.update("update users set admin = true where email_normalized = ?", email);
+        return token;
+    }
+
+    private String register(String name, String email) throws Exception {
+        String body = mockMvc.perform(post("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode json = objectMapper.readTree(body);
+        return json.get("token").asText();
+    }
+}
@@ -0,0 +1,27 @@
+package br.com.fabiokusaba.loginauthapi.infra.aot;
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.dto.ResponseDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginAuthApiRuntimeHintsTests {
+
+    @Test
+    void registersTheTypesTheAotEngineCannotDiscover() throws Exception {
+        RuntimeHints hints = new RuntimeHints();
+        new LoginAuthApiRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ResponseDTO.class.getMethod("token")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(UserCredentials.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(TypeReference.of("com.auth0.jwt.impl.PayloadImpl"))
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/reactive-schema.sql").test(hints));
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.fabiokusaba.loginauthapi.infra.audit;
+
+import br.com.fabiokusaba.loginauthapi.domain.audit.AuthEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthAuditLogTests {
+
+    @Test
+    void pendingEventsAreWrittenInBatchesOnShutdown() {
+        List<Integer> batches = new CopyOnWriteArrayList<>();
+        AuthAuditLog auditLog = auditLog(events -> batches.add(events.size()), 1024, "drop");
+        auditLog.start();
+
+        for (int i = 0; i < 1000; i++) {
+            auditLog.record(AuthEvent.Type.LOGIN_FAILED, "user" + i + "@example.com", "10.0.0.1", "bad_password");
+        }
+        auditLog.stop();
+
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(1000);
+        assertThat(batches).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(100));
+        assertThat(auditLog.getWritten()).isEqualTo(1000);
+        assertThat(auditLog.getDropped()).isZero();
+        assertThat(auditLog.getPending()).isZero();
+    }
+
+    @Test
+    void eventsAreDroppedAndCountedWhenTheWriterFallsBehind() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AuthAuditLog auditLog = auditLog(events -> await(release), 16, "drop");
+        auditLog.start();
+
+        for (int i = 0; i < 100; i++) {
+            auditLog.record(AuthEvent.Type.TOKEN_REJECTED, null, "10.0.0.1", "malformed");
+        }
+
+        assertThat(auditLog.getDropped()).isPositive();
+        release.countDown();
+        auditLog.stop();
+        assertThat(auditLog.getWritten() + auditLog.getDropped()).isEqualTo(100);
+    }
+
+    @Test
+    void blockingPolicyWaitsForTheWriterInsteadOfDropping() {
+        List<AuthEvent> written = new CopyOnWriteArrayList<>();
+        AuthAuditLog auditLog = auditLog(events -> {
+            sleep(1);
+            written.addAll(events);
+        }, 16, "block");
+        auditLog.start();
+
+        for (int i = 0; i < 200; i++) {
+            auditLog.record(AuthEvent.Type.LOGIN_SUCCEEDED, "user@example.com", "10.0.0.1", null);
+        }
+        auditLog.stop();
+
+        assertThat(auditLog.getDropped()).isZero();
+        assertThat(written).hasSize(200);
+    }
+
+    private static AuthAuditLog auditLog(AuthEventSink sink, int capacity, String overflow) {
+        return new AuthAuditLog(sink, true, capacity, overflow, Duration.ofSeconds(5), 100, Duration.ofMillis(10),
+                Duration.ofSeconds(10));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package br.com.fabiokusaba.loginauthapi.infra.partition;
+
+import br.com.fabiokusaba.loginauthapi.dto.ImportReportDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserPageDTO;
+import br.com.fabiokusaba.loginauthapi.dto.UserSummaryDTO;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenCache;
+import br.com.fabiokusaba.loginauthapi.infra.security.VerifiedToken;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import br.com.fabiokusaba.loginauthapi.services.UserImportService;
+import br.com.fabiokusaba.loginauthapi.services.UserListingService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "api.security.password.bcrypt.strength=4",
+        "api.user.partitions.enabled=true",
+        "api.user.partitions.urls=" + PartitionedUserStoreTests.PARTITION_URLS,
+        "spring.jpa.open-in-view=false"
+})
+@AutoConfigureMockMvc
+class PartitionedUserStoreTests {
+
+    static final String PARTITION_URLS = "jdbc:h2:mem:partitioned0;DB_CLOSE_DELAY=-1," +
+            "jdbc:h2:mem:partitioned1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:partitioned2;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PartitionRoutingDataSource dataSource;
+
+    @Autowired
+    private UserPartitioning userPartitioning;
+
+    @Autowired
+    private UserPartitionRebalancer rebalancer;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserListingService userListingService;
+
+    @Autowired
+    private UserChangeLog userChangeLog;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Test
+    void usersLiveOnlyInThePartitionOfTheirEmail() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            String email = "Partition" + i + "@Example.com";
+            register("User " + i, email).andExpect(status().isOk());
+            assertThat(partitionsHolding("partition" + i + "@example.com"))
+                    .containsExactly(userPartitioning.partitionOf(email));
+        }
+
+        //Login, filtro de segurança e refresh (que busca pelo id em todas as partições) funcionam em qualquer partição
+        for (int i = 0; i < 12; i++) {
+            JsonNode login = json(login("partition" + i + "@example.com").andExpect(status().isOk()));
+            mockMvc.perform(get("/user").header("Authorization", "Bearer " + login.get("token").asText()))
+                    .andExpect(status().isOk());
+            refresh(login.get("refreshToken").asText()).andExpect(status().isOk());
+        }
+        register("Again", "PARTITION3@example.com").andExpect(status().isBadRequest());
+
+        //Um login sem email não tem partição, ele vai para a principal e responde como um email que não existe
+        mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON).content("{\"password\":\"x\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void importSplitsTheBatchAcrossPartitions() throws Exception {
+        String ndjson = IntStream.range(0, 60)
+                .mapToObj(i -> "{\"name\":\"Imported " + i + "\",\"email\":\"imported" + i + "@example.com\"," +
+                        "\"password\":\"secret\"}")
+                .collect(Collectors.joining("\n"));
+        ImportReportDTO report = userImportService.importUsers(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), UserImportService.Format.NDJSON);
+
+        assertThat(report.imported()).isEqualTo(60);
+        for (int partition = 0; partition < dataSource.size(); partition++) {
+            assertThat(jdbc(partition).queryForObject(
+                    "select count(*) from users where email_normalized like 'imported%'", Long.class)).isPositive();
+        }
+        for (int i = 0; i < 60; i++) {
+            assertThat(partitionsHolding("imported" + i + "@example.com"))
+                    .containsExactly(userPartitioning.partitionOf("imported" + i + "@example.com"));
+        }
+    }
+
+    @Test
+    void changesWrittenInAnyPartitionEvictCachedTokens() {
+        String key = tokenCache.digest("partitioned-change-token");
+        Instant now = Instant.now();
+        tokenCache.put(key, new VerifiedToken("jti", "moved@example.com", now, now.plus(1, ChronoUnit.HOURS), 0, null));
+
+        //A mudança fica na partição do usuário, como se tivesse sido gravada por outra réplica
+        jdbc(userPartitioning.partitionOf("moved@example.com")).update(
+                "insert into user_changes (email_normalized, type, changed_at) values (?, ?, ?)",
+                "moved@example.com", "PASSWORD_CHANGED", Timestamp.from(Instant.now()));
+        userChangeLog.poll();
+
+        assertThat(tokenCache.get(key)).isNull();
+    }
+
+    @Test
+    void rebalanceMovesUsersToTheirPartitionInTheNewCount() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            register("Rebalanced " + i, "rebalanced" + i + "@example.com").andExpect(status().isOk());
+        }
+
+        //O comando sobe o próprio contexto com os mesmos bancos, como faria rodando separado das réplicas
+        UserPartitionRebalancer.Report shrink = UserPartitionRebalanceCommand.run(
+                "--api.user.partitions.urls=" + PARTITION_URLS, "--api.user.partitions.rebalance-to=2");
+        assertThat(shrink.moved()).isPositive();
+        assertThat(count(2)).isZero();
+        for (int i = 0; i < 30; i++) {
+            String email = "rebalanced" + i + "@example.com";
+            assertThat(partitionsHolding(email)).containsExactly(UserPartitioning.partitionOf(email, 2));
+        }
+
+        //Rodar de novo não move nada e voltar para 3 devolve cada usuário à partição em que a aplicação procura
+        assertThat(rebalancer.rebalance(2).moved()).isZero();
+        rebalancer.rebalance(3);
+        for (int i = 0; i < 30; i++) {
+            String email = "rebalanced" + i + "@example.com";
+            assertThat(partitionsHolding(email)).containsExactly(userPartitioning.partitionOf(email));
+            login(email).andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    void listingMergesThePagesOfEveryPartitionInOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String email = "listed%02d@example.com".formatted(i);
+            register("Listed " + i, email).andExpect(status().isOk());
+            expected.add(email);
+        }
+
+        List<String> emails = new ArrayList<>();
+        String cursor = null;
+        do {
+            UserPageDTO page = userListingService.page(UserListingService.Field.EMAIL, "listed", cursor, 3);
+            page.users().stream().map(UserSummaryDTO::email).forEach(emails::add);
+            cursor = page.next();
+        } while (cursor != null);
+        assertThat(emails).containsExactlyElementsOf(expected);
+    }
+
+    private List<Integer> partitionsHolding(String emailNormalized) {
+        return IntStream.range(0, dataSource.size())
+                .filter(partition -> jdbc(partition).queryForObject(
+                        "select count(*) from users where email_normalized = ?", Long.class, emailNormalized) > 0)
+                .boxed().toList();
+    }
+
+    private long count(int partition) {
+        return jdbc(partition).queryForObject("select count(*) from users", Long.class);
+    }
+
+    private JdbcTemplate jdbc(int partition) {
+        return new JdbcTemplate(dataSource.getPartitions().get(partition));
+    }
+
+    private ResultActions register(String name, String email) throws Exception {
+        return mockMvc.perform(post("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"secret\"}"));
+    }
+
+    private ResultActions login(String email) throws Exception {
+        return mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"));
+    }
+
+    private ResultActions refresh(String refreshToken) throws Exception {
+        return mockMvc.perform(post("/auth/refresh").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + refreshToken + "\"}"));
+    }
+
+    private JsonNode json(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsString());
+    }
+}
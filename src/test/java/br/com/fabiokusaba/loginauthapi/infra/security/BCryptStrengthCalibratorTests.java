@@ -0,0 +1,32 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BCryptStrengthCalibratorTests {
+
+    @Test
+    void aGenerousTargetStopsAtTheMaximumStrength() {
+        assertThat(BCryptStrengthCalibrator.calibrate(Duration.ofMinutes(1), 4, 6)).isEqualTo(6);
+    }
+
+    @Test
+    void aTargetNoHashCanMeetKeepsTheMinimumStrength() {
+        assertThat(BCryptStrengthCalibrator.calibrate(Duration.ofNanos(1), 4, 8)).isEqualTo(4);
+    }
+
+    @Test
+    void theChosenStrengthIsTheHighestThatFitsTheTarget() {
+        //O alvo é o tempo medido do custo 6, então o custo escolhido fica perto dele e nunca no teto
+        long start = System.nanoTime();
+        new BCryptPasswordEncoder(6).encode("calibration-password");
+        Duration cost6 = Duration.ofNanos((System.nanoTime() - start) * 2);
+
+        int chosen = BCryptStrengthCalibrator.calibrate(cost6, 4, 12);
+        assertThat(chosen).isBetween(4, 8);
+    }
+}
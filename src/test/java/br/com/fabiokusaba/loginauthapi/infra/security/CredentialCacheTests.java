@@ -0,0 +1,98 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import br.com.fabiokusaba.loginauthapi.domain.user.UserChange;
+import br.com.fabiokusaba.loginauthapi.domain.user.UserCredentials;
+import br.com.fabiokusaba.loginauthapi.services.UserChangeLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CredentialCacheTests {
+
+    private static final UserCredentials USER =
+            new UserCredentials("1", "Bot", "Bot@Example.com", "$2a$10$storedhash", 0, false, false);
+
+    @Test
+    void onlyTheSamePasswordAgainstTheSameStoredHashIsAHit() {
+        CredentialCache cache = new CredentialCache(true, Duration.ofMinutes(5), 100);
+        assertThat(cache.isVerified("secret", USER)).isFalse();
+
+        cache.put("secret", USER);
+        assertThat(cache.isVerified("secret", USER)).isTrue();
+        assertThat(cache.isVerified("wrong", USER)).isFalse();
+
+        //Com a senha trocada o hash salvo é outro e a verificação antiga não vale mais
+        UserCredentials changed =
+                new UserCredentials("1", "Bot", "bot@example.com", "$2a$10$newhash", 0, false, false);
+        assertThat(cache.isVerified("secret", changed)).isFalse();
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(3);
+        assertThat(cache.getHitRatio()).isEqualTo(0.25);
+    }
+
+    @Test
+    void optedOutAccountsAndADisabledCacheNeverHit() {
+        UserCredentials optedOut =
+                new UserCredentials("2", "Admin", "admin@example.com", "$2a$10$hash", 0, true, false);
+        CredentialCache cache = new CredentialCache(true, Duration.ofMinutes(5), 100);
+        cache.put("secret", optedOut);
+        assertThat(cache.isVerified("secret", optedOut)).isFalse();
+        assertThat(cache.size()).isZero();
+
+        CredentialCache disabled = new CredentialCache(false, Duration.ofMinutes(5), 100);
+        disabled.put("secret", USER);
+        assertThat(disabled.isVerified("secret", USER)).isFalse();
+    }
+
+    @Test
+    void entriesLeaveOnUserChangesAndStayBounded() {
+        CredentialCache cache = new CredentialCache(true, Duration.ofMinutes(5), 2);
+        cache.put("secret", USER);
+        cache.onUserChanges(List.of(
+                new UserChange(1L, "bot@example.com", UserChange.Type.PASSWORD_CHANGED, Instant.now())));
+        assertThat(cache.isVerified("secret", USER)).isFalse();
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("secret" + i, USER);
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+        assertThat(cache.getEvictions()).isGreaterThanOrEqualTo(9);
+    }
+
+    @Test
+    void verificationsPastTheTtlLeaveOnTheScheduledPurge() throws InterruptedException {
+        CredentialCache cache = new CredentialCache(true, Duration.ofMillis(1), 100);
+        for (int i = 0; i < 5; i++) {
+            cache.put("secret" + i, USER);
+        }
+        Thread.sleep(5);
+
+        cache.purgeExpired();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getEvictions()).isEqualTo(5);
+    }
+
+    @Test
+    void aChangeLogPastItsStalenessLimitBypassesTheCache() {
+        UserChangeLog changeLog = mock(UserChangeLog.class);
+        CredentialCache cache = new CredentialCache(true, Duration.ofMinutes(5), 100);
+        cache.attach(changeLog);
+        cache.put("secret", USER);
+        assertThat(cache.isVerified("secret", USER)).isTrue();
+
+        //A leitura do 'user_changes' não rodou dentro do limite (tarefa agendada travada), então o cache não responde
+        //mesmo sem nenhum 'onResync'
+        when(changeLog.isOverStalenessLimit()).thenReturn(true);
+        assertThat(cache.isVerified("secret", USER)).isFalse();
+
+        when(changeLog.isOverStalenessLimit()).thenReturn(false);
+        assertThat(cache.isVerified("secret", USER)).isTrue();
+    }
+}
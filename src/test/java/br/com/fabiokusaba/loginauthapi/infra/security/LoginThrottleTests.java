@@ -0,0 +1,42 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginThrottleTests {
+
+    @Test
+    void theSameEmailIsThrottledFromAnyIp() {
+        LoginThrottle throttle = throttle(2, 100);
+        assertThat(throttle.tryAcquire("Ana@Example.com", "10.0.0.1")).isZero();
+        assertThat(throttle.tryAcquire("ana@example.com ", "10.0.0.2")).isZero();
+        assertThat(throttle.tryAcquire("ANA@example.com", "10.0.0.3")).isPositive();
+        assertThat(throttle.tryAcquire("bia@example.com", "10.0.0.3")).isZero();
+    }
+
+    //Capacidade zero desliga só aquele tipo de chave, o outro continua limitando
+    @Test
+    void aZeroCapacityTurnsOffOnlyThatKeyType() {
+        LoginThrottle noEmailLimit = throttle(0, 3);
+        for (int attempt = 0; attempt < 3; attempt++) {
+            assertThat(noEmailLimit.tryAcquire("ana@example.com", "10.0.0." + attempt)).isZero();
+        }
+        assertThat(noEmailLimit.tryAcquire("ana@example.com", "10.0.0.9")).isZero();
+        assertThat(noEmailLimit.tryAcquire("bia@example.com", "10.0.0.9")).isZero();
+        assertThat(noEmailLimit.tryAcquire("caio@example.com", "10.0.0.9")).isZero();
+        assertThat(noEmailLimit.tryAcquire("duda@example.com", "10.0.0.9")).isPositive();
+
+        LoginThrottle noIpLimit = throttle(1, 0);
+        assertThat(noIpLimit.tryAcquire("ana@example.com", "10.0.0.1")).isZero();
+        assertThat(noIpLimit.tryAcquire("ana@example.com", "10.0.0.1")).isPositive();
+        assertThat(noIpLimit.tryAcquire("bia@example.com", "10.0.0.1")).isZero();
+    }
+
+    private static LoginThrottle throttle(int emailCapacity, int ipCapacity) {
+        return new LoginThrottle(true, emailCapacity, Duration.ofMinutes(1), ipCapacity, Duration.ofMinutes(1),
+                1000, 16);
+    }
+}
@@ -0,0 +1,121 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import br.com.fabiokusaba.loginauthapi.exceptions.PasswordHashingUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Bulkhead com uma thread e uma vaga na fila, a senha "hold" segura a thread até o teste liberar
+class PasswordHashingServiceTests {
+
+    private final HoldingEncoder encoder = new HoldingEncoder();
+    private PasswordHashingService service;
+
+    @AfterEach
+    void release() {
+        encoder.release.countDown();
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void aFullQueueIsRejectedRightAwayWithTheRetryAfter() throws Exception {
+        service = new PasswordHashingService(encoder, 1, 1, Duration.ofSeconds(5), Duration.ofSeconds(3));
+        String hash = encoder.encode("secret");
+
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> service.matches("hold", hash));
+        await(() -> service.getActiveCount() == 1);
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> service.matches("secret", hash));
+        await(() -> service.getQueueDepth() == 1);
+
+        assertThatThrownBy(() -> service.matches("secret", hash))
+                .isInstanceOfSatisfying(PasswordHashingUnavailableException.class,
+                        exception -> assertThat(exception.getRetryAfterSeconds()).isEqualTo(3));
+        assertThat(service.getRejected()).isEqualTo(1);
+
+        encoder.release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void aTaskThatWaitedPastTheMaxQueueTimeIsDroppedWithoutHashing() throws Exception {
+        service = new PasswordHashingService(encoder, 1, 1, Duration.ofMillis(50), Duration.ofSeconds(1));
+        String hash = encoder.encode("secret");
+
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> service.matches("hold", hash));
+        await(() -> service.getActiveCount() == 1);
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> service.matches("late", hash));
+        await(() -> service.getQueueDepth() == 1);
+        Thread.sleep(100);
+        encoder.release.countDown();
+
+        assertThat(running.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PasswordHashingUnavailableException.class);
+        assertThat(service.getQueueTimeouts()).isEqualTo(1);
+        assertThat(encoder.checked).doesNotContain("late");
+    }
+
+    @Test
+    void anUnknownEmailPaysTheSameBCryptCostAsAWrongPassword() {
+        service = new PasswordHashingService(encoder, 1, 1, Duration.ofSeconds(5), Duration.ofSeconds(1));
+        String hash = encoder.encode("secret");
+
+        service.simulateMatch("guess");
+        service.matches("guess", hash);
+
+        //As duas verificações passam pelo BCrypt inteiro com o mesmo custo (prefixo "$2a$<custo>$")
+        assertThat(encoder.checked).containsExactly("guess", "guess");
+        assertThat(encoder.hashes).hasSize(2);
+        assertThat(encoder.hashes.get(0)).isNotEqualTo(hash).startsWith(hash.substring(0, 7));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    //BCrypt de verdade que anota cada verificação e segura a senha "hold" até o 'release'
+    private static final class HoldingEncoder extends BCryptPasswordEncoder {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> checked = new CopyOnWriteArrayList<>();
+        private final List<String> hashes = new CopyOnWriteArrayList<>();
+
+        private HoldingEncoder() {
+            super(5);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            if ("hold".contentEquals(rawPassword)) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+            checked.add(rawPassword.toString());
+            hashes.add(encodedPassword);
+            return super.matches(rawPassword, encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import br.com.fabiokusaba.loginauthapi.domain.token.StoredSigningKey;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SigningKeyRingTests {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RS256", "ES256"})
+    void rotatedKeysKeepVerifyingDuringOverlapAndArePublished(String algorithm) {
+        SigningKeyRing keyRing = keyRing(algorithm, new InMemorySigningKeyStore(), Duration.ofHours(24), Duration.ZERO);
+        SigningKey first = keyRing.current();
+        String token = sign(first);
+
+        keyRing.rotate();
+        SigningKey second = keyRing.current();
+
+        assertThat(second.kid()).isNotEqualTo(first.kid());
+        DecodedJWT decoded = JWT.decode(token);
+        assertThat(keyRing.verifier(decoded.getKeyId()).verify(decoded).getSubject()).isEqualTo("user@example.com");
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> keys = (List<Map<String, Object>>) keyRing.jwks().get("keys");
+        assertThat(keys).extracting(key -> key.get("kid")).containsExactly(second.kid(), first.kid());
+        assertThat(keys).allSatisfy(key -> assertThat(key).containsEntry("alg", algorithm).doesNotContainKey("d"));
+    }
+
+    @Test
+    void symmetricKeysAreNeverPublished() {
+        SigningKeyRing keyRing = keyRing("HS256", new InMemorySigningKeyStore(), Duration.ofHours(24), Duration.ZERO);
+
+        assertThat((List<?>) keyRing.jwks().get("keys")).isEmpty();
+        assertThat(keyRing.verifier(null)).isNotNull();
+    }
+
+    @Test
+    void replicasSharingTheTableSignAndPublishWithTheSameKeys() {
+        InMemorySigningKeyStore store = new InMemorySigningKeyStore();
+        SigningKeyRing first = keyRing("ES256", store, Duration.ofHours(24), Duration.ofMinutes(10));
+        SigningKeyRing second = keyRing("ES256", store, Duration.ofHours(24), Duration.ofMinutes(10));
+
+        //A segunda réplica carrega a chave gravada pela primeira em vez de gerar a sua, e um restart também
+        assertThat(second.current().kid()).isEqualTo(first.current().kid());
+        DecodedJWT decoded = JWT.decode(sign(first.current()));
+        assertThat(second.verifier(decoded.getKeyId()).verify(decoded).getSubject()).isEqualTo("user@example.com");
+        assertThat(second.jwks()).isEqualTo(first.jwks());
+
+        SigningKeyRing restarted = keyRing("ES256", store, Duration.ofHours(24), Duration.ofMinutes(10));
+        assertThat(restarted.current().kid()).isEqualTo(first.current().kid());
+        assertThat(store.keys).hasSize(1);
+    }
+
+    @Test
+    void theNextKeyIsKnownByEveryReplicaBeforeItSigns() {
+        InMemorySigningKeyStore store = new InMemorySigningKeyStore();
+        SigningKeyRing first = keyRing("RS256", store, Duration.ofMillis(1), Duration.ofMinutes(10));
+        SigningKeyRing second = keyRing("RS256", store, Duration.ofMillis(1), Duration.ofMinutes(10));
+        SigningKey active = first.current();
+
+        first.rotateIfDue();
+        second.rotateIfDue();
+
+        //Só uma chave nova foi gravada, ela já está no chaveiro e no JWKS das duas réplicas mas ainda não assina
+        assertThat(store.keys).hasSize(2);
+        String next = store.keys.keySet().stream().filter(kid -> !kid.equals(active.kid())).findFirst().orElseThrow();
+        for (SigningKeyRing keyRing : List.of(first, second)) {
+            assertThat(keyRing.current().kid()).isEqualTo(active.kid());
+            assertThat(keyRing.verifier(next)).isNotNull();
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> keys = (List<Map<String, Object>>) keyRing.jwks().get("keys");
+            assertThat(keys).extracting(key -> key.get("kid")).containsExactly(next, active.kid());
+        }
+    }
+
+    private static SigningKeyRing keyRing(String algorithm, SigningKeyStore store, Duration rotation,
+                                          Duration publishAhead) {
+        SigningKeyRing keyRing = new SigningKeyRing();
+        ReflectionTestUtils.setField(keyRing, "secret", "test-secret");
+        ReflectionTestUtils.setField(keyRing, "algorithmName", algorithm);
+        ReflectionTestUtils.setField(keyRing, "rotation", rotation);
+        ReflectionTestUtils.setField(keyRing, "overlap", Duration.ofHours(2));
+        ReflectionTestUtils.setField(keyRing, "publishAhead", publishAhead);
+        ReflectionTestUtils.setField(keyRing, "signingKeyStore", store);
+        keyRing.init();
+        return keyRing;
+    }
+
+    //Tabela 'signing_keys' compartilhada pelas réplicas do teste
+    private static class InMemorySigningKeyStore implements SigningKeyStore {
+
+        private final Map<String, StoredSigningKey> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public List<StoredSigningKey> findAll(String algorithm) {
+            return keys.values().stream()
+                    .filter(key -> key.getAlgorithm().equals(algorithm))
+                    .sorted(Comparator.comparing(StoredSigningKey::getActivatesAt).reversed())
+                    .toList();
+        }
+
+        @Override
+        public void save(StoredSigningKey key) {
+            keys.put(key.getKid(), key);
+        }
+
+        @Override
+        public void delete(Collection<String> kids) {
+            kids.forEach(keys::remove);
+        }
+    }
+
+    private static String sign(SigningKey key) {
+        return JWT.create()
+                .withKeyId(key.kid())
+                .withIssuer("login-auth-api")
+                .withSubject("user@example.com")
+                .sign(key.algorithm());
+    }
+}
@@ -0,0 +1,147 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import com.auth0.jwt.JWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Modo stateless com frescor de 1 hora: tokens mais novos usam só as claims, os mais velhos voltam a conferir o banco
+@SpringBootTest(properties = {
+        "api.security.password.bcrypt.strength=4",
+        "api.security.token.stateless.enabled=true",
+        "api.security.token.stateless.max-age=1h"
+})
+@AutoConfigureMockMvc
+class StatelessTokenTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private SigningKeyRing signingKeyRing;
+
+    @Test
+    void theClaimsBecomeThePrincipalWithoutReadingTheDatabase() throws Exception {
+        String token = register("Nina", "nina@stateless.com");
+
+        VerifiedToken verified = tokenService.verifyToken(token);
+        assertThat(tokenService.isSelfContained(verified)).isTrue();
+        assertThat(verified.principal().id()).isEqualTo(idOf("nina@stateless.com"));
+        assertThat(verified.principal().email()).isEqualTo("nina@stateless.com");
+        assertThat(verified.principal().name()).isEqualTo("Nina");
+        assertThat(verified.principal().roles()).isEqualTo(TokenPrincipal.USER_ROLES);
+
+        //Virar administrador no banco não muda o token já emitido, as roles dele são as das claims
+        jdbcTemplate.update("update users set admin = true where email_normalized = ?", "nina@stateless.com");
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+
+        //O token do próximo login já sai com a role de administrador e ela vale sem consultar o banco
+        String admin = login("nina@stateless.com");
+        assertThat(tokenService.verifyToken(admin).principal().roles()).isEqualTo(TokenPrincipal.ADMIN_ROLES);
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + admin))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void aTokenPastTheMaxAgeIsCheckedAgainstTheDatabase() throws Exception {
+        register("Otto", "otto@stateless.com");
+        String id = idOf("otto@stateless.com");
+
+        //Um token velho que diz ser de um administrador não é mais suficiente sozinho, as roles passam a vir do banco
+        String old = sign(id, "otto@stateless.com", TokenPrincipal.ADMIN_ROLES, 0, Duration.ofHours(2));
+        VerifiedToken verified = tokenService.verifyToken(old);
+        assertThat(verified.principal().roles()).isEqualTo(TokenPrincipal.ADMIN_ROLES);
+        assertThat(tokenService.isSelfContained(verified)).isFalse();
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + old))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + old))
+                .andExpect(status().isOk());
+
+        //O mesmo token ainda dentro do frescor usa as claims
+        String fresh = sign(id, "otto@stateless.com", TokenPrincipal.ADMIN_ROLES, 0, Duration.ofMinutes(5));
+        assertThat(tokenService.isSelfContained(tokenService.verifyToken(fresh))).isTrue();
+        mockMvc.perform(get("/user/list").header("Authorization", "Bearer " + fresh))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void aTokenPastTheMaxAgeWithAnOldVersionIsRejected() throws Exception {
+        register("Pia", "pia@stateless.com");
+        String id = idOf("pia@stateless.com");
+        String old = sign(id, "pia@stateless.com", TokenPrincipal.USER_ROLES, 0, Duration.ofHours(2));
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + old))
+                .andExpect(status().isOk());
+
+        //Com a versão do usuário trocada a conferência no banco recusa o token
+        jdbcTemplate.update("update users set token_version = token_version + 1 where email_normalized = ?",
+                "pia@stateless.com");
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + old))
+                .andExpect(status().isForbidden());
+        String current = sign(id, "pia@stateless.com", TokenPrincipal.USER_ROLES, 1, Duration.ofHours(2));
+        mockMvc.perform(get("/user").header("Authorization", "Bearer " + current))
+                .andExpect(status().isOk());
+    }
+
+    //Assina um token com as claims do modo stateless emitido 'age' atrás, como o 'TokenService' faria naquela hora
+    private String sign(String id, String email, List<String> roles, int version, Duration age) {
+        SigningKey key = signingKeyRing.current();
+        Instant issuedAt = Instant.now().minus(age);
+        return JWT.create()
+                .withKeyId(key.kid())
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuer(SigningKeyRing.ISSUER)
+                .withSubject(email)
+                .withIssuedAt(issuedAt)
+                .withExpiresAt(Instant.now().plus(Duration.ofMinutes(15)))
+                .withClaim("uid", id)
+                .withClaim("name", "Stateless")
+                .withClaim("roles", roles)
+                .withClaim("ver", version)
+                .sign(key.algorithm());
+    }
+
+    private String idOf(String email) {
+        return jdbcTemplate.queryForObject("select id from users where email_normalized = ?", String.class, email);
+    }
+
+    private String register(String name, String email) throws Exception {
+        String body = mockMvc.perform(post("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    private String login(String email) throws Exception {
+        String body = mockMvc.perform(post("/auth/login").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"" + email + "\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+}
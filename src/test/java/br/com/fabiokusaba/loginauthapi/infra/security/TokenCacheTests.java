@@ -0,0 +1,72 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenCacheTests {
+
+    @Test
+    void verifiedTokensAreHitsUntilTheirExpiration() {
+        TokenCache cache = new TokenCache(100);
+        String key = cache.digest("header.payload.signature");
+        assertThat(cache.get(key)).isNull();
+
+        cache.put(key, token("bot@example.com", Instant.now().plusSeconds(60)));
+        assertThat(cache.get(key)).isNotNull();
+
+        //Expirado o token sai na busca e volta para a verificação completa
+        String expired = cache.digest("header.payload.expired");
+        cache.put(expired, token("bot@example.com", Instant.now().minusMillis(1)));
+        assertThat(cache.get(expired)).isNull();
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredTokensNobodyAsksForLeaveOnThePurge() {
+        TokenCache cache = new TokenCache(100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("expired" + i, token("bot@example.com", Instant.now().minusMillis(1)));
+        }
+        cache.put("valid", token("bot@example.com", Instant.now().plusSeconds(60)));
+
+        cache.purgeExpired();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getEvictions()).isEqualTo(10);
+    }
+
+    @Test
+    void aFullCacheEvictsTheLeastRecentlyUsedTokenAndStaysBounded() {
+        TokenCache cache = new TokenCache(1);
+        cache.put("cold", token("cold@example.com", Instant.now().plusSeconds(60)));
+        cache.put("hot", token("hot@example.com", Instant.now().plusSeconds(60)));
+        assertThat(cache.get("cold")).isNull();
+        assertThat(cache.get("hot")).isNotNull();
+
+        TokenCache bounded = new TokenCache(64);
+        for (int i = 0; i < 1000; i++) {
+            bounded.put("token" + i, token("user" + i + "@example.com", Instant.now().plusSeconds(60)));
+        }
+        assertThat(bounded.size()).isLessThanOrEqualTo(64);
+        assertThat(bounded.getEvictions()).isEqualTo(1000 - bounded.size());
+
+        //O token buscado continuamente fica, mesmo com tokens novos chegando no mesmo segmento
+        TokenCache lru = new TokenCache(64);
+        lru.put("hot", token("hot@example.com", Instant.now().plusSeconds(60)));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(lru.get("hot")).isNotNull();
+            lru.put("token" + i, token("user" + i + "@example.com", Instant.now().plusSeconds(60)));
+        }
+        assertThat(lru.get("hot")).isNotNull();
+    }
+
+    private static VerifiedToken token(String subject, Instant expiresAt) {
+        return new VerifiedToken("jti-" + subject, subject, Instant.now(), expiresAt, 0, null);
+    }
+}
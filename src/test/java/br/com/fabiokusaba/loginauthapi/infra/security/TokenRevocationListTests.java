@@ -0,0 +1,67 @@
+package br.com.fabiokusaba.loginauthapi.infra.security;
+
+import br.com.fabiokusaba.loginauthapi.domain.token.RevokedToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationListTests {
+
+    @Test
+    void aRevocationCommittedAfterTheLastSyncWithAnOlderTimestampIsStillLoaded() {
+        DatabaseClockStore store = new DatabaseClockStore(Instant.parse("2026-01-01T12:00:00Z"));
+        TokenRevocationList list = new TokenRevocationList();
+        ReflectionTestUtils.setField(list, "revokedTokenStore", store);
+        ReflectionTestUtils.setField(list, "bucketSize", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(list, "syncInterval", Duration.ofSeconds(30));
+        list.load();
+
+        //Outra réplica gravou 'revoked_at' 10 segundos antes da nossa subida, mas o commit só chegou agora
+        store.tokens.add(new RevokedToken("late", Instant.now().plusSeconds(3600), store.now.minusSeconds(10)));
+        store.now = store.now.plusSeconds(30);
+        list.sync();
+
+        assertThat(list.isRevoked("late")).isTrue();
+    }
+
+    //Tabela 'revoked_tokens' com um relógio de banco controlado pelo teste
+    private static class DatabaseClockStore implements RevokedTokenStore {
+
+        private final List<RevokedToken> tokens = new CopyOnWriteArrayList<>();
+        private Instant now;
+
+        DatabaseClockStore(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public List<RevokedToken> findActive(Instant now) {
+            return tokens.stream().filter(token -> token.getExpiresAt().isAfter(now)).toList();
+        }
+
+        @Override
+        public List<RevokedToken> findRevokedSince(Instant since) {
+            return tokens.stream().filter(token -> !token.getRevokedAt().isBefore(since)).toList();
+        }
+
+        @Override
+        public Instant currentTime() {
+            return now;
+        }
+
+        @Override
+        public void save(RevokedToken token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void deleteExpired(Instant now) {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package br.com.fabiokusaba.loginauthapi.infra.warmup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "api.security.password.bcrypt.strength=4",
+                "api.warmup.enabled=true",
+                "api.warmup.budget=PT10S"
+        })
+class StartupWarmupTests {
+
+    @Autowired
+    private StartupWarmup startupWarmup;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void applicationIsReadyOnlyAfterTheWarmUpReport() {
+        StartupWarmup.Report report = startupWarmup.getReport();
+
+        assertThat(report).isNotNull();
+        assertThat(report.rounds()).isPositive();
+        assertThat(report.poolConnections()).isPositive();
+        assertThat(report.after()).containsOnlyKeys(StartupWarmup.Operation.values());
+        assertThat(report.after().get(StartupWarmup.Operation.TOKEN_VALIDATE))
+                .isLessThan(report.before().get(StartupWarmup.Operation.TOKEN_VALIDATE));
+
+        assertThat(availability.getReadinessState()).isEqualTo(ReadinessState.ACCEPTING_TRAFFIC);
+        client.get().uri("/actuator/health/readiness").exchange().expectStatus().isOk()
+                .expectBody().jsonPath("$.status").isEqualTo("UP");
+    }
+}
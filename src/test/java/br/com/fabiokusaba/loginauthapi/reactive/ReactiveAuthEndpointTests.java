@@ -0,0 +1,89 @@
+package br.com.fabiokusaba.loginauthapi.reactive;
+
+import br.com.fabiokusaba.loginauthapi.controllers.AuthEndpointContract;
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenRevocationList;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = ReactiveStackConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.main.web-application-type=reactive",
+                "spring.r2dbc.url=r2dbc:h2:mem:///reactive-tests;DB_CLOSE_DELAY=-1",
+                "api.security.password.bcrypt.strength=4"
+        })
+@ActiveProfiles("reactive")
+class ReactiveAuthEndpointTests extends AuthEndpointContract {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
+    //O cadastro e o registro no 'user_changes' estão na mesma transação: sem conseguir gravar a mudança o usuário
+    //também não fica na tabela, senão os caches das réplicas servlet nunca saberiam dele
+    @Test
+    void aUserWriteWithoutItsChangeRecordIsRolledBack() {
+        databaseClient.sql("alter table user_changes rename to user_changes_unavailable").then().block();
+        try {
+            client.post().uri("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue("{\"name\":\"Lia\",\"email\":\"lia@reactive.com\",\"password\":\"secret\"}")
+                    .exchange().expectStatus().is5xxServerError();
+        } finally {
+            databaseClient.sql("alter table user_changes_unavailable rename to user_changes").then().block();
+        }
+
+        Long users = databaseClient.sql("select count(*) from users where email_normalized = 'lia@reactive.com'")
+                .map(row -> row.get(0, Long.class)).one().block();
+        assertThat(users).isZero();
+    }
+
+    //Sem suporte a partições na stack reativa o modo particionado é recusado na subida, e não usado só pela metade
+    @Test
+    void theReactiveStackRefusesToStartWithPartitionedUsers() {
+        assertThatThrownBy(() -> new SpringApplicationBuilder(ReactiveStackConfiguration.class)
+                .profiles("reactive")
+                .run("--server.port=0", "--api.user.partitions.enabled=true",
+                        "--spring.r2dbc.url=r2dbc:h2:mem:///reactive-partitioned;DB_CLOSE_DELAY=-1"))
+                .hasRootCauseInstanceOf(IllegalStateException.class)
+                .rootCause().hasMessageContaining("api.user.partitions.enabled");
+    }
+
+    //A stack reativa não tem logout, mas um token revogado pelo logout de uma réplica servlet (a linha na
+    //'revoked_tokens') deixa de valer aqui também assim que a lista sincroniza
+    @Test
+    void tokensRevokedByAServletReplicaAreRejected() {
+        JsonNode registered = client.post().uri("/auth/register").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"Juca\",\"email\":\"juca@reactive.com\",\"password\":\"secret\"}")
+                .exchange().expectStatus().isOk()
+                .expectBody(JsonNode.class).returnResult().getResponseBody();
+        String authorization = "Bearer " + registered.get("token").asText();
+        client.get().uri("/user").header("Authorization", authorization).exchange().expectStatus().isOk();
+
+        DecodedJWT token = JWT.decode(registered.get("token").asText());
+        databaseClient.sql("insert into revoked_tokens (jti, expires_at, revoked_at) " +
+                        "values (:jti, :expiresAt, :revokedAt)")
+                .bind("jti", token.getId())
+                .bind("expiresAt", token.getExpiresAtAsInstant().atOffset(ZoneOffset.UTC))
+                .bind("revokedAt", OffsetDateTime.now(ZoneOffset.UTC))
+                .then().block();
+        tokenRevocationList.sync();
+
+        client.get().uri("/user").header("Authorization", authorization).exchange().expectStatus().isForbidden();
+    }
+}
@@ -0,0 +1,55 @@
+package br.com.fabiokusaba.loginauthapi.services;
+
+import br.com.fabiokusaba.loginauthapi.infra.security.TokenCache;
+import br.com.fabiokusaba.loginauthapi.infra.security.VerifiedToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "api.security.password.bcrypt.strength=4")
+class UserChangeLogTests {
+
+    @Autowired
+    private UserChangeLog userChangeLog;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void changesWrittenByOtherReplicasEvictCachedTokens() {
+        String changed = cache("Changed@Example.com");
+        String created = cache("created@example.com");
+
+        //Gravadas direto na tabela, como se tivessem vindo de outra réplica
+        insertChange("changed@example.com", "PASSWORD_CHANGED");
+        insertChange("created@example.com", "CREATED");
+        userChangeLog.poll();
+
+        assertThat(tokenCache.get(changed)).isNull();
+        assertThat(tokenCache.get(created)).isNotNull();
+        assertThat(userChangeLog.getCursor()).isPositive();
+        assertThat(userChangeLog.isStale()).isFalse();
+    }
+
+    private String cache(String subject) {
+        String key = tokenCache.digest(subject + "-token");
+        Instant now = Instant.now();
+        tokenCache.put(key, new VerifiedToken("jti-" + subject, subject, now, now.plus(1, ChronoUnit.HOURS), 0, null));
+        return key;
+    }
+
+    private void insertChange(String email, String type) {
+        jdbcTemplate.update("insert into user_changes (email_normalized, type, changed_at) values (?, ?, ?)",
+                email, type, Timestamp.from(Instant.now()));
+    }
+}